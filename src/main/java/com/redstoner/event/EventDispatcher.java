@@ -0,0 +1,254 @@
+package com.redstoner.event;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+
+import org.bukkit.Bukkit;
+import org.bukkit.event.Cancellable;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.plugin.EventExecutor;
+
+import com.redstoner.faucet.Faucet;
+import com.redstoner.modules.Module;
+
+/** Registers module listeners with Bukkit without going through Bukkit's reflective executor.</br>
+ * Every handler method is bound once at registration, through LambdaMetafactory where possible and a plain MethodHandle otherwise.
+ * Faucet registers one executor per event type and priority with Bukkit, which then calls the pre-sorted handlers of all modules in order.</br>
+ * Handlers with ignoreCancelled set are not called at all for cancelled events. */
+public final class EventDispatcher
+{
+	private static final MethodType INVOKER_TYPE = MethodType.methodType(void.class, Listener.class, Event.class);
+	private static final Method PRIVATE_LOOKUP_IN = findPrivateLookupIn();
+	private static final Map<Class<? extends Event>, Dispatch[]> dispatches = new HashMap<>();
+	private static final Map<Module, List<RegisteredHandler>> byModule = new HashMap<>();
+
+	private EventDispatcher()
+	{}
+
+	/** Registers all methods annotated with @EventHandler of the given listener.
+	 *
+	 * @param module the module owning the listener. Used for unregistering and statistics.
+	 * @param listener the listener to register.
+	 * @return the amount of handler methods that were registered. */
+	public static synchronized int register(Module module, Listener listener)
+	{
+		List<RegisteredHandler> handlers = new ArrayList<>();
+		for (Method method : getHandlerMethods(listener.getClass()))
+		{
+			EventHandler annotation = method.getAnnotation(EventHandler.class);
+			Class<? extends Event> eventClass = method.getParameterTypes()[0].asSubclass(Event.class);
+			HandlerInvoker invoker;
+			try
+			{
+				invoker = bind(method, eventClass);
+			}
+			catch (Throwable t)
+			{
+				Faucet.plugin.getLogger().log(Level.SEVERE, "Could not bind handler " + listener.getClass().getName()
+						+ "." + method.getName() + " of module " + module.getClass().getSimpleName(), t);
+				continue;
+			}
+			handlers.add(new RegisteredHandler(module, listener, method.getName(), eventClass, annotation.priority(),
+					annotation.ignoreCancelled(), invoker));
+		}
+		for (RegisteredHandler handler : handlers)
+			getDispatch(handler.eventClass, handler.priority).add(handler);
+		byModule.computeIfAbsent(module, m -> new ArrayList<>()).addAll(handlers);
+		return handlers.size();
+	}
+
+	/** Removes all handlers of the given listener.
+	 *
+	 * @param module the module owning the listener.
+	 * @param listener the listener to unregister. */
+	public static synchronized void unregister(Module module, Listener listener)
+	{
+		List<RegisteredHandler> handlers = byModule.get(module);
+		if (handlers == null)
+			return;
+		for (RegisteredHandler handler : handlers)
+			if (handler.listener == listener)
+				getDispatch(handler.eventClass, handler.priority).remove(handler);
+		handlers.removeIf(handler -> handler.listener == listener);
+		if (handlers.isEmpty())
+			byModule.remove(module);
+	}
+
+	/** Removes all handlers that were registered for the given module.
+	 *
+	 * @param module the module to unregister. */
+	public static synchronized void unregister(Module module)
+	{
+		List<RegisteredHandler> handlers = byModule.remove(module);
+		if (handlers == null)
+			return;
+		for (RegisteredHandler handler : handlers)
+			getDispatch(handler.eventClass, handler.priority).remove(handler);
+	}
+
+	/** Takes a snapshot of the counters of every registered handler.
+	 *
+	 * @return the statistics, sorted by the total time spent in the handler, most expensive first. */
+	public static synchronized List<HandlerStatistics> getStatistics()
+	{
+		List<HandlerStatistics> statistics = new ArrayList<>();
+		for (List<RegisteredHandler> handlers : byModule.values())
+			for (RegisteredHandler handler : handlers)
+				statistics.add(handler.getStatistics());
+		statistics.sort(Comparator.comparingLong(HandlerStatistics::getTotalNanos).reversed());
+		return statistics;
+	}
+
+	/** Resets the counters of every registered handler. */
+	public static synchronized void resetStatistics()
+	{
+		for (List<RegisteredHandler> handlers : byModule.values())
+			for (RegisteredHandler handler : handlers)
+				handler.resetStatistics();
+	}
+
+	private static Dispatch getDispatch(Class<? extends Event> eventClass, EventPriority priority)
+	{
+		Dispatch[] byPriority = dispatches.computeIfAbsent(eventClass, c -> new Dispatch[EventPriority.values().length]);
+		Dispatch dispatch = byPriority[priority.ordinal()];
+		if (dispatch == null)
+		{
+			dispatch = new Dispatch(eventClass);
+			byPriority[priority.ordinal()] = dispatch;
+			Bukkit.getPluginManager().registerEvent(eventClass, dispatch, priority, dispatch, Faucet.plugin, false);
+		}
+		return dispatch;
+	}
+
+	private static List<Method> getHandlerMethods(Class<?> listenerClass)
+	{
+		List<Method> methods = new ArrayList<>();
+		Set<Method> candidates = new HashSet<>(Arrays.asList(listenerClass.getMethods()));
+		candidates.addAll(Arrays.asList(listenerClass.getDeclaredMethods()));
+		for (Method method : candidates)
+		{
+			if (method.isBridge() || method.isSynthetic() || !method.isAnnotationPresent(EventHandler.class))
+				continue;
+			Class<?>[] parameters = method.getParameterTypes();
+			if (parameters.length != 1 || !Event.class.isAssignableFrom(parameters[0]))
+			{
+				Faucet.plugin.getLogger().warning("Ignoring invalid handler " + listenerClass.getName() + "."
+						+ method.getName() + ", it must take exactly one Event as parameter.");
+				continue;
+			}
+			methods.add(method);
+		}
+		return methods;
+	}
+
+	/** Binds a handler method to a HandlerInvoker.</br>
+	 * On Java 9+ a private lookup inside the listener class is available, allowing the method to be compiled into a lambda the JIT can inline.
+	 * On Java 8 (or for static handlers) the invoker goes through a MethodHandle adapted to the invoker type, which still avoids the boxing
+	 * and access checks of Method.invoke. */
+	private static HandlerInvoker bind(Method method, Class<? extends Event> eventClass) throws Throwable
+	{
+		Class<?> owner = method.getDeclaringClass();
+		boolean isStatic = Modifier.isStatic(method.getModifiers());
+		MethodHandles.Lookup lookup = privateLookupIn(owner);
+		if (lookup != null && !isStatic)
+		{
+			MethodHandle target = lookup.unreflect(method);
+			CallSite site = LambdaMetafactory.metafactory(lookup, "invoke", MethodType.methodType(HandlerInvoker.class),
+					INVOKER_TYPE, target, MethodType.methodType(void.class, owner, eventClass));
+			return (HandlerInvoker) site.getTarget().invokeExact();
+		}
+		method.setAccessible(true);
+		MethodHandle target = MethodHandles.lookup().unreflect(method);
+		if (isStatic)
+			target = MethodHandles.dropArguments(target, 0, Listener.class);
+		MethodHandle handle = target.asType(INVOKER_TYPE);
+		return (listener, event) -> handle.invokeExact(listener, event);
+	}
+
+	private static MethodHandles.Lookup privateLookupIn(Class<?> owner)
+	{
+		if (PRIVATE_LOOKUP_IN == null)
+			return null;
+		try
+		{
+			return (MethodHandles.Lookup) PRIVATE_LOOKUP_IN.invoke(null, owner, MethodHandles.lookup());
+		}
+		catch (ReflectiveOperationException | SecurityException e)
+		{
+			return null;
+		}
+	}
+
+	private static Method findPrivateLookupIn()
+	{
+		try
+		{
+			return MethodHandles.class.getMethod("privateLookupIn", Class.class, MethodHandles.Lookup.class);
+		}
+		catch (NoSuchMethodException e)
+		{
+			return null;
+		}
+	}
+
+	/** The executor registered with Bukkit for one event type and priority. Holds the handlers of all modules as a copy-on-write array. */
+	private static final class Dispatch implements Listener, EventExecutor
+	{
+		private final Class<? extends Event> eventClass;
+		private volatile RegisteredHandler[] handlers = new RegisteredHandler[0];
+
+		Dispatch(Class<? extends Event> eventClass)
+		{
+			this.eventClass = eventClass;
+		}
+
+		void add(RegisteredHandler handler)
+		{
+			RegisteredHandler[] current = handlers;
+			RegisteredHandler[] updated = Arrays.copyOf(current, current.length + 1);
+			updated[current.length] = handler;
+			handlers = updated;
+		}
+
+		void remove(RegisteredHandler handler)
+		{
+			RegisteredHandler[] current = handlers;
+			List<RegisteredHandler> updated = new ArrayList<>(Arrays.asList(current));
+			if (updated.remove(handler))
+				handlers = updated.toArray(new RegisteredHandler[0]);
+		}
+
+		@Override
+		public void execute(Listener listener, Event event)
+		{
+			// Bukkit hands events of subclasses with a shared HandlerList to this executor too
+			if (!eventClass.isInstance(event))
+				return;
+			RegisteredHandler[] handlers = this.handlers;
+			Cancellable cancellable = event instanceof Cancellable ? (Cancellable) event : null;
+			for (RegisteredHandler handler : handlers)
+			{
+				if (handler.ignoreCancelled && cancellable != null && cancellable.isCancelled())
+					continue;
+				handler.invoke(event);
+			}
+		}
+	}
+}
@@ -0,0 +1,12 @@
+package com.redstoner.event;
+
+import org.bukkit.event.Event;
+import org.bukkit.event.Listener;
+
+/** Functional interface that the handler methods of registered listeners get bound to.</br>
+ * Needs to be public so that lambdas spun up inside of a module's class loader can implement it. */
+@FunctionalInterface
+public interface HandlerInvoker
+{
+	public void invoke(Listener listener, Event event) throws Throwable;
+}
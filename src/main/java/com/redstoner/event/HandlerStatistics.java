@@ -0,0 +1,84 @@
+package com.redstoner.event;
+
+import org.bukkit.event.EventPriority;
+
+/** An immutable snapshot of the invocation counters of one handler method registered through the EventDispatcher. */
+public final class HandlerStatistics
+{
+	private final String module;
+	private final String listener;
+	private final String method;
+	private final String event;
+	private final EventPriority priority;
+	private final long invocations;
+	private final long totalNanos;
+	private final long maxNanos;
+	
+	HandlerStatistics(String module, String listener, String method, String event, EventPriority priority,
+			long invocations, long totalNanos, long maxNanos)
+	{
+		this.module = module;
+		this.listener = listener;
+		this.method = method;
+		this.event = event;
+		this.priority = priority;
+		this.invocations = invocations;
+		this.totalNanos = totalNanos;
+		this.maxNanos = maxNanos;
+	}
+	
+	/** @return the simple class name of the module that registered the handler. */
+	public String getModule()
+	{
+		return module;
+	}
+	
+	/** @return the fully qualified class name of the listener. */
+	public String getListener()
+	{
+		return listener;
+	}
+	
+	public String getMethod()
+	{
+		return method;
+	}
+	
+	public String getEvent()
+	{
+		return event;
+	}
+	
+	public EventPriority getPriority()
+	{
+		return priority;
+	}
+	
+	/** @return how often the handler was called. Calls skipped because the event was cancelled are not counted. */
+	public long getInvocations()
+	{
+		return invocations;
+	}
+	
+	public long getTotalNanos()
+	{
+		return totalNanos;
+	}
+	
+	public long getMaxNanos()
+	{
+		return maxNanos;
+	}
+	
+	public long getAverageNanos()
+	{
+		return invocations == 0 ? 0 : totalNanos / invocations;
+	}
+	
+	@Override
+	public String toString()
+	{
+		return module + " " + listener + "." + method + "(" + event + ") [" + priority + "]: " + invocations
+				+ " calls, avg " + getAverageNanos() / 1000 + "µs, max " + maxNanos / 1000 + "µs";
+	}
+}
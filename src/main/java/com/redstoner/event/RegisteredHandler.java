@@ -0,0 +1,79 @@
+package com.redstoner.event;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+
+import org.bukkit.event.Event;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+
+import com.redstoner.faucet.Faucet;
+import com.redstoner.modules.Module;
+import com.redstoner.scheduler.ModuleProfiler;
+
+/** A single bound handler method, together with the counters used for its statistics. */
+final class RegisteredHandler
+{
+	final Module module;
+	private final String moduleName;
+	final Listener listener;
+	final String methodName;
+	final Class<? extends Event> eventClass;
+	final EventPriority priority;
+	final boolean ignoreCancelled;
+	private final HandlerInvoker invoker;
+	private final LongAdder invocations = new LongAdder();
+	private final LongAdder totalNanos = new LongAdder();
+	private final AtomicLong maxNanos = new AtomicLong();
+	
+	RegisteredHandler(Module module, Listener listener, String methodName, Class<? extends Event> eventClass,
+			EventPriority priority, boolean ignoreCancelled, HandlerInvoker invoker)
+	{
+		this.module = module;
+		this.moduleName = module.getClass().getSimpleName();
+		this.listener = listener;
+		this.methodName = methodName;
+		this.eventClass = eventClass;
+		this.priority = priority;
+		this.ignoreCancelled = ignoreCancelled;
+		this.invoker = invoker;
+	}
+	
+	void invoke(Event event)
+	{
+		boolean profiled = ModuleProfiler.begin();
+		long start = System.nanoTime();
+		try
+		{
+			invoker.invoke(listener, event);
+		}
+		catch (Throwable t)
+		{
+			Faucet.plugin.getLogger().log(Level.SEVERE, "Could not pass " + event.getEventName() + " to "
+					+ listener.getClass().getName() + "." + methodName, t);
+		}
+		finally
+		{
+			ModuleProfiler.end(moduleName, profiled);
+		}
+		long duration = System.nanoTime() - start;
+		invocations.increment();
+		totalNanos.add(duration);
+		if (duration > maxNanos.get())
+			maxNanos.accumulateAndGet(duration, Math::max);
+	}
+	
+	HandlerStatistics getStatistics()
+	{
+		return new HandlerStatistics(moduleName, listener.getClass().getName(), methodName,
+				eventClass.getSimpleName(), priority, invocations.sum(), totalNanos.sum(), maxNanos.get());
+	}
+	
+	void resetStatistics()
+	{
+		invocations.reset();
+		totalNanos.reset();
+		maxNanos.set(0);
+	}
+}
@@ -1,9 +1,26 @@
 package com.redstoner.faucet;
 
 import com.nemez.cmdmgr.Command;
+import com.nemez.cmdmgr.CommandManager;
 import com.redstoner.annotations.Version;
+import com.redstoner.misc.Audiences;
+import com.redstoner.misc.Metrics;
+import com.redstoner.misc.SaveQueue;
+import com.redstoner.misc.mysql.Config;
+import com.redstoner.misc.mysql.ConfigWatcher;
 import com.redstoner.misc.mysql.MysqlHandler;
+import com.redstoner.misc.mysql.QueryAdvisor;
+import com.redstoner.misc.mysql.QueryCommand;
+import com.redstoner.misc.mysql.QueryMonitor;
+import com.redstoner.misc.playerdata.PlayerDataCache;
+import com.redstoner.misc.store.KeyValueStore;
 import com.redstoner.modules.Module;
+import com.redstoner.modules.ModuleLogger;
+import com.redstoner.scheduler.ModuleProfiler;
+import com.redstoner.scheduler.ModuleScheduler;
+import com.redstoner.scheduler.ProfilerCommand;
+import com.redstoner.scheduler.Watchdog;
+import com.redstoner.scheduler.WorkScheduler;
 import net.nemez.chatapi.ChatAPI;
 import org.bukkit.plugin.java.JavaPlugin;
 
@@ -32,11 +49,31 @@ public class Faucet extends JavaPlugin
 		plugin = this;
 		ChatAPI.initialize(this);
 		MysqlHandler.init();
+		Audiences.init();
+		WorkScheduler.init();
+		Watchdog.init();
+		Metrics.register("modules", ModuleProfiler::collect);
+		Metrics.register("queries", QueryMonitor::collect);
+		Metrics.init();
+		CommandManager.registerCommand(ProfilerCommand.COMMAND, new ProfilerCommand(), this);
+		CommandManager.registerCommand(QueryCommand.COMMAND, new QueryCommand(), this);
 	}
 	
 	@Override
 	public void onDisable()
-	{}
+	{
+		Watchdog.shutdown();
+		Metrics.shutdown();
+		QueryAdvisor.shutdown();
+		ModuleScheduler.shutdownAll();
+		PlayerDataCache.closeAll();
+		MysqlHandler.shutdown();
+		ConfigWatcher.shutdown();
+		KeyValueStore.closeAll();
+		Config.flushAll();
+		SaveQueue.shutdown();
+		ModuleLogger.shutdown();
+	}
 	
 	@Command(hook = "load")
 	public static boolean loadModule()
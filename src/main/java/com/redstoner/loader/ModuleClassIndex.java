@@ -0,0 +1,65 @@
+package com.redstoner.loader;
+
+import java.net.URLClassLoader;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** Maps class names to the module whose jar defines them, e.g. to attribute stack frames to modules.</br>
+ * Stack frames only carry class names, so the jar of every loaded module is asked whether it contains the class. The answers are cached
+ * until a module gets loaded or unloaded. */
+public final class ModuleClassIndex
+{
+	private static final Map<URLClassLoader, String> loaders = new ConcurrentHashMap<>();
+	private static final Map<String, Optional<String>> cache = new ConcurrentHashMap<>();
+	
+	private ModuleClassIndex()
+	{}
+	
+	/** Called by the ModuleLoader once a module was loaded. */
+	static void register(String module, URLClassLoader loader)
+	{
+		loaders.put(loader, module);
+		cache.clear();
+	}
+	
+	/** Called by the ModuleLoader when a module gets unloaded, before its class loader is closed. */
+	static void unregister(URLClassLoader loader)
+	{
+		loaders.remove(loader);
+		cache.clear();
+	}
+	
+	/** @param className the fully qualified name of a class, as found in a stack frame.
+	 * @return the name of the module whose jar contains the class, or null if it does not belong to a module. */
+	public static String getModule(String className)
+	{
+		Optional<String> module = cache.get(className);
+		if (module == null)
+		{
+			module = Optional.ofNullable(lookup(className));
+			cache.put(className, module);
+		}
+		return module.orElse(null);
+	}
+	
+	/** @param loader the class loader that defined a class.
+	 * @return the name of the module the class loader belongs to, or null if it does not belong to a module. */
+	public static String getModule(ClassLoader loader)
+	{
+		return loader == null ? null : loaders.get(loader);
+	}
+	
+	private static String lookup(String className)
+	{
+		int nested = className.indexOf('$');
+		String resource = (nested < 0 ? className : className.substring(0, nested)).replace('.', '/') + ".class";
+		for (Map.Entry<URLClassLoader, String> entry : loaders.entrySet())
+		{
+			// only searches the module's own jar, not its parent
+			if (entry.getKey().findResource(resource) != null)
+				return entry.getValue();
+		}
+		return null;
+	}
+}
@@ -1,8 +1,13 @@
 package com.redstoner.loader;
 
+import com.redstoner.annotations.AutoRegisterListener;
+import com.redstoner.event.EventDispatcher;
 import com.redstoner.exceptions.InvalidModuleException;
 import com.redstoner.faucet.Faucet;
 import com.redstoner.modules.Module;
+import com.redstoner.scheduler.ModuleProfiler;
+import com.redstoner.scheduler.ModuleScheduler;
+import com.redstoner.scheduler.WorkScheduler;
 import com.redstoner.util.Checksum;
 
 import java.io.File;
@@ -13,6 +18,8 @@ import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.Arrays;
 
+import org.bukkit.event.Listener;
+
 public class ModuleLoader
 {
 	private final Faucet faucet;
@@ -55,23 +62,43 @@ public class ModuleLoader
 			throw new IllegalStateException("Cannot load a module when it is loaded");
 		}
 
-		ClassLoader classLoader = new URLClassLoader(new URL[]{jarFileURL}, faucet.getParentLoader());
+		URLClassLoader classLoader = new URLClassLoader(new URL[]{jarFileURL}, faucet.getParentLoader());
 		ModuleDescriptor descriptor;
 		try (InputStream descriptorStream = classLoader.getResourceAsStream("module-descriptor.yml"))
 		{
 			if (descriptorStream == null)
 			{
+				closeQuietly(classLoader);
 				throw InvalidModuleException.descriptorFileMissing(this);
 			}
 
 			descriptor = ModuleDescriptor.load(descriptorStream);
 		} catch (IOException e)
 		{
+			closeQuietly(classLoader);
 			throw new InvalidModuleException(e);
 		}
 
+		Module module;
+		try
+		{
+			Class<?> mainClass = Class.forName(descriptor.getMainClass(), true, classLoader);
+			module = mainClass.asSubclass(Module.class).getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException | ClassCastException e)
+		{
+			// the module is not loaded, release its jar
+			closeQuietly(classLoader);
+			throw new InvalidModuleException("Could not instantiate main class of module \"" + moduleName + "\"", e);
+		}
+
 		this.classLoader = classLoader;
+		ModuleClassIndex.register(moduleName, classLoader);
 		this.moduleDescriptor = descriptor;
+		this.loadedModule = module;
+		this.jarFileLastModified = jarFile.lastModified();
+		this.jarFileChecksum = computeChecksum();
+		this.loadTime = System.currentTimeMillis();
+		this.isLoaded = true;
 
 		// TODO
 		// needs to check if version is newer than the old one, if an old one is present
@@ -104,9 +131,87 @@ public class ModuleLoader
 		return !Arrays.equals(checksum, this.jarFileChecksum);
 	}
 
+	/** Enables the loaded module. If the main class is annotated with @AutoRegisterListener and implements Listener,
+	 * its handlers get registered through the EventDispatcher.
+	 *
+	 * @return true if the module enabled successfully. */
+	public boolean enable()
+	{
+		if (!isLoaded)
+		{
+			throw new IllegalStateException("Cannot enable a module that is not loaded");
+		}
+		if (isEnabled)
+		{
+			return true;
+		}
+
+		boolean profiled = ModuleProfiler.begin();
+		try
+		{
+			isEnabled = loadedModule.onEnable();
+		} finally
+		{
+			ModuleProfiler.end(loadedModule, profiled);
+		}
+		if (isEnabled && loadedModule instanceof Listener
+				&& loadedModule.getClass().isAnnotationPresent(AutoRegisterListener.class))
+		{
+			EventDispatcher.register(loadedModule, (Listener) loadedModule);
+		}
+		Faucet.states.put(loadedModule, isEnabled);
+		return isEnabled;
+	}
+
 	public void unload()
 	{
+		if (!isLoaded)
+		{
+			return;
+		}
+
+		if (isEnabled)
+		{
+			EventDispatcher.unregister(loadedModule);
+			boolean profiled = ModuleProfiler.begin();
+			try
+			{
+				loadedModule.onDisable();
+			} finally
+			{
+				ModuleProfiler.end(loadedModule, profiled);
+			}
+			ModuleScheduler.shutdown(loadedModule);
+			WorkScheduler.cancel(loadedModule);
+			Faucet.states.put(loadedModule, false);
+			isEnabled = false;
+		}
 
+		if (classLoader instanceof URLClassLoader)
+		{
+			ModuleClassIndex.unregister((URLClassLoader) classLoader);
+			try
+			{
+				((URLClassLoader) classLoader).close();
+			} catch (IOException e)
+			{
+				e.printStackTrace();
+			}
+		}
+
+		Faucet.states.remove(loadedModule);
+		loadedModule = null;
+		classLoader = null;
+		isLoaded = false;
+	}
+
+	private static void closeQuietly(URLClassLoader classLoader)
+	{
+		try
+		{
+			classLoader.close();
+		} catch (IOException e)
+		{}
 	}
 
 	private byte[] computeChecksum()
@@ -149,4 +254,9 @@ public class ModuleLoader
 		return isEnabled;
 	}
 
+	public long getLoadTime()
+	{
+		return loadTime;
+	}
+
 }
@@ -0,0 +1,124 @@
+package com.redstoner.misc;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Predicate;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+
+/** A named set of online players that is kept up to date incrementally instead of being evaluated on every broadcast.</br>
+ * Membership is decided by a predicate, which gets re-evaluated for a player when they join, change worlds or are refreshed through {@link Audiences#refresh(Player)}.
+ * Get instances through the factory methods in {@link Audiences}. */
+public final class Audience
+{
+	/** Audiences larger than this get their messages delivered off the calling thread. */
+	public static final int ASYNC_THRESHOLD = 64;
+
+	private static final ExecutorService delivery = Executors.newSingleThreadExecutor(runnable ->
+	{
+		Thread thread = new Thread(runnable, "Faucet Broadcast Delivery");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final String name;
+	private final Predicate<Player> predicate;
+	private final boolean includeConsole;
+	private volatile Player[] members = new Player[0];
+
+	Audience(String name, Predicate<Player> predicate, boolean includeConsole)
+	{
+		this.name = name;
+		this.predicate = predicate;
+		this.includeConsole = includeConsole;
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	/** @return true if messages to this audience also get logged to console. */
+	public boolean includesConsole()
+	{
+		return includeConsole;
+	}
+
+	/** @return a snapshot of the current members. Do not modify the returned array. */
+	public Player[] getMembers()
+	{
+		return members;
+	}
+
+	public int size()
+	{
+		return members.length;
+	}
+
+	public boolean contains(Player player)
+	{
+		for (Player member : members)
+			if (member == player)
+				return true;
+		return false;
+	}
+
+	/** Sends a pre-built message to every member, and to console if this audience includes it.</br>
+	 * If the audience is larger than {@link #ASYNC_THRESHOLD}, the players receive the message from a separate thread, in the order the messages were sent.
+	 *
+	 * @param message the complete message, including any prefix.
+	 * @return the amount of recipients. */
+	public int send(String message)
+	{
+		Player[] recipients = members;
+		if (recipients.length > ASYNC_THRESHOLD)
+			delivery.execute(() -> deliver(recipients, message));
+		else
+			deliver(recipients, message);
+		if (includeConsole)
+		{
+			Bukkit.getConsoleSender().sendMessage(message);
+			return recipients.length + 1;
+		}
+		return recipients.length;
+	}
+
+	private static void deliver(Player[] recipients, String message)
+	{
+		for (Player player : recipients)
+			player.sendMessage(message);
+	}
+
+	/** Re-evaluates the predicate for the given player and adds or removes them accordingly. */
+	synchronized void update(Player player)
+	{
+		boolean member = contains(player);
+		boolean matches = player.isOnline() && predicate.test(player);
+		if (matches && !member)
+		{
+			Player[] updated = Arrays.copyOf(members, members.length + 1);
+			updated[members.length] = player;
+			members = updated;
+		}
+		else if (!matches && member)
+			remove(player);
+	}
+
+	synchronized void remove(Player player)
+	{
+		Player[] current = members;
+		for (int i = 0; i < current.length; i++)
+		{
+			if (current[i] == player)
+			{
+				Player[] updated = new Player[current.length - 1];
+				System.arraycopy(current, 0, updated, 0, i);
+				System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+				members = updated;
+				return;
+			}
+		}
+	}
+}
@@ -0,0 +1,124 @@
+package com.redstoner.misc;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerChangedWorldEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+import com.redstoner.faucet.Faucet;
+
+/** The registry of all Audiences. Keeps their members up to date on join, quit and world change.</br>
+ * Bukkit has no event for permission changes, so permission based audiences are additionally refreshed periodically.
+ * Modules that change permissions themselves should call {@link #refresh(Player)} afterwards. */
+public final class Audiences
+{
+	/** The interval in ticks at which all audiences get re-evaluated for all online players. */
+	public static final long REFRESH_INTERVAL = 100;
+
+	private static final Map<String, Audience> audiences = new ConcurrentHashMap<>();
+
+	private Audiences()
+	{}
+
+	/** Starts tracking join, quit and world change events. Called by Faucet on enable. */
+	public static void init()
+	{
+		Bukkit.getPluginManager().registerEvents(new AudienceListener(), Faucet.plugin);
+		Bukkit.getScheduler().runTaskTimer(Faucet.plugin, Audiences::refreshAll, REFRESH_INTERVAL, REFRESH_INTERVAL);
+	}
+
+	/** Gets or creates the audience of all players with the given permission. Console is included.
+	 *
+	 * @param permission the permission node.
+	 * @return the audience. */
+	public static Audience permission(String permission)
+	{
+		return get("permission:" + permission, player -> player.hasPermission(permission), true);
+	}
+
+	/** Gets or creates the audience of all players in the given world. Console is not included.
+	 *
+	 * @param world the name of the world.
+	 * @return the audience. */
+	public static Audience world(String world)
+	{
+		return get("world:" + world, player -> player.getWorld().getName().equals(world), false);
+	}
+
+	/** Gets or creates a custom audience. If an audience with that name already exists, it is returned instead and the arguments are ignored.
+	 *
+	 * @param name the unique name of the audience.
+	 * @param predicate decides whether a player is part of the audience. Gets called on the main thread.
+	 * @param includeConsole whether messages to this audience should be logged to console.
+	 * @return the audience. */
+	public static Audience get(String name, Predicate<Player> predicate, boolean includeConsole)
+	{
+		Audience audience = audiences.get(name);
+		if (audience != null)
+			return audience;
+		audience = new Audience(name, predicate, includeConsole);
+		Audience previous = audiences.putIfAbsent(name, audience);
+		if (previous != null)
+			return previous;
+		for (Player player : Bukkit.getOnlinePlayers())
+			audience.update(player);
+		return audience;
+	}
+
+	/** @param name the name of the audience.
+	 * @return the audience or null if there is none with that name. */
+	public static Audience getExisting(String name)
+	{
+		return audiences.get(name);
+	}
+
+	/** Stops maintaining the audience with the given name. */
+	public static void remove(String name)
+	{
+		audiences.remove(name);
+	}
+
+	/** Re-evaluates every audience for the given player, e.g. after their permissions changed. */
+	public static void refresh(Player player)
+	{
+		for (Audience audience : audiences.values())
+			audience.update(player);
+	}
+
+	/** Re-evaluates every audience for every online player. */
+	public static void refreshAll()
+	{
+		for (Player player : Bukkit.getOnlinePlayers())
+			refresh(player);
+	}
+
+	private static final class AudienceListener implements Listener
+	{
+		@EventHandler(priority = EventPriority.LOWEST)
+		public void onJoin(PlayerJoinEvent event)
+		{
+			refresh(event.getPlayer());
+		}
+
+		@EventHandler(priority = EventPriority.MONITOR)
+		public void onQuit(PlayerQuitEvent event)
+		{
+			for (Audience audience : audiences.values())
+				audience.remove(event.getPlayer());
+		}
+
+		@EventHandler(priority = EventPriority.LOWEST)
+		public void onWorldChange(PlayerChangedWorldEvent event)
+		{
+			refresh(event.getPlayer());
+		}
+	}
+}
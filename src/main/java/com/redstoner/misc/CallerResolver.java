@@ -0,0 +1,45 @@
+package com.redstoner.misc;
+
+import java.util.List;
+
+import com.redstoner.loader.ModuleClassIndex;
+
+/** Resolves the simple class name of the first caller outside of Utils, used for auto generated broadcast prefixes, and the calling module.</br>
+ * This is the Java 8 implementation, which reads the class names of a stack trace. SecurityManager is deprecated for removal, so its class
+ * context is not used.
+ * On Java 9+ the multi-release jar replaces this class with a StackWalker based one. */
+final class CallerResolver
+{
+	private static final String SELF = CallerResolver.class.getName();
+	
+	private CallerResolver()
+	{}
+	
+	/** @param ignored simple class names to skip in addition to Utils. Null if supposed to be ignored.
+	 * @return the simple name of the calling class. */
+	static String getCaller(List<String> ignored)
+	{
+		for (StackTraceElement frame : new Throwable().getStackTrace())
+		{
+			String className = frame.getClassName();
+			if (className.equals(SELF))
+				continue;
+			String name = className.substring(className.lastIndexOf('.') + 1);
+			if (!name.equals("Utils") && (ignored == null || !ignored.contains(name)))
+				return name;
+		}
+		return "Utils";
+	}
+	
+	/** @return the name of the innermost module on the stack, or null if there is none. */
+	static String getModule()
+	{
+		for (StackTraceElement frame : new Throwable().getStackTrace())
+		{
+			String module = ModuleClassIndex.getModule(frame.getClassName());
+			if (module != null)
+				return module;
+		}
+		return null;
+	}
+}
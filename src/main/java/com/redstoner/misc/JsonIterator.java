@@ -0,0 +1,84 @@
+package com.redstoner.misc;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/** Lazily iterates over the elements of a JSON array or the entries of a JSON object in a file, parsing one element at a time.</br>
+ * Must be closed once done, preferably with try-with-resources. Reaching the end closes it automatically.
+ *
+ * @param <T> the type of the elements. */
+public final class JsonIterator<T> implements Iterator<T>, Closeable
+{
+	@FunctionalInterface
+	interface ElementReader<T>
+	{
+		T read(JsonParser parser) throws IOException;
+	}
+
+	private final JsonParser parser;
+	private final JsonToken end;
+	private final ElementReader<T> reader;
+	private JsonToken next;
+
+	JsonIterator(JsonParser parser, JsonToken end, ElementReader<T> reader)
+	{
+		this.parser = parser;
+		this.end = end;
+		this.reader = reader;
+	}
+
+	@Override
+	public boolean hasNext()
+	{
+		if (next == null)
+		{
+			try
+			{
+				next = parser.nextToken();
+			}
+			catch (IOException e)
+			{
+				close();
+				throw new UncheckedIOException(e);
+			}
+			if (next == null || next == end)
+				close();
+		}
+		return next != null && next != end;
+	}
+
+	/** @throws UncheckedIOException if the file could not be read or is not valid JSON. */
+	@Override
+	public T next()
+	{
+		if (!hasNext())
+			throw new NoSuchElementException();
+		next = null;
+		try
+		{
+			return reader.read(parser);
+		}
+		catch (IOException e)
+		{
+			close();
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public void close()
+	{
+		try
+		{
+			parser.close();
+		}
+		catch (IOException e)
+		{}
+	}
+}
@@ -2,15 +2,13 @@ package com.redstoner.misc;
 
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
-import org.json.simple.parser.ParseException;
 
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 
-/** This class provides simple JSON handling, like storing and loading from and to files.
+/** This class provides simple JSON handling, like storing and loading from and to files.</br>
+ * For files too large to be loaded as a whole, see @JsonStream.
  * 
  * @author Pepich */
 public class JsonManager
@@ -18,7 +16,7 @@ public class JsonManager
 	private JsonManager()
 	{}
 	
-	/** Loads a JSONObject from a file.
+	/** Loads a JSONObject from a file. The file may be stored in any @StorageFormat.
 	 * 
 	 * @param source the file to load from.
 	 * @return the JSONObject or null if the source does not contain a valid JSONObject. */
@@ -26,36 +24,56 @@ public class JsonManager
 	{
 		if (!source.exists())
 			return null;
-		JSONParser parser = new JSONParser();
 		try
 		{
-			FileReader reader = new FileReader(source);
-			Object rawObject = parser.parse(reader);
-			reader.close();
-			JSONObject jsonObject = (JSONObject) rawObject;
-			return jsonObject;
+			Object rawObject = JsonStream.read(source);
+			if (rawObject instanceof JSONObject)
+				return (JSONObject) rawObject;
 		}
-		catch (IOException | ParseException e)
+		catch (IOException e)
 		{}
 		return null;
 	}
 	
+	/** Loads a JSONObject from a file stored in the given format. If only the file in another format exists, e.g. "data.json" when asking for
+	 * "data.smile", it is migrated to the given format first, once.
+	 * 
+	 * @param source the file to load from. Its extension gets replaced by the one of the format.
+	 * @param format the format the file should be stored in.
+	 * @return the JSONObject or null if the source does not contain a valid JSONObject. */
+	public static JSONObject getObject(File source, StorageFormat format)
+	{
+		try
+		{
+			return getObject(JsonStream.migrate(StorageFormat.JSON.resolve(source), format));
+		}
+		catch (IOException e)
+		{
+			return getObject(source);
+		}
+	}
+	
 	/** Saves a JSONObject to a file. Will create the necessary FileStructure like folders and the file itself.</br>
-	 * Note that this operation will be run on a different thread and you do not need to take care of that yourself.
+	 * Note that this operation will be run on a different thread and you do not need to take care of that yourself.</br>
+	 * The object is serialized right away, so it is safe to keep modifying it afterwards. If the file is saved again before the write happened,
+	 * only the latest content gets written.
 	 * 
 	 * @param object the JSONObject to save.
 	 * @param destination the file to write to. */
 	public static void save(JSONObject object, File destination)
 	{
-		Thread t = new Thread(new Runnable()
-		{
-			@Override
-			public void run()
-			{
-				saveSync(object, destination);
-			}
-		});
-		t.start();
+		SaveQueue.save(object.toJSONString().getBytes(StandardCharsets.UTF_8), destination);
+	}
+	
+	/** Saves a JSONObject to a file in the given format. Will create the necessary FileStructure like folders and the file itself.</br>
+	 * Note that this operation will be run on a different thread and you do not need to take care of that yourself.
+	 * 
+	 * @param object the JSONObject to save.
+	 * @param destination the file to write to. Use @StorageFormat.resolve to get a matching extension.
+	 * @param format the format to store the object in. */
+	public static void save(JSONObject object, File destination, StorageFormat format)
+	{
+		SaveQueue.save(JsonStream.toBytes(object, format), destination);
 	}
 	
 	/** Saves a JSONObject to a file. Will create the necessary FileStructure like folders and the file itself.</br>
@@ -65,23 +83,15 @@ public class JsonManager
 	 * @param destination the file to write to. */
 	public static void saveSync(JSONObject object, File destination)
 	{
-		if (destination.exists())
-			destination.delete();
-		else if (!destination.getParentFile().exists())
-			destination.getParentFile().mkdirs();
 		try
 		{
-			destination.createNewFile();
-			FileWriter writer = new FileWriter(destination);
-			object.writeJSONString(writer);
-			writer.flush();
-			writer.close();
+			SaveQueue.saveSync(object.toJSONString().getBytes(StandardCharsets.UTF_8), destination);
 		}
 		catch (IOException e)
 		{}
 	}
 	
-	/** Loads a JSONArray from a file.
+	/** Loads a JSONArray from a file. The file may be stored in any @StorageFormat.
 	 * 
 	 * @param source the file to load from.
 	 * @return the JSONArray or null if the source does not contain a valid JSONArray. */
@@ -89,34 +99,56 @@ public class JsonManager
 	{
 		if (!source.exists())
 			return null;
-		JSONParser parser = new JSONParser();
 		try
 		{
-			Object rawObject = parser.parse(new FileReader(source));
-			JSONArray jsonArray = (JSONArray) rawObject;
-			return jsonArray;
+			Object rawObject = JsonStream.read(source);
+			if (rawObject instanceof JSONArray)
+				return (JSONArray) rawObject;
 		}
-		catch (IOException | ParseException e)
+		catch (IOException e)
 		{}
 		return null;
 	}
 	
+	/** Loads a JSONArray from a file stored in the given format. If only the file in another format exists, e.g. "data.json" when asking for
+	 * "data.smile", it is migrated to the given format first, once.
+	 * 
+	 * @param source the file to load from. Its extension gets replaced by the one of the format.
+	 * @param format the format the file should be stored in.
+	 * @return the JSONArray or null if the source does not contain a valid JSONArray. */
+	public static JSONArray getArray(File source, StorageFormat format)
+	{
+		try
+		{
+			return getArray(JsonStream.migrate(StorageFormat.JSON.resolve(source), format));
+		}
+		catch (IOException e)
+		{
+			return getArray(source);
+		}
+	}
+	
 	/** Saves a JSONArray to a file. Will create the necessary FileStructure like folders and the file itself.</br>
-	 * Note that this operation will be run on a different thread and you do not need to take care of that yourself.
+	 * Note that this operation will be run on a different thread and you do not need to take care of that yourself.</br>
+	 * The array is serialized right away, so it is safe to keep modifying it afterwards. If the file is saved again before the write happened,
+	 * only the latest content gets written.
 	 * 
 	 * @param object the JSONArray to save.
 	 * @param destination the file to write to. */
 	public static void save(JSONArray array, File destination)
 	{
-		Thread t = new Thread(new Runnable()
-		{
-			@Override
-			public void run()
-			{
-				saveSync(array, destination);
-			}
-		});
-		t.start();
+		SaveQueue.save(array.toJSONString().getBytes(StandardCharsets.UTF_8), destination);
+	}
+	
+	/** Saves a JSONArray to a file in the given format. Will create the necessary FileStructure like folders and the file itself.</br>
+	 * Note that this operation will be run on a different thread and you do not need to take care of that yourself.
+	 * 
+	 * @param array the JSONArray to save.
+	 * @param destination the file to write to. Use @StorageFormat.resolve to get a matching extension.
+	 * @param format the format to store the array in. */
+	public static void save(JSONArray array, File destination, StorageFormat format)
+	{
+		SaveQueue.save(JsonStream.toBytes(array, format), destination);
 	}
 	
 	/** Saves a JSONArray to a file. Will create the necessary FileStructure like folders and the file itself.</br>
@@ -126,17 +158,9 @@ public class JsonManager
 	 * @param destination the file to write to. */
 	public static void saveSync(JSONArray array, File destination)
 	{
-		if (destination.exists())
-			destination.delete();
-		else if (!destination.getParentFile().exists())
-			destination.getParentFile().mkdirs();
 		try
 		{
-			destination.createNewFile();
-			FileWriter writer = new FileWriter(destination);
-			array.writeJSONString(writer);
-			writer.flush();
-			writer.close();
+			SaveQueue.saveSync(array.toJSONString().getBytes(StandardCharsets.UTF_8), destination);
 		}
 		catch (IOException e)
 		{}
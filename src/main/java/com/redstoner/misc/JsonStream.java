@@ -0,0 +1,357 @@
+package com.redstoner.misc;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONAware;
+import org.json.simple.JSONObject;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/** Streaming JSON file access based on the Jackson streaming API, for data files that are too large to comfortably load and save as a whole.</br>
+ * Values are read into the same types json-simple produces (JSONObject, JSONArray, String, Long, Double, Boolean and null),
+ * so the results can be used wherever a json-simple tree is expected.</br>
+ * Files can be written in any @StorageFormat. Reading detects the format from the content of the file. */
+public final class JsonStream
+{
+	private JsonStream()
+	{}
+
+	/** Reads the complete value stored in a file.
+	 *
+	 * @param source the file to read.
+	 * @return the value, which is a JSONObject or JSONArray for object and array files.
+	 * @throws IOException if the file could not be read or is not valid JSON. */
+	public static Object read(File source) throws IOException
+	{
+		try (JsonParser parser = createParser(source))
+		{
+			if (parser.nextToken() == null)
+				throw new JsonParseException(parser, "File is empty");
+			return readValue(parser);
+		}
+	}
+
+	/** Reads a complete value from encoded content, e.g. as produced by {@link #toBytes(Object, StorageFormat)}. The format is detected
+	 * from the content.
+	 *
+	 * @param content the encoded value.
+	 * @return the value, which is a JSONObject or JSONArray for objects and arrays.
+	 * @throws IOException if the content is not valid. */
+	public static Object read(byte[] content) throws IOException
+	{
+		try (JsonParser parser = StorageFormat.detect(content, content.length).getFactory().createParser(content))
+		{
+			if (parser.nextToken() == null)
+				throw new JsonParseException(parser, "Content is empty");
+			return readValue(parser);
+		}
+	}
+
+	/** Lazily iterates over the elements of the array stored in a file.
+	 *
+	 * @param source the file to read.
+	 * @return an iterator over the elements, which must be closed once done.
+	 * @throws IOException if the file could not be opened or does not contain an array. */
+	public static JsonIterator<Object> iterateArray(File source) throws IOException
+	{
+		JsonParser parser = open(source, JsonToken.START_ARRAY);
+		return new JsonIterator<>(parser, JsonToken.END_ARRAY, JsonStream::readValue);
+	}
+
+	/** Lazily iterates over the entries of the object stored in a file.
+	 *
+	 * @param source the file to read.
+	 * @return an iterator over the entries, which must be closed once done.
+	 * @throws IOException if the file could not be opened or does not contain an object. */
+	public static JsonIterator<Map.Entry<String, Object>> iterateObject(File source) throws IOException
+	{
+		JsonParser parser = open(source, JsonToken.START_OBJECT);
+		return new JsonIterator<>(parser, JsonToken.END_OBJECT, p ->
+		{
+			String key = p.getCurrentName();
+			p.nextToken();
+			return new SimpleImmutableEntry<>(key, readValue(p));
+		});
+	}
+
+	/** Writes a value to a file without building its string representation first. The file is replaced atomically once written.
+	 *
+	 * @param value the value to write. Maps, Collections, arrays, Strings, Numbers, Booleans and null are supported.
+	 * @param destination the file to write to.
+	 * @throws IOException if the file could not be written. */
+	public static void write(Object value, File destination) throws IOException
+	{
+		write(value, destination, StorageFormat.JSON);
+	}
+
+	/** Writes a value to a file in the given format without building its complete representation first. The file is replaced atomically once written.
+	 *
+	 * @param value the value to write. Maps, Collections, arrays, Strings, Numbers, Booleans and null are supported.
+	 * @param destination the file to write to.
+	 * @param format the format to write in.
+	 * @throws IOException if the file could not be written. */
+	public static void write(Object value, File destination, StorageFormat format) throws IOException
+	{
+		SaveQueue.saveSync(out ->
+		{
+			try (JsonGenerator generator = format.getFactory().createGenerator(out))
+			{
+				writeValue(generator, value);
+			}
+		}, destination);
+	}
+
+	/** Writes an array to a file, pulling the elements from the iterator one at a time. The file is replaced atomically once written.
+	 *
+	 * @param elements the elements of the array.
+	 * @param destination the file to write to.
+	 * @throws IOException if the file could not be written. */
+	public static void writeArray(Iterator<?> elements, File destination) throws IOException
+	{
+		writeArray(elements, destination, StorageFormat.JSON);
+	}
+
+	/** Writes an array to a file in the given format, pulling the elements from the iterator one at a time. The file is replaced atomically once written.
+	 *
+	 * @param elements the elements of the array.
+	 * @param destination the file to write to.
+	 * @param format the format to write in.
+	 * @throws IOException if the file could not be written. */
+	public static void writeArray(Iterator<?> elements, File destination, StorageFormat format) throws IOException
+	{
+		SaveQueue.saveSync(out ->
+		{
+			try (JsonGenerator generator = format.getFactory().createGenerator(out))
+			{
+				generator.writeStartArray();
+				while (elements.hasNext())
+					writeValue(generator, elements.next());
+				generator.writeEndArray();
+			}
+		}, destination);
+	}
+
+	/** Writes an object to a file, pulling the entries from the iterator one at a time. The file is replaced atomically once written.
+	 *
+	 * @param entries the entries of the object. Keys are converted with String.valueOf.
+	 * @param destination the file to write to.
+	 * @throws IOException if the file could not be written. */
+	public static void writeObject(Iterator<? extends Map.Entry<?, ?>> entries, File destination) throws IOException
+	{
+		writeObject(entries, destination, StorageFormat.JSON);
+	}
+
+	/** Writes an object to a file in the given format, pulling the entries from the iterator one at a time. The file is replaced atomically once written.
+	 *
+	 * @param entries the entries of the object. Keys are converted with String.valueOf.
+	 * @param destination the file to write to.
+	 * @param format the format to write in.
+	 * @throws IOException if the file could not be written. */
+	public static void writeObject(Iterator<? extends Map.Entry<?, ?>> entries, File destination, StorageFormat format)
+			throws IOException
+	{
+		SaveQueue.saveSync(out ->
+		{
+			try (JsonGenerator generator = format.getFactory().createGenerator(out))
+			{
+				generator.writeStartObject();
+				while (entries.hasNext())
+				{
+					Map.Entry<?, ?> entry = entries.next();
+					generator.writeFieldName(String.valueOf(entry.getKey()));
+					writeValue(generator, entry.getValue());
+				}
+				generator.writeEndObject();
+			}
+		}, destination);
+	}
+
+	/** Encodes a value in the given format, e.g. to hand it to the SaveQueue.
+	 *
+	 * @param value the value to encode.
+	 * @param format the format to encode in.
+	 * @return the encoded value. */
+	public static byte[] toBytes(Object value, StorageFormat format)
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (JsonGenerator generator = format.getFactory().createGenerator(out))
+		{
+			writeValue(generator, value);
+		}
+		catch (IOException e)
+		{
+			// a ByteArrayOutputStream does not throw
+			throw new UncheckedIOException(e);
+		}
+		return out.toByteArray();
+	}
+
+	/** Moves a data file to the given format, once. If the file in the target format exists already, nothing happens.
+	 * Otherwise an existing source file gets converted, and is renamed to "&lt;name&gt;.migrated" afterwards so it is not migrated again.
+	 *
+	 * @param source the file in its old format, e.g. "data.json".
+	 * @param format the format to move to.
+	 * @return the file in the target format, e.g. "data.smile". It does not exist if neither did the source.
+	 * @throws IOException if the file could not be converted. */
+	public static File migrate(File source, StorageFormat format) throws IOException
+	{
+		File target = format.resolve(source);
+		if (target.exists() || !source.exists() || target.equals(source))
+			return target;
+		try (JsonParser parser = createParser(source))
+		{
+			SaveQueue.saveSync(out ->
+			{
+				try (JsonGenerator generator = format.getFactory().createGenerator(out))
+				{
+					while (parser.nextToken() != null)
+						generator.copyCurrentStructure(parser);
+				}
+			}, target);
+		}
+		File migrated = new File(source.getPath() + ".migrated");
+		if (!source.renameTo(migrated))
+			throw new IOException("Could not rename " + source + " after migrating it to " + target);
+		return target;
+	}
+
+	/** Reads the value starting at the current token of the parser into json-simple types. */
+	@SuppressWarnings("unchecked")
+	static Object readValue(JsonParser parser) throws IOException
+	{
+		switch (parser.getCurrentToken())
+		{
+			case START_OBJECT:
+				JSONObject object = new JSONObject();
+				while (parser.nextToken() == JsonToken.FIELD_NAME)
+				{
+					String key = parser.getCurrentName();
+					parser.nextToken();
+					object.put(key, readValue(parser));
+				}
+				return object;
+			case START_ARRAY:
+				JSONArray array = new JSONArray();
+				while (parser.nextToken() != JsonToken.END_ARRAY)
+					array.add(readValue(parser));
+				return array;
+			case VALUE_STRING:
+				return parser.getText();
+			case VALUE_NUMBER_INT:
+				return parser.getNumberType() == JsonParser.NumberType.BIG_INTEGER ? parser.getBigIntegerValue()
+						: (Object) parser.getLongValue();
+			case VALUE_NUMBER_FLOAT:
+				return parser.getDoubleValue();
+			case VALUE_TRUE:
+				return Boolean.TRUE;
+			case VALUE_FALSE:
+				return Boolean.FALSE;
+			case VALUE_NULL:
+				return null;
+			default:
+				throw new JsonParseException(parser, "Unexpected token " + parser.getCurrentToken());
+		}
+	}
+
+	/** Writes a value of any of the types json-simple can write. */
+	static void writeValue(JsonGenerator generator, Object value) throws IOException
+	{
+		if (value == null)
+			generator.writeNull();
+		else if (value instanceof String)
+			generator.writeString((String) value);
+		else if (value instanceof Map)
+		{
+			generator.writeStartObject();
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet())
+			{
+				generator.writeFieldName(String.valueOf(entry.getKey()));
+				writeValue(generator, entry.getValue());
+			}
+			generator.writeEndObject();
+		}
+		else if (value instanceof Iterable)
+		{
+			generator.writeStartArray();
+			for (Object element : (Iterable<?>) value)
+				writeValue(generator, element);
+			generator.writeEndArray();
+		}
+		else if (value instanceof Object[])
+		{
+			generator.writeStartArray();
+			for (Object element : (Object[]) value)
+				writeValue(generator, element);
+			generator.writeEndArray();
+		}
+		else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte)
+			generator.writeNumber(((Number) value).longValue());
+		else if (value instanceof Double || value instanceof Float)
+			generator.writeNumber(((Number) value).doubleValue());
+		else if (value instanceof BigInteger)
+			generator.writeNumber((BigInteger) value);
+		else if (value instanceof BigDecimal)
+			generator.writeNumber((BigDecimal) value);
+		else if (value instanceof Boolean)
+			generator.writeBoolean((Boolean) value);
+		else if (value instanceof JSONAware)
+			generator.writeRawValue(((JSONAware) value).toJSONString());
+		else
+			generator.writeString(value.toString());
+	}
+
+	/** Creates a parser for the file, picking the factory of the format the file is stored in.
+	 *
+	 * @throws FileNotFoundException if the file does not exist, like the readers of json-simple did. */
+	static JsonParser createParser(File source) throws IOException
+	{
+		InputStream in = new BufferedInputStream(new FileInputStream(source));
+		try
+		{
+			byte[] header = new byte[4];
+			in.mark(header.length);
+			int length = 0, read;
+			while (length < header.length && (read = in.read(header, length, header.length - length)) > 0)
+				length += read;
+			in.reset();
+			return StorageFormat.detect(header, length).getFactory().createParser(in);
+		}
+		catch (IOException e)
+		{
+			in.close();
+			throw e;
+		}
+	}
+
+	private static JsonParser open(File source, JsonToken expected) throws IOException
+	{
+		JsonParser parser = createParser(source);
+		try
+		{
+			if (parser.nextToken() != expected)
+				throw new JsonParseException(parser, "Expected " + expected + " but found " + parser.getCurrentToken());
+			return parser;
+		}
+		catch (IOException e)
+		{
+			parser.close();
+			throw e;
+		}
+	}
+}
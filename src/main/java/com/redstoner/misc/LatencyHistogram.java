@@ -0,0 +1,115 @@
+package com.redstoner.misc;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/** A lock free histogram of durations with a bounded relative error, in the style of HdrHistogram.</br>
+ * Durations are recorded in microseconds. Below {@link #LINEAR_LIMIT}µs every value has its own bucket, above that every power of two is
+ * split into {@link #SUB_BUCKETS} buckets, so a percentile is never off by more than about 6%. Recording is a few shifts and one atomic add,
+ * the memory is fixed at about 6kB no matter how many values are recorded. */
+public final class LatencyHistogram
+{
+	private static final int SUB_BITS = 4;
+	/** The amount of buckets every power of two above the linear range is split into. */
+	public static final int SUB_BUCKETS = 1 << SUB_BITS;
+	/** Values below this amount of microseconds are recorded exactly. */
+	public static final long LINEAR_LIMIT = SUB_BUCKETS * 2;
+	/** The highest power of two tracked, values above 2^40µs (about 12 days) are counted as that. */
+	private static final int MAX_EXPONENT = 40;
+	private static final int LINEAR_EXPONENT = SUB_BITS + 1;
+	private static final int BUCKETS = (int) LINEAR_LIMIT + (MAX_EXPONENT - LINEAR_EXPONENT + 1) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder totalMicros = new LongAdder();
+	private final AtomicLong maxMicros = new AtomicLong();
+
+	/** @param nanos the duration to record, in nanoseconds. */
+	public void record(long nanos)
+	{
+		long micros = Math.max(TimeUnit.NANOSECONDS.toMicros(nanos), 0);
+		counts.incrementAndGet(index(micros));
+		count.increment();
+		totalMicros.add(micros);
+		if (micros > maxMicros.get())
+			maxMicros.accumulateAndGet(micros, Math::max);
+	}
+
+	/** Adds every value recorded by the other histogram to this one. */
+	public void add(LatencyHistogram other)
+	{
+		for (int i = 0; i < BUCKETS; i++)
+		{
+			long value = other.counts.get(i);
+			if (value != 0)
+				counts.addAndGet(i, value);
+		}
+		count.add(other.count.sum());
+		totalMicros.add(other.totalMicros.sum());
+		maxMicros.accumulateAndGet(other.maxMicros.get(), Math::max);
+	}
+
+	public long getCount()
+	{
+		return count.sum();
+	}
+
+	public long getTotalMicros()
+	{
+		return totalMicros.sum();
+	}
+
+	public long getMaxMicros()
+	{
+		return maxMicros.get();
+	}
+
+	public double getMeanMicros()
+	{
+		long count = getCount();
+		return count == 0 ? 0 : (double) getTotalMicros() / count;
+	}
+
+	/** @param percentile the percentile, between 0 and 100.
+	 * @return the highest value in the bucket containing the percentile, at most the highest value recorded. */
+	public long getPercentileMicros(double percentile)
+	{
+		long[] snapshot = new long[BUCKETS];
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++)
+			total += snapshot[i] = counts.get(i);
+		if (total == 0)
+			return 0;
+		long rank = Math.max((long) Math.ceil(total * percentile / 100), 1);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++)
+		{
+			seen += snapshot[i];
+			if (seen >= rank)
+				return Math.min(highestValue(i), getMaxMicros());
+		}
+		return getMaxMicros();
+	}
+
+	private static int index(long micros)
+	{
+		if (micros < LINEAR_LIMIT)
+			return (int) micros;
+		int exponent = 63 - Long.numberOfLeadingZeros(micros);
+		if (exponent > MAX_EXPONENT)
+			return BUCKETS - 1;
+		int sub = (int) (micros >>> (exponent - SUB_BITS)) - SUB_BUCKETS;
+		return (int) LINEAR_LIMIT + (exponent - LINEAR_EXPONENT) * SUB_BUCKETS + sub;
+	}
+
+	private static long highestValue(int index)
+	{
+		if (index < LINEAR_LIMIT)
+			return index;
+		int exponent = (index - (int) LINEAR_LIMIT) / SUB_BUCKETS + LINEAR_EXPONENT;
+		int sub = (index - (int) LINEAR_LIMIT) % SUB_BUCKETS;
+		return ((long) (SUB_BUCKETS + sub + 1) << (exponent - SUB_BITS)) - 1;
+	}
+}
@@ -0,0 +1,82 @@
+package com.redstoner.misc;
+
+/** Builds the Prometheus text format for @Metrics. Metric names get the prefix "faucet_". */
+public final class MetricWriter
+{
+	private final StringBuilder builder = new StringBuilder();
+	private String current;
+
+	MetricWriter()
+	{}
+
+	/** Writes a sample of a value that only ever grows.
+	 *
+	 * @param name the name of the metric, without the prefix.
+	 * @param help the description, only written for the first sample of the metric.
+	 * @param value the value.
+	 * @param labels alternating label names and values. */
+	public MetricWriter counter(String name, String help, double value, String... labels)
+	{
+		return sample(name, "counter", help, value, labels);
+	}
+
+	/** Writes a sample of a value that may go up and down.
+	 *
+	 * @param name the name of the metric, without the prefix.
+	 * @param help the description, only written for the first sample of the metric.
+	 * @param value the value.
+	 * @param labels alternating label names and values. */
+	public MetricWriter gauge(String name, String help, double value, String... labels)
+	{
+		return sample(name, "gauge", help, value, labels);
+	}
+
+	private MetricWriter sample(String name, String type, String help, double value, String[] labels)
+	{
+		if (labels.length % 2 != 0)
+			throw new IllegalArgumentException("Labels must be given as name and value pairs");
+		name = "faucet_" + name;
+		if (!name.equals(current))
+		{
+			current = name;
+			builder.append("# HELP ").append(name).append(' ').append(help).append('\n');
+			builder.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+		}
+		builder.append(name);
+		for (int i = 0; i < labels.length; i += 2)
+		{
+			builder.append(i == 0 ? '{' : ',').append(labels[i]).append("=\"");
+			escape(labels[i + 1]);
+			builder.append('"');
+		}
+		if (labels.length > 0)
+			builder.append('}');
+		builder.append(' ');
+		if (value == (long) value)
+			builder.append((long) value);
+		else
+			builder.append(value);
+		builder.append('\n');
+		return this;
+	}
+
+	private void escape(String value)
+	{
+		for (int i = 0; i < value.length(); i++)
+		{
+			char c = value.charAt(i);
+			if (c == '\\' || c == '"')
+				builder.append('\\').append(c);
+			else if (c == '\n')
+				builder.append("\\n");
+			else
+				builder.append(c);
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return builder.toString();
+	}
+}
@@ -0,0 +1,90 @@
+package com.redstoner.misc;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.logging.Level;
+
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
+
+import com.redstoner.faucet.Faucet;
+
+/** Exports numbers about Faucet and its modules in the Prometheus text format.</br>
+ * Every registered @MetricSource is collected periodically on an async thread and the result is written to metrics/faucet.prom in the
+ * data folder, where the textfile collector of the node exporter or any other scraper can pick it up. */
+public final class Metrics
+{
+	/** The interval in ticks at which the metrics file gets rewritten. */
+	public static final long EXPORT_INTERVAL = 15 * 20;
+
+	private static final Map<String, MetricSource> sources = new ConcurrentSkipListMap<>();
+	private static BukkitTask exportTask;
+
+	private Metrics()
+	{}
+
+	/** Collects the numbers of Faucet or of a module. */
+	@FunctionalInterface
+	public static interface MetricSource
+	{
+		/** Called on an async thread. All samples of one metric must be written in a row. */
+		public void collect(MetricWriter writer);
+	}
+
+	/** Starts exporting. Called by Faucet on enable. */
+	public static synchronized void init()
+	{
+		if (exportTask == null)
+			exportTask = Bukkit.getScheduler().runTaskTimerAsynchronously(Faucet.plugin, Metrics::export, EXPORT_INTERVAL,
+					EXPORT_INTERVAL);
+	}
+
+	/** Stops exporting. To be called when Faucet gets disabled. */
+	public static synchronized void shutdown()
+	{
+		if (exportTask != null)
+		{
+			exportTask.cancel();
+			exportTask = null;
+		}
+	}
+
+	/** Adds a source, replacing any other source of the same name.
+	 *
+	 * @param name identifies the source, sources are collected in the order of their names. */
+	public static void register(String name, MetricSource source)
+	{
+		sources.put(name, source);
+	}
+
+	public static void unregister(String name)
+	{
+		sources.remove(name);
+	}
+
+	/** @return the current numbers of all sources, in the Prometheus text format. */
+	public static String collect()
+	{
+		MetricWriter writer = new MetricWriter();
+		for (Map.Entry<String, MetricSource> source : sources.entrySet())
+		{
+			try
+			{
+				source.getValue().collect(writer);
+			}
+			catch (Throwable t)
+			{
+				Faucet.plugin.getLogger().log(Level.WARNING, "Could not collect the metrics of " + source.getKey(), t);
+			}
+		}
+		return writer.toString();
+	}
+
+	private static void export()
+	{
+		File file = new File(new File(Faucet.plugin.getDataFolder(), "metrics"), "faucet.prom");
+		SaveQueue.save(collect().getBytes(StandardCharsets.UTF_8), file);
+	}
+}
@@ -0,0 +1,412 @@
+package com.redstoner.misc;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/** The shared writer for all files saved asynchronously through Faucet.</br>
+ * A single thread performs every write. Pending saves to the same file are coalesced, only the most recent content gets written.
+ * Files are written to a temporary file next to the destination first and then atomically renamed, so a crash never leaves a half written file behind.
+ * Every write gets its own temporary file. Synchronous saves are handed to the same thread and waited for, so they are ordered with the
+ * queued ones.
+ * Writes are grouped into batches which share their fsyncs. */
+public final class SaveQueue
+{
+	/** The maximum amount of distinct files waiting to be written. Callers block when it is exceeded. */
+	public static final int CAPACITY = 4096;
+	private static final int MAX_BATCH = 64;
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final String TEMP_SUFFIX = ".tmp";
+
+	private static final Map<Path, byte[]> pending = new ConcurrentHashMap<>();
+	private static final BlockingQueue<Object> queue = new LinkedBlockingQueue<>(CAPACITY);
+	private static final Object STOP = new Object();
+	private static volatile Thread writer;
+
+	private SaveQueue()
+	{}
+	
+	/** Produces the content of a file by writing it to a stream, so it never has to be held in memory as a whole. */
+	@FunctionalInterface
+	public static interface ContentWriter
+	{
+		public void write(OutputStream out) throws IOException;
+	}
+
+	/** Queues the content to be written to the destination. If a save to the same file is still pending, it gets replaced.
+	 *
+	 * @param content the complete new content of the file.
+	 * @param destination the file to write to. Missing parent folders will be created. */
+	public static void save(byte[] content, File destination)
+	{
+		Path path = destination.toPath().toAbsolutePath();
+		ensureStarted();
+		if (pending.put(path, content) != null)
+			return;
+		try
+		{
+			queue.put(path);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			// the writer will never pick this path up, so write it out right away
+			byte[] latest = pending.remove(path);
+			if (latest != null)
+				writeQuietly(latest, path);
+		}
+	}
+
+	/** Writes the content to the destination on the calling thread, replacing any save to that file that is still pending.
+	 *
+	 * @param content the complete new content of the file.
+	 * @param destination the file to write to. Missing parent folders will be created.
+	 * @throws IOException if the file could not be written. */
+	public static void saveSync(byte[] content, File destination) throws IOException
+	{
+		saveSync(out -> out.write(content), destination);
+	}
+
+	/** Streams the content to the destination on the calling thread, replacing any save to that file that is still pending.</br>
+	 * The content is written to a temporary file first, so the destination stays intact if the writer fails.
+	 *
+	 * @param content writes the complete new content of the file.
+	 * @param destination the file to write to. Missing parent folders will be created.
+	 * @throws IOException if the file could not be written. */
+	public static void saveSync(ContentWriter content, File destination) throws IOException
+	{
+		Path path = destination.toPath().toAbsolutePath();
+		pending.remove(path);
+		ensureStarted();
+		// the writer itself can not wait for its own queue
+		if (Thread.currentThread() == writer)
+		{
+			write(content, path);
+			return;
+		}
+		SyncSave save = new SyncSave(content, path);
+		try
+		{
+			queue.put(save);
+			save.done.await();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while saving " + path, e);
+		}
+		if (save.error != null)
+			throw save.error;
+	}
+
+	/** Blocks until every save queued before this call is written and synced.
+	 *
+	 * @param timeout the maximum time to wait.
+	 * @param unit the unit of the timeout.
+	 * @return true if everything was written, false if the timeout elapsed first. */
+	public static boolean flush(long timeout, TimeUnit unit)
+	{
+		if (writer == null)
+			return true;
+		CountDownLatch barrier = new CountDownLatch(1);
+		try
+		{
+			if (!queue.offer(barrier, timeout, unit))
+				return false;
+			return barrier.await(timeout, unit);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/** @return the amount of files waiting to be written. */
+	public static int getPending()
+	{
+		return pending.size();
+	}
+
+	/** Writes out all pending saves and stops the writer thread. To be called when Faucet gets disabled.</br>
+	 * Saves queued afterwards start a new writer thread. */
+	public static void shutdown()
+	{
+		flush(30, TimeUnit.SECONDS);
+		synchronized (SaveQueue.class)
+		{
+			if (writer == null)
+				return;
+			writer = null;
+		}
+		try
+		{
+			queue.put(STOP);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static synchronized void ensureStarted()
+	{
+		if (writer != null)
+			return;
+		writer = new Thread(SaveQueue::run, "Faucet Save Queue");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	private static void run()
+	{
+		List<Object> batch = new ArrayList<>(MAX_BATCH);
+		while (true)
+		{
+			try
+			{
+				batch.add(queue.take());
+			}
+			catch (InterruptedException e)
+			{
+				continue;
+			}
+			queue.drainTo(batch, MAX_BATCH - batch.size());
+			boolean stop = batch.remove(STOP);
+			writeBatch(batch);
+			batch.clear();
+			if (stop)
+				return;
+		}
+	}
+
+	/** Writes every file of the batch to its temporary file, syncs all of them, then moves them into place.
+	 * Barriers complete once everything in front of them was moved. */
+	private static void writeBatch(List<Object> batch)
+	{
+		List<Path> written = new ArrayList<>();
+		List<Path> temps = new ArrayList<>();
+		List<FileChannel> channels = new ArrayList<>();
+		for (Object item : batch)
+		{
+			if (item instanceof CountDownLatch)
+			{
+				commit(written, temps, channels);
+				((CountDownLatch) item).countDown();
+				continue;
+			}
+			if (item instanceof SyncSave)
+			{
+				// everything queued before it has to be in place first, so it can not overwrite the synchronous save
+				commit(written, temps, channels);
+				SyncSave save = (SyncSave) item;
+				try
+				{
+					write(save.content, save.path);
+				}
+				catch (IOException | RuntimeException e)
+				{
+					save.error = e instanceof IOException ? (IOException) e : new IOException(e);
+				}
+				save.done.countDown();
+				continue;
+			}
+			Path path = (Path) item;
+			byte[] content = pending.remove(path);
+			if (content == null)
+				continue;
+			// the path got queued again after it was taken, the older temporary file needs to be moved first
+			if (written.contains(path))
+				commit(written, temps, channels);
+			Path temp = null;
+			try
+			{
+				temp = createTemp(path);
+				channels.add(writeTemp(out -> out.write(content), temp));
+				written.add(path);
+				temps.add(temp);
+			}
+			catch (IOException e)
+			{
+				e.printStackTrace();
+				if (temp != null)
+					deleteQuietly(temp);
+			}
+		}
+		commit(written, temps, channels);
+	}
+
+	private static void commit(List<Path> written, List<Path> temps, List<FileChannel> channels)
+	{
+		for (int i = 0; i < channels.size(); i++)
+		{
+			try (FileChannel channel = channels.get(i))
+			{
+				channel.force(true);
+			}
+			catch (IOException e)
+			{
+				e.printStackTrace();
+				written.set(i, null);
+				deleteQuietly(temps.get(i));
+			}
+		}
+		Set<Path> directories = new HashSet<>();
+		for (int i = 0; i < written.size(); i++)
+		{
+			Path path = written.get(i);
+			if (path == null)
+				continue;
+			try
+			{
+				moveIntoPlace(temps.get(i), path);
+				directories.add(path.getParent());
+			}
+			catch (IOException e)
+			{
+				e.printStackTrace();
+				deleteQuietly(temps.get(i));
+			}
+		}
+		for (Path directory : directories)
+			syncDirectory(directory);
+		written.clear();
+		temps.clear();
+		channels.clear();
+	}
+
+	/** Writes, syncs and moves a single file into place. */
+	private static void write(ContentWriter content, Path path) throws IOException
+	{
+		Path temp = createTemp(path);
+		try
+		{
+			FileChannel channel = writeTemp(content, temp);
+			try
+			{
+				channel.force(true);
+			}
+			finally
+			{
+				channel.close();
+			}
+			moveIntoPlace(temp, path);
+		}
+		catch (IOException | RuntimeException e)
+		{
+			deleteQuietly(temp);
+			throw e;
+		}
+		syncDirectory(path.getParent());
+	}
+
+	/** @return a new, empty temporary file next to the destination, unique so concurrent writes never share one. */
+	private static Path createTemp(Path path) throws IOException
+	{
+		Files.createDirectories(path.getParent());
+		return Files.createTempFile(path.getParent(), path.getFileName() + ".", TEMP_SUFFIX);
+	}
+
+	private static FileChannel writeTemp(ContentWriter content, Path temp) throws IOException
+	{
+		FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		try
+		{
+			// closing the stream only flushes it, the channel stays open until it was synced
+			OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE)
+			{
+				@Override
+				public void close() throws IOException
+				{
+					flush();
+				}
+			};
+			content.write(out);
+			out.flush();
+			return channel;
+		}
+		catch (IOException | RuntimeException e)
+		{
+			channel.close();
+			throw e;
+		}
+	}
+
+	private static void moveIntoPlace(Path temp, Path path) throws IOException
+	{
+		try
+		{
+			Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		}
+		catch (AtomicMoveNotSupportedException e)
+		{
+			Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+	
+	private static void deleteQuietly(Path temp)
+	{
+		try
+		{
+			Files.deleteIfExists(temp);
+		}
+		catch (IOException e)
+		{}
+	}
+
+	/** Makes the renames durable. Not supported on every platform, in which case this does nothing. */
+	private static void syncDirectory(Path directory)
+	{
+		try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ))
+		{
+			channel.force(true);
+		}
+		catch (IOException e)
+		{}
+	}
+
+	private static void writeQuietly(byte[] content, Path path)
+	{
+		try
+		{
+			write(out -> out.write(content), path);
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+
+	/** A synchronous save, written by the writer thread while the caller waits. */
+	private static final class SyncSave
+	{
+		private final ContentWriter content;
+		private final Path path;
+		private final CountDownLatch done = new CountDownLatch(1);
+		private volatile IOException error;
+		
+		private SyncSave(ContentWriter content, Path path)
+		{
+			this.content = content;
+			this.path = path;
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package com.redstoner.misc;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/** The encodings module data files can be stored in.</br>
+ * SMILE is a binary encoding of the JSON data model. It stores the same values as JSON, but is smaller and cheaper to parse,
+ * which makes it the better choice for large per-player data. Files are detected by their content when read, regardless of their extension. */
+public enum StorageFormat
+{
+	JSON(".json", new JsonFactory()),
+	SMILE(".smile", new SmileFactory());
+	
+	/** The first bytes of every SMILE file. */
+	private static final byte[] SMILE_HEADER = {':', ')', '\n'};
+	
+	private final String extension;
+	private final JsonFactory factory;
+	
+	StorageFormat(String extension, JsonFactory factory)
+	{
+		this.extension = extension;
+		this.factory = factory;
+	}
+	
+	/** @return the file extension used for this format, including the dot. */
+	public String getExtension()
+	{
+		return extension;
+	}
+	
+	JsonFactory getFactory()
+	{
+		return factory;
+	}
+	
+	/** Gets the file a file should be stored at in this format, by replacing the extension of any known format.
+	 * 
+	 * @param file the file, with or without an extension.
+	 * @return the file with this format's extension. */
+	public File resolve(File file)
+	{
+		String name = file.getName();
+		for (StorageFormat format : values())
+		{
+			if (name.endsWith(format.extension))
+			{
+				name = name.substring(0, name.length() - format.extension.length());
+				break;
+			}
+		}
+		return new File(file.getParentFile(), name + extension);
+	}
+	
+	/** Detects the format of a file by its first bytes.
+	 * 
+	 * @param file the file to check.
+	 * @return the format of the file. Files that are not SMILE are assumed to be JSON.
+	 * @throws IOException if the file could not be read. */
+	public static StorageFormat detect(File file) throws IOException
+	{
+		try (InputStream in = new FileInputStream(file))
+		{
+			byte[] header = new byte[SMILE_HEADER.length];
+			int length = 0, read;
+			while (length < header.length && (read = in.read(header, length, header.length - length)) > 0)
+				length += read;
+			return detect(header, length);
+		}
+	}
+	
+	static StorageFormat detect(byte[] header, int length)
+	{
+		if (length < SMILE_HEADER.length)
+			return JSON;
+		for (int i = 0; i < SMILE_HEADER.length; i++)
+			if (header[i] != SMILE_HEADER[i])
+				return JSON;
+		return SMILE;
+	}
+}
@@ -3,7 +3,7 @@ package com.redstoner.misc;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
 import java.util.Date;
-import java.util.List;
+import java.util.UUID;
 
 import org.bukkit.Bukkit;
 import org.bukkit.command.CommandSender;
@@ -16,6 +16,8 @@ public final class Utils
 {
 	/** The @SimpleDateFormat used for getting the current date. */
 	public static SimpleDateFormat dateFormat = new SimpleDateFormat("[yyyy-MM-dd HH:mm:ss]");
+	/** The UUID used for console and every other @CommandSender that is not a @Player. It is the nil UUID, which no player can have. */
+	public static final UUID CONSOLE_UUID = new UUID(0, 0);
 	
 	/** Hidden constructor. Do not instantiate UTILS classes! :) */
 	private Utils()
@@ -35,11 +37,12 @@ public final class Utils
 	{
 		if (prefix == null)
 			prefix = "§8[§2" + getCaller() + "§8]: ";
+		String line = prefix + message;
 		if (filter == null)
 		{
 			for (Player p : Bukkit.getOnlinePlayers())
-				p.sendMessage(prefix + message);
-			Bukkit.getConsoleSender().sendMessage(prefix + message);
+				p.sendMessage(line);
+			Bukkit.getConsoleSender().sendMessage(line);
 			return Bukkit.getOnlinePlayers().size() + 1;
 		}
 		else
@@ -48,30 +51,39 @@ public final class Utils
 			for (Player p : Bukkit.getOnlinePlayers())
 				if (filter.sendTo(p))
 				{
-					p.sendMessage(prefix + message);
+					p.sendMessage(line);
 					count++;
 				}
 			if (filter.sendTo(Bukkit.getConsoleSender()))
 			{
-				Bukkit.getConsoleSender().sendMessage(prefix + message);
+				Bukkit.getConsoleSender().sendMessage(line);
 				count++;
 			}
 			return count;
 		}
 	}
 	
+	/** This method broadcasts a message to all members of an @Audience. Unlike a @BroadcastFilter, the audience is maintained incrementally,
+	 * so no per-player check happens while broadcasting. Prefer this for frequent broadcasts to a permission or world.</br>
+	 * Named differently from {@link #broadcast(String, String, BroadcastFilter)}, so broadcast(prefix, message, null) stays unambiguous.
+	 * 
+	 * @param prefix The prefix for the message. Set to NULL to let it auto generate.
+	 * @param message the message to be sent around
+	 * @param audience the audience to send the message to, see @Audiences for how to get one.
+	 * @return the amount of people that received the message. */
+	public static int broadcastTo(String prefix, String message, Audience audience)
+	{
+		if (prefix == null)
+			prefix = "§8[§2" + getCaller() + "§8]: ";
+		return audience.send(prefix + message);
+	}
+	
 	/** This method will find the next parent caller and return their class name, omitting package names.
 	 * 
 	 * @return the Name of the calling class. */
 	private static final String getCaller()
 	{
-		StackTraceElement[] stackTrace = (new Exception()).getStackTrace();
-		String classname = "Utils";
-		for (int i = 0; classname.equals("Utils"); i++)
-		{
-			classname = stackTrace[i].getClassName().replaceAll(".*\\.", "");
-		}
-		return classname;
+		return CallerResolver.getCaller(null);
 	}
 	
 	/** This method will find the next parent caller and return their class name, omitting package names.
@@ -82,14 +94,15 @@ public final class Utils
 	{
 		if (directCaller == null || directCaller.length == 0)
 			return getCaller();
-		StackTraceElement[] stackTrace = (new Exception()).getStackTrace();
-		String classname = "Utils";
-		List<String> callers = Arrays.asList(directCaller);
-		for (int i = 0; callers.contains(classname) || classname.equals("Utils"); i++)
-		{
-			classname = stackTrace[i].getClassName().replaceAll(".*\\.", "");
-		}
-		return classname;
+		return CallerResolver.getCaller(Arrays.asList(directCaller));
+	}
+	
+	/** Finds the module that is calling, e.g. to attribute work done on its behalf. Walks the stack, so avoid it on hot paths.
+	 * 
+	 * @return the name of the innermost module on the stack, or null if Faucet or the server is calling on its own. */
+	public static String getCallingModule()
+	{
+		return CallerResolver.getModule();
 	}
 	
 	/** Provides a uniform way of getting the date for all modules.
@@ -113,7 +126,8 @@ public final class Utils
 			return "§9" + sender.getName();
 	}
 	
-	/** Provides a uniform way of getting the UUID of a @CommandSender.
+	/** Provides a uniform way of getting the UUID of a @CommandSender.</br>
+	 * This creates a new String on every call, use {@link #getUUID(CommandSender)} for map keys instead.
 	 * 
 	 * @param sender The @CommandSender to get the UUID of.
 	 * @return The UUID of the @CommandSender or if not a player, "CONSOLE" in blue. */
@@ -126,4 +140,29 @@ public final class Utils
 			id = "CONSOLE";
 		return id;
 	}
-}
+	
+	/** Provides the UUID of a @CommandSender without creating a String, for use as a key in the collections of com.redstoner.misc.collections.
+	 * 
+	 * @param sender The @CommandSender to get the UUID of.
+	 * @return The UUID of the @CommandSender or if not a player, @CONSOLE_UUID. */
+	public static UUID getUUID(CommandSender sender)
+	{
+		if (sender instanceof Player)
+			return ((Player) sender).getUniqueId();
+		return CONSOLE_UUID;
+	}
+	
+	/** @param sender The @CommandSender to get the UUID of.
+	 * @return The most significant bits of the UUID returned by {@link #getUUID(CommandSender)}. */
+	public static long getUUIDMost(CommandSender sender)
+	{
+		return getUUID(sender).getMostSignificantBits();
+	}
+	
+	/** @param sender The @CommandSender to get the UUID of.
+	 * @return The least significant bits of the UUID returned by {@link #getUUID(CommandSender)}. */
+	public static long getUUIDLeast(CommandSender sender)
+	{
+		return getUUID(sender).getLeastSignificantBits();
+	}
+}
\ No newline at end of file
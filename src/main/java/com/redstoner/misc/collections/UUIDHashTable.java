@@ -0,0 +1,207 @@
+package com.redstoner.misc.collections;
+
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.function.IntConsumer;
+
+/** The open addressing table shared by the UUID keyed collections. Keys are stored as their two halves in parallel long arrays, with linear
+ * probing and backward shift deletion, so neither lookups nor removals allocate.</br>
+ * The nil UUID (all zero bits) marks free slots, so it is stored in an extra slot after the table instead. Subclasses keep their values in
+ * arrays of the same length, including that extra slot. */
+abstract class UUIDHashTable
+{
+	static final int DEFAULT_EXPECTED = 16;
+	private static final float LOAD_FACTOR = 0.75f;
+	
+	private long[] most;
+	private long[] least;
+	private int mask;
+	private int maxFill;
+	private int size;
+	private boolean containsNil;
+	
+	UUIDHashTable(int expected)
+	{
+		allocate(tableSize(expected));
+	}
+	
+	/** @return the amount of keys. */
+	public int size()
+	{
+		return size;
+	}
+	
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+	
+	/** Removes all keys, keeping the allocated capacity. */
+	public void clear()
+	{
+		if (size == 0)
+			return;
+		Arrays.fill(most, 0);
+		Arrays.fill(least, 0);
+		for (int slot = 0; slot <= mask + 1; slot++)
+			clearValue(slot);
+		size = 0;
+		containsNil = false;
+	}
+	
+	/** @return the slot holding the key, or -(the free slot it would be inserted at) - 1 if it is absent. */
+	final int find(long mostBits, long leastBits)
+	{
+		if (mostBits == 0 && leastBits == 0)
+			return containsNil ? mask + 1 : -(mask + 1) - 1;
+		int slot = mix(mostBits, leastBits) & mask;
+		while (true)
+		{
+			long m = most[slot], l = least[slot];
+			if (m == 0 && l == 0)
+				return -slot - 1;
+			if (m == mostBits && l == leastBits)
+				return slot;
+			slot = (slot + 1) & mask;
+		}
+	}
+	
+	/** Claims a free slot returned by {@link #find(long, long)}.
+	 * 
+	 * @return the slot now holding the key, which differs from the free slot if the table had to grow. */
+	final int insert(int free, long mostBits, long leastBits)
+	{
+		int slot = -free - 1;
+		if (slot == mask + 1)
+			containsNil = true;
+		else
+		{
+			most[slot] = mostBits;
+			least[slot] = leastBits;
+		}
+		if (++size > maxFill)
+		{
+			rehash(tableSize(size + 1));
+			return find(mostBits, leastBits);
+		}
+		return slot;
+	}
+	
+	/** Removes the key in the slot, moving following keys of the same probe sequence back so no tombstones are needed. */
+	final void removeAt(int slot)
+	{
+		size--;
+		if (slot == mask + 1)
+		{
+			containsNil = false;
+			clearValue(slot);
+			return;
+		}
+		while (true)
+		{
+			int last = slot;
+			slot = (slot + 1) & mask;
+			long m, l;
+			while (true)
+			{
+				m = most[slot];
+				l = least[slot];
+				if (m == 0 && l == 0)
+				{
+					most[last] = 0;
+					least[last] = 0;
+					clearValue(last);
+					return;
+				}
+				int ideal = mix(m, l) & mask;
+				// the key may move to the gap only if the gap lies between its ideal slot and its current slot
+				if (last <= slot ? last >= ideal || ideal > slot : last >= ideal && ideal > slot)
+					break;
+				slot = (slot + 1) & mask;
+			}
+			most[last] = m;
+			least[last] = l;
+			moveValue(slot, last);
+		}
+	}
+	
+	/** Calls the action with every occupied slot. */
+	final void forEachSlot(IntConsumer action)
+	{
+		for (int slot = 0; slot <= mask; slot++)
+			if (most[slot] != 0 || least[slot] != 0)
+				action.accept(slot);
+		if (containsNil)
+			action.accept(mask + 1);
+	}
+	
+	final long mostBits(int slot)
+	{
+		return slot > mask ? 0 : most[slot];
+	}
+	
+	final long leastBits(int slot)
+	{
+		return slot > mask ? 0 : least[slot];
+	}
+	
+	/** @return the key in the slot. Allocates, meant for iteration outside hot paths. */
+	final UUID key(int slot)
+	{
+		return new UUID(mostBits(slot), leastBits(slot));
+	}
+	
+	/** @return the current value array, to be handed back to {@link #copyValue(Object, int, int)} while rehashing. */
+	abstract Object values();
+	
+	/** Replaces the value array with an empty one of the given length. */
+	abstract void allocateValues(int length);
+	
+	abstract void copyValue(Object from, int fromSlot, int toSlot);
+	
+	abstract void moveValue(int fromSlot, int toSlot);
+	
+	abstract void clearValue(int slot);
+	
+	private void allocate(int capacity)
+	{
+		most = new long[capacity];
+		least = new long[capacity];
+		mask = capacity - 1;
+		maxFill = (int) (capacity * LOAD_FACTOR);
+		allocateValues(capacity + 1);
+	}
+	
+	private void rehash(int capacity)
+	{
+		long[] oldMost = most, oldLeast = least;
+		int oldCapacity = mask + 1;
+		Object oldValues = values();
+		allocate(capacity);
+		for (int i = 0; i < oldCapacity; i++)
+		{
+			long m = oldMost[i], l = oldLeast[i];
+			if (m == 0 && l == 0)
+				continue;
+			int slot = mix(m, l) & mask;
+			while (most[slot] != 0 || least[slot] != 0)
+				slot = (slot + 1) & mask;
+			most[slot] = m;
+			least[slot] = l;
+			copyValue(oldValues, i, slot);
+		}
+		copyValue(oldValues, oldCapacity, capacity);
+	}
+	
+	private static int tableSize(int expected)
+	{
+		int needed = (int) Math.ceil(Math.max(expected, 2) / LOAD_FACTOR);
+		return Integer.highestOneBit(needed - 1) << 1;
+	}
+	
+	private static int mix(long mostBits, long leastBits)
+	{
+		long hash = (mostBits ^ (leastBits * 0x9E3779B97F4A7C15L)) * 0xC2B2AE3D27D4EB4FL;
+		return (int) (hash ^ (hash >>> 32));
+	}
+}
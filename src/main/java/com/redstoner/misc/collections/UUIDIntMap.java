@@ -0,0 +1,145 @@
+package com.redstoner.misc.collections;
+
+import java.util.UUID;
+
+/** A map from UUIDs to int values that stores each UUID as two longs and the values unboxed, so neither lookups nor changes allocate.
+ * Not thread safe. */
+public class UUIDIntMap extends UUIDHashTable
+{
+	/** Called with the two halves of each UUID and its value. */
+	@FunctionalInterface
+	public static interface Consumer
+	{
+		public void accept(long mostBits, long leastBits, int value);
+	}
+	
+	private int[] values;
+	
+	public UUIDIntMap()
+	{
+		this(DEFAULT_EXPECTED);
+	}
+	
+	/** @param expected the amount of entries the map should hold without growing. */
+	public UUIDIntMap(int expected)
+	{
+		super(expected);
+	}
+	
+	public boolean containsKey(UUID id)
+	{
+		return find(id.getMostSignificantBits(), id.getLeastSignificantBits()) >= 0;
+	}
+	
+	public boolean containsKey(long mostBits, long leastBits)
+	{
+		return find(mostBits, leastBits) >= 0;
+	}
+	
+	/** @return the value of the UUID, or the default value if there is none. */
+	public int get(UUID id, int defaultValue)
+	{
+		return get(id.getMostSignificantBits(), id.getLeastSignificantBits(), defaultValue);
+	}
+	
+	/** @return the value of the UUID, or the default value if there is none. */
+	public int get(long mostBits, long leastBits, int defaultValue)
+	{
+		int slot = find(mostBits, leastBits);
+		return slot < 0 ? defaultValue : values[slot];
+	}
+	
+	/** @return the previous value, or the default value if there was none. */
+	public int put(UUID id, int value, int defaultValue)
+	{
+		return put(id.getMostSignificantBits(), id.getLeastSignificantBits(), value, defaultValue);
+	}
+	
+	/** @return the previous value, or the default value if there was none. */
+	public int put(long mostBits, long leastBits, int value, int defaultValue)
+	{
+		int slot = find(mostBits, leastBits);
+		if (slot >= 0)
+		{
+			int previous = values[slot];
+			values[slot] = value;
+			return previous;
+		}
+		// the table may grow while inserting, so the value array must only be read afterwards
+		slot = insert(slot, mostBits, leastBits);
+		values[slot] = value;
+		return defaultValue;
+	}
+	
+	/** Adds to the value of the UUID, starting from 0 if there is none.
+	 * 
+	 * @return the new value. */
+	public int addTo(UUID id, int increment)
+	{
+		return addTo(id.getMostSignificantBits(), id.getLeastSignificantBits(), increment);
+	}
+	
+	/** Adds to the value of the UUID, starting from 0 if there is none.
+	 * 
+	 * @return the new value. */
+	public int addTo(long mostBits, long leastBits, int increment)
+	{
+		int slot = find(mostBits, leastBits);
+		if (slot < 0)
+			slot = insert(slot, mostBits, leastBits);
+		return values[slot] += increment;
+	}
+	
+	/** @return the removed value, or the default value if there was none. */
+	public int remove(UUID id, int defaultValue)
+	{
+		return remove(id.getMostSignificantBits(), id.getLeastSignificantBits(), defaultValue);
+	}
+	
+	/** @return the removed value, or the default value if there was none. */
+	public int remove(long mostBits, long leastBits, int defaultValue)
+	{
+		int slot = find(mostBits, leastBits);
+		if (slot < 0)
+			return defaultValue;
+		int previous = values[slot];
+		removeAt(slot);
+		return previous;
+	}
+	
+	/** Calls the action with every entry. The map must not be changed meanwhile. */
+	public void forEach(Consumer action)
+	{
+		forEachSlot(slot -> action.accept(mostBits(slot), leastBits(slot), values[slot]));
+	}
+	
+	@Override
+	Object values()
+	{
+		return values;
+	}
+	
+	@Override
+	void allocateValues(int length)
+	{
+		values = new int[length];
+	}
+	
+	@Override
+	void copyValue(Object from, int fromSlot, int toSlot)
+	{
+		values[toSlot] = ((int[]) from)[fromSlot];
+	}
+	
+	@Override
+	void moveValue(int fromSlot, int toSlot)
+	{
+		values[toSlot] = values[fromSlot];
+	}
+	
+	@Override
+	void clearValue(int slot)
+	{
+		values[slot] = 0;
+	}
+}
@@ -0,0 +1,154 @@
+package com.redstoner.misc.collections;
+
+import java.util.UUID;
+
+/** A map from UUIDs to objects that stores each UUID as two longs, so neither lookups nor changes allocate. Null values are not
+ * supported, a value of null means there is none. Not thread safe.
+ * 
+ * @param <V> the type of the values. */
+public class UUIDObjectMap<V> extends UUIDHashTable
+{
+	/** Called with the two halves of each UUID and its value. */
+	@FunctionalInterface
+	public static interface Consumer<V>
+	{
+		public void accept(long mostBits, long leastBits, V value);
+	}
+	
+	private Object[] values;
+	
+	public UUIDObjectMap()
+	{
+		this(DEFAULT_EXPECTED);
+	}
+	
+	/** @param expected the amount of entries the map should hold without growing. */
+	public UUIDObjectMap(int expected)
+	{
+		super(expected);
+	}
+	
+	public boolean containsKey(UUID id)
+	{
+		return find(id.getMostSignificantBits(), id.getLeastSignificantBits()) >= 0;
+	}
+	
+	public boolean containsKey(long mostBits, long leastBits)
+	{
+		return find(mostBits, leastBits) >= 0;
+	}
+	
+	/** @return the value of the UUID, or null if there is none. */
+	public V get(UUID id)
+	{
+		return get(id.getMostSignificantBits(), id.getLeastSignificantBits());
+	}
+	
+	/** @return the value of the UUID, or null if there is none. */
+	@SuppressWarnings("unchecked")
+	public V get(long mostBits, long leastBits)
+	{
+		int slot = find(mostBits, leastBits);
+		return slot < 0 ? null : (V) values[slot];
+	}
+	
+	/** @return the previous value, or null if there was none. */
+	public V put(UUID id, V value)
+	{
+		return put(id.getMostSignificantBits(), id.getLeastSignificantBits(), value);
+	}
+	
+	/** @return the previous value, or null if there was none. */
+	@SuppressWarnings("unchecked")
+	public V put(long mostBits, long leastBits, V value)
+	{
+		if (value == null)
+			throw new NullPointerException("Null values are not supported, use remove instead");
+		int slot = find(mostBits, leastBits);
+		if (slot >= 0)
+		{
+			V previous = (V) values[slot];
+			values[slot] = value;
+			return previous;
+		}
+		// the table may grow while inserting, so the value array must only be read afterwards
+		slot = insert(slot, mostBits, leastBits);
+		values[slot] = value;
+		return null;
+	}
+	
+	/** @return the value of the UUID, created with the factory and stored first if there is none. */
+	public V computeIfAbsent(UUID id, java.util.function.Function<UUID, ? extends V> factory)
+	{
+		long mostBits = id.getMostSignificantBits(), leastBits = id.getLeastSignificantBits();
+		V value = get(mostBits, leastBits);
+		if (value == null)
+		{
+			value = factory.apply(id);
+			put(mostBits, leastBits, value);
+		}
+		return value;
+	}
+	
+	/** @return the removed value, or null if there was none. */
+	public V remove(UUID id)
+	{
+		return remove(id.getMostSignificantBits(), id.getLeastSignificantBits());
+	}
+	
+	/** @return the removed value, or null if there was none. */
+	@SuppressWarnings("unchecked")
+	public V remove(long mostBits, long leastBits)
+	{
+		int slot = find(mostBits, leastBits);
+		if (slot < 0)
+			return null;
+		V previous = (V) values[slot];
+		removeAt(slot);
+		return previous;
+	}
+	
+	/** Calls the action with every entry. The map must not be changed meanwhile. */
+	@SuppressWarnings("unchecked")
+	public void forEach(Consumer<? super V> action)
+	{
+		forEachSlot(slot -> action.accept(mostBits(slot), leastBits(slot), (V) values[slot]));
+	}
+	
+	/** Calls the action with every entry, creating a UUID object for each. The map must not be changed meanwhile. */
+	@SuppressWarnings("unchecked")
+	public void forEach(java.util.function.BiConsumer<UUID, ? super V> action)
+	{
+		forEachSlot(slot -> action.accept(key(slot), (V) values[slot]));
+	}
+	
+	@Override
+	Object values()
+	{
+		return values;
+	}
+	
+	@Override
+	void allocateValues(int length)
+	{
+		values = new Object[length];
+	}
+	
+	@Override
+	void copyValue(Object from, int fromSlot, int toSlot)
+	{
+		values[toSlot] = ((Object[]) from)[fromSlot];
+	}
+	
+	@Override
+	void moveValue(int fromSlot, int toSlot)
+	{
+		values[toSlot] = values[fromSlot];
+	}
+	
+	@Override
+	void clearValue(int slot)
+	{
+		values[slot] = null;
+	}
+}
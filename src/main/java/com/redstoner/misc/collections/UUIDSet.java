@@ -0,0 +1,101 @@
+package com.redstoner.misc.collections;
+
+import java.util.UUID;
+
+/** A set of UUIDs that stores each one as two longs, so neither lookups nor changes allocate. Not thread safe. */
+public class UUIDSet extends UUIDHashTable
+{
+	/** Called with the two halves of each UUID. */
+	@FunctionalInterface
+	public static interface Consumer
+	{
+		public void accept(long mostBits, long leastBits);
+	}
+	
+	public UUIDSet()
+	{
+		this(DEFAULT_EXPECTED);
+	}
+	
+	/** @param expected the amount of UUIDs the set should hold without growing. */
+	public UUIDSet(int expected)
+	{
+		super(expected);
+	}
+	
+	public boolean contains(UUID id)
+	{
+		return contains(id.getMostSignificantBits(), id.getLeastSignificantBits());
+	}
+	
+	public boolean contains(long mostBits, long leastBits)
+	{
+		return find(mostBits, leastBits) >= 0;
+	}
+	
+	/** @return true if the UUID was not in the set yet. */
+	public boolean add(UUID id)
+	{
+		return add(id.getMostSignificantBits(), id.getLeastSignificantBits());
+	}
+	
+	/** @return true if the UUID was not in the set yet. */
+	public boolean add(long mostBits, long leastBits)
+	{
+		int slot = find(mostBits, leastBits);
+		if (slot >= 0)
+			return false;
+		insert(slot, mostBits, leastBits);
+		return true;
+	}
+	
+	/** @return true if the UUID was in the set. */
+	public boolean remove(UUID id)
+	{
+		return remove(id.getMostSignificantBits(), id.getLeastSignificantBits());
+	}
+	
+	/** @return true if the UUID was in the set. */
+	public boolean remove(long mostBits, long leastBits)
+	{
+		int slot = find(mostBits, leastBits);
+		if (slot < 0)
+			return false;
+		removeAt(slot);
+		return true;
+	}
+	
+	/** Calls the action with every UUID in the set. The set must not be changed meanwhile. */
+	public void forEach(Consumer action)
+	{
+		forEachSlot(slot -> action.accept(mostBits(slot), leastBits(slot)));
+	}
+	
+	/** Calls the action with every UUID in the set, creating a UUID object for each. The set must not be changed meanwhile. */
+	public void forEach(java.util.function.Consumer<UUID> action)
+	{
+		forEachSlot(slot -> action.accept(key(slot)));
+	}
+	
+	@Override
+	Object values()
+	{
+		return null;
+	}
+	
+	@Override
+	void allocateValues(int length)
+	{}
+	
+	@Override
+	void copyValue(Object from, int fromSlot, int toSlot)
+	{}
+	
+	@Override
+	void moveValue(int fromSlot, int toSlot)
+	{}
+	
+	@Override
+	void clearValue(int slot)
+	{}
+}
@@ -1,55 +1,93 @@
 package com.redstoner.misc.mysql;
 
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Objects;
 import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.logging.Level;
 
+import com.fasterxml.jackson.core.JsonParseException;
 import com.redstoner.faucet.Faucet;
+import com.redstoner.misc.JsonStream;
+import com.redstoner.misc.SaveQueue;
+import com.redstoner.misc.StorageFormat;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 
 import com.redstoner.exceptions.NonSaveableConfigException;
 
+/** A JSON backed configuration that can be read from any thread.</br>
+ * The values are held in an immutable snapshot which is swapped out atomically on every change, so readers never lock and never copy.
+ * Use the put methods or {@link #edit(Consumer)} to change values, and {@link #getSnapshot()} or a @ConfigKey to read them without copying.
+ * The deprecated {@link #asObject()}, {@link #getArray(String)}, {@link #getObject(String)} and {@link #getAll()} hand out mutable copies, changes
+ * made to them no longer change the config.
+ * Writers copy the snapshot, so batch several changes with {@link #edit(Consumer)}.</br>
+ * Values read frequently should be accessed through a @ConfigKey, which caches the converted value per snapshot.</br>
+ * A config loaded from a file can be watched, it then gets reloaded whenever the file changes and notifies the listeners subscribed to the changed paths. */
 public class Config
 {
-	private File file;
-	private JSONObject config;
-	private JSONParser parser;
+	private static final ScheduledExecutorService autoSaver = Executors.newSingleThreadScheduledExecutor(runnable ->
+	{
+		Thread thread = new Thread(runnable, "Faucet Config Auto Save");
+		thread.setDaemon(true);
+		return thread;
+	});
+	/** The configs with an auto save scheduled, for {@link #flushAll()}. */
+	private static final Set<Config> autoSaving = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+	
+	private volatile File file;
+	private final AtomicReference<Map<String, Object>> snapshot;
+	private volatile StorageFormat format = StorageFormat.JSON;
+	private volatile long autoSaveDelay = -1;
+	private ScheduledFuture<?> pendingSave;
+	/** The values as they were last loaded from or saved to the file, to tell our own saves apart from external changes. */
+	private volatile Map<String, Object> persisted = Collections.emptyMap();
+	private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+	private volatile boolean watched;
 	
 	public Config()
 	{
 		file = null;
-		parser = new JSONParser();
-		config = new JSONObject();
+		snapshot = new AtomicReference<>(Collections.emptyMap());
 	}
 	
 	public Config(JSONObject config)
 	{
 		this.file = null;
-		this.parser = new JSONParser();
-		this.config = config;
+		this.snapshot = new AtomicReference<>(freezeMap(config));
 	}
 	
 	private Config(File file) throws IOException, ParseException
 	{
 		this.file = file;
-		parser = new JSONParser();
 		if (file.exists())
 		{
-			config = loadConfig(file);
+			persisted = freezeMap(loadConfig(file));
+			snapshot = new AtomicReference<>(persisted);
 		}
 		else
 		{
-			config = new JSONObject();
+			snapshot = new AtomicReference<>(Collections.emptyMap());
 		}
 	}
 	
@@ -65,19 +103,40 @@ public class Config
 	
 	private JSONObject loadConfig(File file) throws IOException, ParseException
 	{
-		FileReader reader = new FileReader(file);
-		return (JSONObject) parser.parse(reader);
+		Object value;
+		try
+		{
+			value = JsonStream.read(file);
+		}
+		catch (JsonParseException e)
+		{
+			throw new ParseException(ParseException.ERROR_UNEXPECTED_TOKEN, e);
+		}
+		if (!(value instanceof JSONObject))
+		{
+			throw new ParseException(ParseException.ERROR_UNEXPECTED_TOKEN, value);
+		}
+		return (JSONObject) value;
 	}
 	
 	@Override
 	public String toString()
 	{
-		return config.toJSONString();
+		return JSONObject.toJSONString(snapshot.get());
 	}
 	
+	/** @return a mutable copy of the values of this config. Changes to it do not affect this config.
+	 * @deprecated use {@link #getSnapshot()} to read and {@link #edit(Consumer)} to change the values. */
+	@Deprecated
 	public JSONObject asObject()
 	{
-		return config;
+		return thawMap(snapshot.get());
+	}
+	
+	/** @return the current immutable snapshot of all values. */
+	public Map<String, Object> getSnapshot()
+	{
+		return snapshot.get();
 	}
 	
 	public void save() throws IOException, NonSaveableConfigException
@@ -86,193 +145,566 @@ public class Config
 		{
 			throw new NonSaveableConfigException();
 		}
-		PrintWriter writer = new PrintWriter(file);
-		writer.write(config.toJSONString());
-		writer.close();
+		Map<String, Object> values = snapshot.get();
+		persisted = values;
+		JsonStream.write(values, file, format);
 	}
 	
+	/** Replaces all values with the content of the file, discarding changes that were not saved yet. Notifies the subscribed listeners of
+	 * every changed path. */
 	public void refresh() throws IOException, ParseException, NonSaveableConfigException
 	{
 		if (file == null)
 		{
 			throw new NonSaveableConfigException();
 		}
-		loadConfig(file);
+		apply(freezeMap(loadConfig(file)));
+	}
+	
+	/** Called by the ConfigWatcher once the file changed. Changes caused by saving this config are ignored. */
+	void reload()
+	{
+		File file = this.file;
+		try
+		{
+			Map<String, Object> loaded = freezeMap(loadConfig(file));
+			if (!loaded.equals(persisted))
+			{
+				apply(loaded);
+			}
+		}
+		catch (IOException | ParseException e)
+		{
+			// most likely the file is still being written, the next change will trigger another reload
+			Faucet.plugin.getLogger().log(Level.WARNING, "Could not reload config " + file, e);
+		}
+	}
+	
+	private void apply(Map<String, Object> loaded)
+	{
+		persisted = loaded;
+		Map<String, Object> previous = snapshot.getAndSet(loaded);
+		notifyListeners(previous, loaded);
+	}
+	
+	/** Starts reloading this config whenever its file changes. Values changed in memory but not saved yet are lost on reload.
+	 * 
+	 * @throws IOException if the folder of the file can not be watched. */
+	public void watch() throws IOException, NonSaveableConfigException
+	{
+		if (file == null)
+		{
+			throw new NonSaveableConfigException();
+		}
+		ConfigWatcher.watch(this, watchPath(file));
+		watched = true;
+	}
+	
+	/** Stops reloading this config when its file changes. */
+	public void unwatch()
+	{
+		watched = false;
+		if (file != null)
+		{
+			ConfigWatcher.unwatch(this, watchPath(file));
+		}
+	}
+	
+	public boolean isWatched()
+	{
+		return watched;
+	}
+	
+	/** Gets notified whenever the value at the path, or anything nested in it, changes on reload.
+	 * 
+	 * @param path the keys to follow, separated by dots.
+	 * @param listener the listener to notify. */
+	public void subscribe(String path, ConfigListener listener)
+	{
+		subscriptions.add(new Subscription(path, listener));
+	}
+	
+	public void unsubscribe(String path, ConfigListener listener)
+	{
+		subscriptions.removeIf(subscription -> subscription.path.equals(path) && subscription.listener == listener);
+	}
+	
+	/** Removes every subscription of the listener. */
+	public void unsubscribe(ConfigListener listener)
+	{
+		subscriptions.removeIf(subscription -> subscription.listener == listener);
 	}
 	
 	public void setFile(String fileName)
 	{
-		file = new File(Faucet.plugin.getDataFolder(), fileName);
+		setFile(new File(Faucet.plugin.getDataFolder(), fileName));
 	}
 	
 	public void setFile(File file)
 	{
+		if (watched && this.file != null)
+		{
+			ConfigWatcher.unwatch(this, watchPath(this.file));
+		}
 		this.file = file;
+		if (watched)
+		{
+			try
+			{
+				ConfigWatcher.watch(this, watchPath(file));
+			}
+			catch (IOException e)
+			{
+				e.printStackTrace();
+				watched = false;
+			}
+		}
 	}
 	
-	@SuppressWarnings("unchecked")
-	public void put(String key, String value)
+	/** Sets the format the config is written in when saved. Loading detects the format automatically.
+	 * 
+	 * @param format the format to save in, defaults to JSON. */
+	public void setFormat(StorageFormat format)
 	{
-		config.put(key, value);
+		this.format = format;
 	}
 	
-	@SuppressWarnings("unchecked")
-	public void put(String key, List<String> value)
+	public StorageFormat getFormat()
 	{
-		JSONArray array = new JSONArray();
-		for (String entry : value)
+		return format;
+	}
+	
+	/** Enables saving the config automatically after it was changed. Changes within the delay of each other are saved together.
+	 * 
+	 * @param delay the time to wait after the last change before saving. Set to a negative value to disable auto saving.
+	 * @param unit the unit of the delay. */
+	public void setAutoSave(long delay, TimeUnit unit)
+	{
+		autoSaveDelay = delay < 0 ? -1 : unit.toMillis(delay);
+	}
+	
+	/** Applies several changes at once, publishing a single new snapshot.
+	 * 
+	 * @param editor receives a mutable copy of the current values. May be called more than once if another thread writes concurrently. */
+	public void edit(Consumer<Map<String, Object>> editor)
+	{
+		Map<String, Object> current, updated;
+		do
 		{
-			array.add(entry);
+			current = snapshot.get();
+			Map<String, Object> copy = new LinkedHashMap<>(current);
+			editor.accept(copy);
+			updated = freezeMap(copy);
 		}
-		config.put(key, array);
+		while (!snapshot.compareAndSet(current, updated));
+		scheduleAutoSave();
+	}
+	
+	public void put(String key, String value)
+	{
+		edit(values -> values.put(key, value));
+	}
+	
+	public void put(String key, List<String> value)
+	{
+		edit(values -> values.put(key, value));
 	}
 	
-	@SuppressWarnings("unchecked")
 	public void putArray(String key, JSONArray value)
 	{
-		config.put(key, value);
+		edit(values -> values.put(key, value));
 	}
 	
-	@SuppressWarnings("unchecked")
 	public void put(String key, Map<String, String> value)
 	{
-		JSONObject object = new JSONObject();
-		for (String valKey : value.keySet())
-		{
-			String valVal = value.get(valKey);
-			object.put(valKey, valVal);
-		}
-		config.put(key, object);
+		edit(values -> values.put(key, value));
 	}
 	
-	@SuppressWarnings("unchecked")
 	public void put(String key, JSONObject value)
 	{
-		config.put(key, value);
+		edit(values -> values.put(key, value));
 	}
 	
-	@SuppressWarnings("unchecked")
 	public void putAll(Map<String, String> entry)
 	{
-		for (String key : entry.keySet())
-		{
-			String value = entry.get(key);
-			config.put(key, value);
-		}
+		edit(values -> values.putAll(entry));
 	}
 	
 	public boolean containsKey(String key)
 	{
-		return config.containsKey(key);
+		return snapshot.get().containsKey(key);
 	}
 	
 	public String get(String key)
 	{
-		if (containsKey(key))
+		Object value = snapshot.get().get(key);
+		if (value instanceof String)
 		{
-			Object value = config.get(key);
-			if (value instanceof String)
-			{
-				return (String) value;
-			}
+			return (String) value;
 		}
 		return null;
 	}
 	
 	public String getOrDefault(String key, String defaultValue)
 	{
-		if (containsKey(key))
+		Map<String, Object> values = snapshot.get();
+		Object value = values.get(key);
+		if (value instanceof String)
 		{
-			Object value = config.get(key);
-			if (value instanceof String)
-			{
-				return (String) value;
-			}
-			return null;
-		}
-		else
-		{
-			return defaultValue;
+			return (String) value;
 		}
+		return value == null && !values.containsKey(key) ? defaultValue : null;
 	}
 	
+	/** @return a copy of the list stored at the key, or null if there is none. Changes to it do not affect this config. */
 	@SuppressWarnings("unchecked")
 	public List<String> getList(String key)
 	{
-		if (containsKey(key))
+		Object value = snapshot.get().get(key);
+		if (value instanceof List)
 		{
-			Object value = config.get(key);
-			if (value instanceof JSONArray)
-			{
-				JSONArray array = (JSONArray) value;
-				List<String> output = new ArrayList<>();
-				for (String entry : (String[]) array.toArray(new String[0]))
-				{
-					output.add(entry);
-				}
-				return output;
-			}
+			return new ArrayList<>((List<String>) value);
 		}
 		return null;
 	}
 	
+	/** @return a mutable copy of the list stored at the key, or null if there is none. Changes to it do not affect this config.
+	 * @deprecated use {@link #getList(String)} or {@link #listKey(String)} to read and {@link #edit(Consumer)} to change the list. */
+	@Deprecated
 	public JSONArray getArray(String key)
 	{
-		if (containsKey(key))
+		Object value = snapshot.get().get(key);
+		if (value instanceof List)
 		{
-			Object value = config.get(key);
-			if (value instanceof JSONArray)
-			{
-				JSONArray array = (JSONArray) value;
-				return array;
-			}
+			return (JSONArray) thaw(value);
 		}
 		return null;
 	}
 	
+	/** @return a copy of the map stored at the key, or null if there is none. Changes to it do not affect this config. */
+	@SuppressWarnings("unchecked")
 	public Map<String, String> getMap(String key)
 	{
-		if (containsKey(key))
+		Object value = snapshot.get().get(key);
+		if (value instanceof Map)
 		{
-			Object value = config.get(key);
-			if (value instanceof JSONObject)
-			{
-				JSONObject object = (JSONObject) value;
-				@SuppressWarnings("unchecked")
-				Set<Map.Entry<String, String>> entrySet = object.entrySet();
-				Map<String, String> output = new HashMap<>();
-				for (Map.Entry<String, String> entry : entrySet)
-				{
-					output.put(entry.getKey(), entry.getValue());
-				}
-				return output;
-			}
+			return new HashMap<>((Map<String, String>) value);
 		}
 		return null;
 	}
 	
+	/** @return a mutable copy of the object stored at the key, or null if there is none. Changes to it do not affect this config.
+	 * @deprecated use {@link #getPath(String)} or {@link #mapKey(String)} to read and {@link #edit(Consumer)} to change the object. */
+	@Deprecated
 	public JSONObject getObject(String key)
 	{
-		if (containsKey(key))
+		Object value = snapshot.get().get(key);
+		if (value instanceof Map)
 		{
-			Object value = config.get(key);
-			if (value instanceof JSONObject)
-			{
-				JSONObject object = (JSONObject) value;
-				return object;
-			}
+			return thawMap((Map<?, ?>) value);
 		}
 		return null;
 	}
 	
 	public void remove(String key)
 	{
-		config.remove(key);
+		edit(values -> values.remove(key));
 	}
 	
+	/** @return the entries of a mutable copy of this config. Changes to them do not affect this config.
+	 * @deprecated use {@link #getSnapshot()} to read and {@link #edit(Consumer)} to change the values. */
+	@Deprecated
 	@SuppressWarnings("unchecked")
 	public Set<Entry<String, String>> getAll()
 	{
-		return config.entrySet();
+		return thawMap(snapshot.get()).entrySet();
+	}
+	
+	/** Looks up a value in nested objects, e.g. "limits.chat.rate".
+	 * 
+	 * @param path the keys to follow, separated by dots.
+	 * @return the value or null if any part of the path is missing. */
+	public Object getPath(String path)
+	{
+		return ConfigKey.lookup(snapshot.get(), path.split("\\."));
+	}
+	
+	/** Creates a typed handle to a value. See @ConfigKey.
+	 * 
+	 * @param path the keys to follow, separated by dots.
+	 * @param converter converts the stored value, returning null if it can not be converted. The ConfigKey constants cover the common types.
+	 * @param defaultValue the value to use if the stored value is missing or can not be converted.
+	 * @return the handle. */
+	public <T> ConfigKey<T> key(String path, Function<Object, T> converter, T defaultValue)
+	{
+		return new ConfigKey<>(this, path, converter, defaultValue);
+	}
+	
+	public ConfigKey<String> stringKey(String path, String defaultValue)
+	{
+		return key(path, ConfigKey.STRING, defaultValue);
+	}
+	
+	public ConfigKey<Integer> intKey(String path, int defaultValue)
+	{
+		return key(path, ConfigKey.INTEGER, defaultValue);
+	}
+	
+	public ConfigKey<Long> longKey(String path, long defaultValue)
+	{
+		return key(path, ConfigKey.LONG, defaultValue);
+	}
+	
+	public ConfigKey<Double> doubleKey(String path, double defaultValue)
+	{
+		return key(path, ConfigKey.DOUBLE, defaultValue);
+	}
+	
+	public ConfigKey<Boolean> booleanKey(String path, boolean defaultValue)
+	{
+		return key(path, ConfigKey.BOOLEAN, defaultValue);
+	}
+	
+	public ConfigKey<List<String>> listKey(String path)
+	{
+		return key(path, ConfigKey.STRING_LIST, Collections.emptyList());
+	}
+	
+	public ConfigKey<Map<String, String>> mapKey(String path)
+	{
+		return key(path, ConfigKey.STRING_MAP, Collections.emptyMap());
+	}
+	
+	private void scheduleAutoSave()
+	{
+		long delay = autoSaveDelay;
+		if (delay < 0 || file == null)
+		{
+			return;
+		}
+		synchronized (this)
+		{
+			if (pendingSave != null)
+			{
+				pendingSave.cancel(false);
+			}
+			pendingSave = autoSaver.schedule(() ->
+			{
+				Map<String, Object> values = snapshot.get();
+				persisted = values;
+				SaveQueue.save(JsonStream.toBytes(values, format), file);
+			}, delay, TimeUnit.MILLISECONDS);
+			autoSaving.add(this);
+		}
+	}
+	
+	/** Runs the pending auto saves of all configs right away and waits for them to be written. To be called when Faucet gets disabled, before
+	 * the SaveQueue shuts down. */
+	public static void flushAll()
+	{
+		Config[] configs;
+		synchronized (autoSaving)
+		{
+			configs = autoSaving.toArray(new Config[0]);
+			autoSaving.clear();
+		}
+		for (Config config : configs)
+		{
+			config.flush();
+		}
+	}
+	
+	private void flush()
+	{
+		ScheduledFuture<?> save;
+		synchronized (this)
+		{
+			save = pendingSave;
+			pendingSave = null;
+		}
+		if (save == null)
+		{
+			return;
+		}
+		if (!save.cancel(false))
+		{
+			// the save already ran or is running, wait for it to reach the SaveQueue
+			try
+			{
+				save.get();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+			catch (ExecutionException e)
+			{
+				Faucet.plugin.getLogger().log(Level.SEVERE, "Could not save config " + file, e.getCause());
+			}
+			return;
+		}
+		try
+		{
+			Map<String, Object> values = snapshot.get();
+			persisted = values;
+			SaveQueue.saveSync(JsonStream.toBytes(values, format), file);
+		}
+		catch (IOException e)
+		{
+			Faucet.plugin.getLogger().log(Level.SEVERE, "Could not save config " + file, e);
+		}
+	}
+	
+	private void notifyListeners(Map<String, Object> previous, Map<String, Object> current)
+	{
+		if (subscriptions.isEmpty())
+		{
+			return;
+		}
+		Set<String> changed = new HashSet<>();
+		diff(previous, current, "", changed);
+		if (changed.isEmpty())
+		{
+			return;
+		}
+		for (Subscription subscription : subscriptions)
+		{
+			if (!subscription.matches(changed))
+			{
+				continue;
+			}
+			try
+			{
+				subscription.listener.changed(this, subscription.path, ConfigKey.lookup(previous, subscription.segments),
+						ConfigKey.lookup(current, subscription.segments));
+			}
+			catch (Throwable t)
+			{
+				Faucet.plugin.getLogger().log(Level.SEVERE, "Could not pass config change of " + subscription.path + " to "
+						+ subscription.listener.getClass().getName(), t);
+			}
+		}
+	}
+	
+	/** Collects the dotted paths of all values that differ between the two maps. Nested objects are compared key by key, anything else as a
+	 * whole. */
+	static void diff(Map<?, ?> previous, Map<?, ?> current, String prefix, Set<String> changed)
+	{
+		Set<Object> keys = new HashSet<>(previous.keySet());
+		keys.addAll(current.keySet());
+		for (Object key : keys)
+		{
+			Object before = previous.get(key);
+			Object after = current.get(key);
+			if (before instanceof Map && after instanceof Map)
+			{
+				diff((Map<?, ?>) before, (Map<?, ?>) after, prefix + key + ".", changed);
+			}
+			else if (!Objects.equals(before, after) || previous.containsKey(key) != current.containsKey(key))
+			{
+				changed.add(prefix + key);
+			}
+		}
+	}
+	
+	private static Path watchPath(File file)
+	{
+		return file.toPath().toAbsolutePath().normalize();
+	}
+	
+	/** Copies a map into an unmodifiable one, recursively freezing nested maps and lists. */
+	static Map<String, Object> freezeMap(Map<?, ?> map)
+	{
+		Map<String, Object> frozen = new LinkedHashMap<>();
+		for (Map.Entry<?, ?> entry : map.entrySet())
+		{
+			frozen.put(String.valueOf(entry.getKey()), freeze(entry.getValue()));
+		}
+		return Collections.unmodifiableMap(frozen);
+	}
+	
+	/** Copies a map into a mutable JSONObject, recursively copying nested maps and lists. */
+	@SuppressWarnings("unchecked")
+	private static JSONObject thawMap(Map<?, ?> map)
+	{
+		JSONObject thawed = new JSONObject();
+		for (Map.Entry<?, ?> entry : map.entrySet())
+		{
+			thawed.put(entry.getKey(), thaw(entry.getValue()));
+		}
+		return thawed;
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static Object thaw(Object value)
+	{
+		if (value instanceof Map)
+		{
+			return thawMap((Map<?, ?>) value);
+		}
+		if (value instanceof List)
+		{
+			JSONArray thawed = new JSONArray();
+			for (Object element : (List<?>) value)
+			{
+				thawed.add(thaw(element));
+			}
+			return thawed;
+		}
+		return value;
+	}
+	
+	private static Object freeze(Object value)
+	{
+		// store numbers the way they are read back from the file, so a reload does not report them as changed
+		if (value instanceof Integer || value instanceof Short || value instanceof Byte)
+		{
+			return ((Number) value).longValue();
+		}
+		if (value instanceof Float)
+		{
+			return ((Float) value).doubleValue();
+		}
+		if (value instanceof Map)
+		{
+			return freezeMap((Map<?, ?>) value);
+		}
+		if (value instanceof List)
+		{
+			List<Object> frozen = new ArrayList<>();
+			for (Object element : (List<?>) value)
+			{
+				frozen.add(freeze(element));
+			}
+			return Collections.unmodifiableList(frozen);
+		}
+		return value;
+	}
+	
+	private static final class Subscription
+	{
+		private final String path;
+		private final String[] segments;
+		private final ConfigListener listener;
+		
+		private Subscription(String path, ConfigListener listener)
+		{
+			this.path = path;
+			this.segments = path.split("\\.");
+			this.listener = listener;
+		}
+		
+		/** @return true if a changed path is this path, lies within it or contains it. */
+		private boolean matches(Set<String> changed)
+		{
+			for (String other : changed)
+			{
+				if (other.equals(path) || other.startsWith(path + ".") || path.startsWith(other + "."))
+				{
+					return true;
+				}
+			}
+			return false;
+		}
 	}
-}
+}
\ No newline at end of file
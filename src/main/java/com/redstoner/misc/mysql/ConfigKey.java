@@ -0,0 +1,186 @@
+package com.redstoner.misc.mysql;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/** A typed handle to a single value of a Config, created through {@link Config#key(String, Function, Object)} and its shortcuts.</br>
+ * The path may point into nested objects, separated by dots, e.g. "limits.chat.rate".
+ * The value is looked up and converted once per snapshot of the config and cached, so reading it is as cheap as reading a field.
+ * Handles are meant to be created once and kept, not created per read.
+ * 
+ * @param <T> the type of the value. */
+public final class ConfigKey<T>
+{
+	private static final Pattern SEPARATOR = Pattern.compile("\\.");
+	
+	/** Accepts strings only. */
+	public static final Function<Object, String> STRING = value -> value instanceof String ? (String) value : null;
+	/** Accepts whole numbers and strings containing one. */
+	public static final Function<Object, Integer> INTEGER = value ->
+	{
+		Long number = toLong(value);
+		return number == null || number != number.intValue() ? null : number.intValue();
+	};
+	/** Accepts whole numbers and strings containing one. */
+	public static final Function<Object, Long> LONG = ConfigKey::toLong;
+	/** Accepts numbers and strings containing one. */
+	public static final Function<Object, Double> DOUBLE = value ->
+	{
+		if (value instanceof Number)
+			return ((Number) value).doubleValue();
+		if (value instanceof String)
+		{
+			try
+			{
+				return Double.valueOf(((String) value).trim());
+			}
+			catch (NumberFormatException e)
+			{}
+		}
+		return null;
+	};
+	/** Accepts booleans and the strings "true" and "false", ignoring case. */
+	public static final Function<Object, Boolean> BOOLEAN = value ->
+	{
+		if (value instanceof Boolean)
+			return (Boolean) value;
+		if ("true".equalsIgnoreCase(String.valueOf(value)))
+			return Boolean.TRUE;
+		if ("false".equalsIgnoreCase(String.valueOf(value)))
+			return Boolean.FALSE;
+		return null;
+	};
+	/** Accepts lists, converting each element to a string. The result is unmodifiable. */
+	public static final Function<Object, List<String>> STRING_LIST = value ->
+	{
+		if (!(value instanceof List))
+			return null;
+		List<String> list = new ArrayList<>();
+		for (Object element : (List<?>) value)
+			list.add(String.valueOf(element));
+		return Collections.unmodifiableList(list);
+	};
+	/** Accepts objects, converting each value to a string. The result is unmodifiable. */
+	public static final Function<Object, Map<String, String>> STRING_MAP = value ->
+	{
+		if (!(value instanceof Map))
+			return null;
+		Map<String, String> map = new LinkedHashMap<>();
+		for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet())
+			map.put(String.valueOf(entry.getKey()), String.valueOf(entry.getValue()));
+		return Collections.unmodifiableMap(map);
+	};
+	
+	private final Config config;
+	private final String path;
+	private final String[] segments;
+	private final Function<Object, T> converter;
+	private final T defaultValue;
+	private volatile Resolved<T> resolved;
+	
+	ConfigKey(Config config, String path, Function<Object, T> converter, T defaultValue)
+	{
+		this.config = config;
+		this.path = path;
+		this.segments = SEPARATOR.split(path);
+		this.converter = converter;
+		this.defaultValue = defaultValue;
+	}
+	
+	/** @return the converted value, or the default value if it is missing or can not be converted. */
+	public T get()
+	{
+		return current().value;
+	}
+	
+	/** @return true if the config contains a value at the path that can be converted. */
+	public boolean isPresent()
+	{
+		return current().present;
+	}
+	
+	public String getPath()
+	{
+		return path;
+	}
+	
+	public T getDefault()
+	{
+		return defaultValue;
+	}
+	
+	public Config getConfig()
+	{
+		return config;
+	}
+	
+	private Resolved<T> current()
+	{
+		Map<String, Object> values = config.getSnapshot();
+		Resolved<T> resolved = this.resolved;
+		if (resolved == null || resolved.values != values)
+		{
+			resolved = resolve(values);
+			this.resolved = resolved;
+		}
+		return resolved;
+	}
+	
+	private Resolved<T> resolve(Map<String, Object> values)
+	{
+		Object value = lookup(values, segments);
+		T converted = value == null ? null : converter.apply(value);
+		return converted == null ? new Resolved<>(values, defaultValue, false) : new Resolved<>(values, converted, true);
+	}
+	
+	/** Walks the nested objects along the path.
+	 * 
+	 * @return the value at the end of the path, or null if any part of it is missing. */
+	static Object lookup(Map<?, ?> values, String[] segments)
+	{
+		Object current = values;
+		for (String segment : segments)
+		{
+			if (!(current instanceof Map))
+				return null;
+			current = ((Map<?, ?>) current).get(segment);
+		}
+		return current;
+	}
+	
+	private static Long toLong(Object value)
+	{
+		if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte)
+			return ((Number) value).longValue();
+		if (value instanceof String)
+		{
+			try
+			{
+				return Long.valueOf(((String) value).trim());
+			}
+			catch (NumberFormatException e)
+			{}
+		}
+		return null;
+	}
+	
+	/** The value converted from one snapshot. Replaced as a whole so readers never see a value paired with the wrong snapshot. */
+	private static final class Resolved<T>
+	{
+		private final Map<String, Object> values;
+		private final T value;
+		private final boolean present;
+	
+		private Resolved(Map<String, Object> values, T value, boolean present)
+		{
+			this.values = values;
+			this.value = value;
+			this.present = present;
+		}
+	}
+}
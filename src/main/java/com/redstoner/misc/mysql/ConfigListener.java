@@ -0,0 +1,15 @@
+package com.redstoner.misc.mysql;
+
+/** Gets notified when a value of a Config changed because its file was reloaded. */
+@FunctionalInterface
+public interface ConfigListener
+{
+	/** Called once per subscribed path whose value changed. Gets called on the thread that reloaded the config, which is not the main thread
+	 * for changes picked up by the file watcher.
+	 * 
+	 * @param config the config that changed.
+	 * @param path the path that was subscribed to.
+	 * @param oldValue the previous value at the path, or null if there was none.
+	 * @param newValue the new value at the path, or null if it was removed. */
+	public void changed(Config config, String path, Object oldValue, Object newValue);
+}
@@ -0,0 +1,166 @@
+package com.redstoner.misc.mysql;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.TimeUnit;
+
+/** The single watch service shared by all watched configs.</br>
+ * One thread waits for changes to the watched files. Changes arriving in quick succession are collected, then every affected config is
+ * reloaded once on that thread. */
+public final class ConfigWatcher
+{
+	/** The time to wait for further changes before reloading, as editors and the SaveQueue touch a file several times per save. */
+	private static final long SETTLE_MILLIS = 200;
+	
+	private static final Map<Path, Set<Config>> watched = new ConcurrentHashMap<>();
+	private static final Map<Path, WatchKey> directories = new ConcurrentHashMap<>();
+	private static WatchService service;
+	private static Thread thread;
+	
+	private ConfigWatcher()
+	{}
+	
+	static synchronized void watch(Config config, Path file) throws IOException
+	{
+		ensureStarted();
+		Path directory = file.getParent();
+		if (!directories.containsKey(directory))
+		{
+			directories.put(directory, directory.register(service, ENTRY_CREATE, ENTRY_MODIFY));
+		}
+		watched.computeIfAbsent(file, path -> new CopyOnWriteArraySet<>()).add(config);
+	}
+	
+	static synchronized void unwatch(Config config, Path file)
+	{
+		Set<Config> configs = watched.get(file);
+		if (configs == null)
+		{
+			return;
+		}
+		configs.remove(config);
+		if (!configs.isEmpty())
+		{
+			return;
+		}
+		watched.remove(file);
+		Path directory = file.getParent();
+		for (Path path : watched.keySet())
+		{
+			if (path.getParent().equals(directory))
+			{
+				return;
+			}
+		}
+		WatchKey key = directories.remove(directory);
+		if (key != null)
+		{
+			key.cancel();
+		}
+	}
+	
+	/** Stops the watcher thread. To be called when Faucet gets disabled. Watching a config afterwards starts a new one. */
+	public static synchronized void shutdown()
+	{
+		if (service == null)
+		{
+			return;
+		}
+		try
+		{
+			service.close();
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+		service = null;
+		thread = null;
+		watched.clear();
+		directories.clear();
+	}
+	
+	private static void ensureStarted() throws IOException
+	{
+		if (service != null)
+		{
+			return;
+		}
+		service = FileSystems.getDefault().newWatchService();
+		WatchService current = service;
+		thread = new Thread(() -> run(current), "Faucet Config Watcher");
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
+	private static void run(WatchService service)
+	{
+		try
+		{
+			while (true)
+			{
+				Set<Path> changed = new LinkedHashSet<>();
+				WatchKey key = service.take();
+				while (key != null)
+				{
+					collect(key, changed);
+					key = service.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+				}
+				for (Path file : changed)
+				{
+					Set<Config> configs = watched.get(file);
+					if (configs == null)
+					{
+						continue;
+					}
+					for (Config config : configs)
+					{
+						config.reload();
+					}
+				}
+			}
+		}
+		catch (InterruptedException | ClosedWatchServiceException e)
+		{}
+	}
+	
+	private static void collect(WatchKey key, Set<Path> changed)
+	{
+		Path directory = (Path) key.watchable();
+		for (WatchEvent<?> event : key.pollEvents())
+		{
+			if (event.kind() == OVERFLOW)
+			{
+				// events were lost, reload everything in that directory
+				for (Path path : watched.keySet())
+				{
+					if (path.getParent().equals(directory))
+					{
+						changed.add(path);
+					}
+				}
+				continue;
+			}
+			Path file = directory.resolve((Path) event.context());
+			if (watched.containsKey(file))
+			{
+				changed.add(file);
+			}
+		}
+		key.reset();
+	}
+}
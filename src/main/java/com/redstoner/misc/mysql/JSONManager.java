@@ -1,18 +1,17 @@
 package com.redstoner.misc.mysql;
 
+import com.fasterxml.jackson.core.JsonParseException;
 import com.redstoner.faucet.Faucet;
-import org.json.simple.JSONArray;
-import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
+import com.redstoner.misc.JsonIterator;
+import com.redstoner.misc.JsonStream;
 import org.json.simple.parser.ParseException;
 
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -60,47 +59,72 @@ public class JSONManager
 		}
 	}
 	
-	@SuppressWarnings("unchecked")
 	public static void saveList(File file, List<Serializable> entries) throws IOException
 	{
-		JSONArray array = new JSONArray();
-		array.addAll(entries);
-		FileWriter writer = new FileWriter(file);
-		writer.write(array.toJSONString());
-		writer.close();
+		JsonStream.writeArray(entries.iterator(), file);
 	}
 	
 	public static List<Serializable> loadList(File file) throws IOException, ParseException
 	{
-		FileReader read = new FileReader(file);
 		List<Serializable> entries = new ArrayList<>();
-		JSONArray array = (JSONArray) new JSONParser().parse(read);
-		for (Object o : array)
+		try (JsonIterator<Object> array = iterateArray(file))
 		{
-			entries.add((Serializable) o);
+			while (array.hasNext())
+			{
+				entries.add((Serializable) array.next());
+			}
+		}
+		catch (UncheckedIOException e)
+		{
+			throw e.getCause();
 		}
 		return entries;
 	}
 	
-	@SuppressWarnings("unchecked")
 	public static void saveMap(File file, Map<Serializable, Serializable> entries) throws IOException
 	{
-		JSONObject map = new JSONObject();
-		map.putAll(entries);
-		FileWriter writer = new FileWriter(file);
-		writer.write(map.toJSONString());
-		writer.close();
+		JsonStream.writeObject(entries.entrySet().iterator(), file);
 	}
 	
 	public static Map<Serializable, Serializable> loadMap(File file) throws IOException, ParseException
 	{
-		FileReader reader = new FileReader(file);
-		JSONObject map = (JSONObject) new JSONParser().parse(reader);
 		Map<Serializable, Serializable> entries = new HashMap<>();
-		for (Object o : map.keySet())
+		try (JsonIterator<Map.Entry<String, Object>> map = iterateObject(file))
+		{
+			while (map.hasNext())
+			{
+				Map.Entry<String, Object> entry = map.next();
+				entries.put(entry.getKey(), (Serializable) entry.getValue());
+			}
+		}
+		catch (UncheckedIOException e)
 		{
-			entries.put((Serializable) o, (Serializable) map.get(o));
+			throw e.getCause();
 		}
 		return entries;
 	}
+	
+	private static JsonIterator<Object> iterateArray(File file) throws IOException, ParseException
+	{
+		try
+		{
+			return JsonStream.iterateArray(file);
+		}
+		catch (JsonParseException e)
+		{
+			throw new ParseException(ParseException.ERROR_UNEXPECTED_TOKEN);
+		}
+	}
+	
+	private static JsonIterator<Map.Entry<String, Object>> iterateObject(File file) throws IOException, ParseException
+	{
+		try
+		{
+			return JsonStream.iterateObject(file);
+		}
+		catch (JsonParseException e)
+		{
+			throw new ParseException(ParseException.ERROR_UNEXPECTED_TOKEN);
+		}
+	}
 }
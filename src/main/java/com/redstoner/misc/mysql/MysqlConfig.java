@@ -0,0 +1,214 @@
+package com.redstoner.misc.mysql;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.json.simple.parser.ParseException;
+
+import com.redstoner.exceptions.NonSaveableConfigException;
+import com.redstoner.faucet.Faucet;
+
+/** The connection settings of the @MysqlHandler, read once from mysqlCredentials.json.</br>
+ * The port and the other numbers may be given as JSON numbers or as strings. A missing file is replaced with an example one.</br>
+ * Read replicas are listed as "host" or "host:port" under "replicas" and use the same credentials as the primary server. Servers that do not
+ * replicate from any source only receive reads if "allowNonReplicatingReplicas" is true, e.g. for a second instance used for testing. */
+public final class MysqlConfig
+{
+	/** The default time in milliseconds to wait for a connection to the server. */
+	public static final int DEFAULT_CONNECT_TIMEOUT = 10000;
+	/** The default amount of connections opened ahead of their first use. */
+	public static final int DEFAULT_WARM_CONNECTIONS = 2;
+	/** The default time in milliseconds the first users of the database wait for it to become ready. */
+	public static final long DEFAULT_READY_TIMEOUT = 15000;
+	/** The default time in milliseconds between two health checks of each replica. */
+	public static final long DEFAULT_HEALTH_CHECK_INTERVAL = 5000;
+	/** The default amount of seconds a replica may lag behind before it stops receiving reads. */
+	public static final long DEFAULT_MAX_REPLICA_LAG = 10;
+	/** The default time in milliseconds after a write of a module during which its reads go to the primary server. As long as the most a
+	 * healthy replica can lag behind, see {@link #getReadYourWritesWindow()}. */
+	public static final long DEFAULT_READ_YOUR_WRITES_WINDOW = DEFAULT_MAX_REPLICA_LAG * 1000 + DEFAULT_HEALTH_CHECK_INTERVAL;
+	
+	private final String hostname;
+	private final int port;
+	private final String username;
+	private final String password;
+	private final int connectTimeout;
+	private final int warmConnections;
+	private final long readyTimeout;
+	private final List<String> replicas;
+	private final long healthCheckInterval;
+	private final long maxReplicaLag;
+	private final long readYourWritesWindow;
+	private final boolean allowNonReplicatingReplicas;
+	
+	public MysqlConfig(String hostname, int port, String username, String password)
+	{
+		this(hostname, port, username, password, DEFAULT_CONNECT_TIMEOUT, DEFAULT_WARM_CONNECTIONS, DEFAULT_READY_TIMEOUT);
+	}
+	
+	public MysqlConfig(String hostname, int port, String username, String password, int connectTimeout, int warmConnections,
+			long readyTimeout)
+	{
+		this(hostname, port, username, password, connectTimeout, warmConnections, readyTimeout, Collections.emptyList(),
+				DEFAULT_HEALTH_CHECK_INTERVAL, DEFAULT_MAX_REPLICA_LAG, DEFAULT_READ_YOUR_WRITES_WINDOW);
+	}
+	
+	/** @param replicas the read replicas as "host" or "host:port".
+	 * @param healthCheckInterval the time in milliseconds between two health checks of each replica.
+	 * @param maxReplicaLag the amount of seconds a replica may lag behind before it stops receiving reads.
+	 * @param readYourWritesWindow the time in milliseconds after a write of a module during which its reads go to the primary server. Raised
+	 *        to the most a healthy replica can lag behind if shorter. */
+	public MysqlConfig(String hostname, int port, String username, String password, int connectTimeout, int warmConnections,
+			long readyTimeout, List<String> replicas, long healthCheckInterval, long maxReplicaLag, long readYourWritesWindow)
+	{
+		this(hostname, port, username, password, connectTimeout, warmConnections, readyTimeout, replicas, healthCheckInterval, maxReplicaLag,
+				readYourWritesWindow, false);
+	}
+	
+	/** @param allowNonReplicatingReplicas true to send reads to replicas that do not replicate from any source. */
+	public MysqlConfig(String hostname, int port, String username, String password, int connectTimeout, int warmConnections,
+			long readyTimeout, List<String> replicas, long healthCheckInterval, long maxReplicaLag, long readYourWritesWindow,
+			boolean allowNonReplicatingReplicas)
+	{
+		this.hostname = hostname;
+		this.port = port;
+		this.username = username;
+		this.password = password;
+		this.connectTimeout = connectTimeout;
+		this.warmConnections = Math.max(0, warmConnections);
+		this.readyTimeout = readyTimeout;
+		this.replicas = Collections.unmodifiableList(replicas);
+		this.healthCheckInterval = Math.max(100, healthCheckInterval);
+		this.maxReplicaLag = maxReplicaLag;
+		// a replica lagging up to maxReplicaLag at its last check may fall further behind until the next one
+		this.readYourWritesWindow = Math.max(readYourWritesWindow, TimeUnit.SECONDS.toMillis(maxReplicaLag) + this.healthCheckInterval);
+		this.allowNonReplicatingReplicas = allowNonReplicatingReplicas;
+	}
+	
+	/** Reads the settings, creating an example file if there is none.
+	 *
+	 * @throws IOException if the file can not be read.
+	 * @throws ParseException if the file is not valid JSON. */
+	public static MysqlConfig load(File file) throws IOException, ParseException
+	{
+		Config config = Config.getConfig(file);
+		if (!file.exists())
+		{
+			Faucet.plugin.getLogger().warning("MySQL config does not exist, creating an example one, things might (will) break!");
+			config.edit(values ->
+			{
+				values.put("hostname", "localhost");
+				values.put("port", 3306);
+				values.put("username", "your username here");
+				values.put("password", "your password here");
+			});
+			try
+			{
+				file.getParentFile().mkdirs();
+				config.save();
+			}
+			catch (NonSaveableConfigException e)
+			{
+				e.printStackTrace();
+			}
+		}
+		return new MysqlConfig(config.stringKey("hostname", "localhost").get(), config.intKey("port", 3306).get(),
+				config.stringKey("username", "").get(), config.stringKey("password", "").get(),
+				config.intKey("connectTimeout", DEFAULT_CONNECT_TIMEOUT).get(), config.intKey("warmConnections", DEFAULT_WARM_CONNECTIONS).get(),
+				config.longKey("readyTimeout", DEFAULT_READY_TIMEOUT).get(), config.listKey("replicas").get(),
+				config.longKey("healthCheckInterval", DEFAULT_HEALTH_CHECK_INTERVAL).get(),
+				config.longKey("maxReplicaLag", DEFAULT_MAX_REPLICA_LAG).get(),
+				config.longKey("readYourWritesWindow", DEFAULT_READ_YOUR_WRITES_WINDOW).get(),
+				config.booleanKey("allowNonReplicatingReplicas", false).get());
+	}
+	
+	public String getHostname()
+	{
+		return hostname;
+	}
+	
+	public int getPort()
+	{
+		return port;
+	}
+	
+	public String getUsername()
+	{
+		return username;
+	}
+	
+	/** @return the time in milliseconds to wait for a connection to the server. */
+	public int getConnectTimeout()
+	{
+		return connectTimeout;
+	}
+	
+	/** @return the amount of connections kept open ahead of their use. */
+	public int getWarmConnections()
+	{
+		return warmConnections;
+	}
+	
+	/** @return the time in milliseconds the first users of the database wait for it to become ready. */
+	public long getReadyTimeout()
+	{
+		return readyTimeout;
+	}
+	
+	/** @return the read replicas as "host" or "host:port", empty if all queries go to the primary server. */
+	public List<String> getReplicas()
+	{
+		return replicas;
+	}
+	
+	/** @return the time in milliseconds between two health checks of each replica. */
+	public long getHealthCheckInterval()
+	{
+		return healthCheckInterval;
+	}
+	
+	/** @return the amount of seconds a replica may lag behind before it stops receiving reads. */
+	public long getMaxReplicaLag()
+	{
+		return maxReplicaLag;
+	}
+	
+	/** @return the time in milliseconds after a write of a module during which its reads go to the primary server. At least the maximum
+	 *         replica lag plus the health check interval, so no healthy replica can still miss the write. */
+	public long getReadYourWritesWindow()
+	{
+		return readYourWritesWindow;
+	}
+	
+	/** @return true if replicas that do not replicate from any source receive reads. */
+	public boolean isAllowNonReplicatingReplicas()
+	{
+		return allowNonReplicatingReplicas;
+	}
+	
+	/** @return the JDBC url of the server, without a database. */
+	public String getUrl()
+	{
+		return "jdbc:mysql://" + hostname + ":" + port + "/";
+	}
+	
+	/** @return the properties to connect with, including the credentials. */
+	Properties getProperties()
+	{
+		Properties properties = new Properties();
+		properties.setProperty("user", username);
+		properties.setProperty("password", password);
+		properties.setProperty("connectTimeout", String.valueOf(connectTimeout));
+		return properties;
+	}
+	
+	@Override
+	public String toString()
+	{
+		return username + "@" + hostname + ":" + port;
+	}
+}
@@ -2,80 +2,276 @@ package com.redstoner.misc.mysql;
 
 import com.redstoner.faucet.Faucet;
 import com.redstoner.misc.mysql.elements.MysqlDatabase;
-import org.bukkit.Bukkit;
-import org.bukkit.ChatColor;
 import org.json.simple.parser.ParseException;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.Serializable;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
 
+/** Connects to the MySQL server configured in mysqlCredentials.json.</br>
+ * {@link #init()} returns right away: the config is read and the first connections are opened on a background thread while the modules
+ * get enabled. The handler exists from then on, both as {@link #INSTANCE} and through {@link #get()}. Its methods wait for it to become
+ * ready, up to the configured ready timeout.
+ * Connections opened ahead of time are handed out first and replaced in the background. If read replicas are configured, the databases
+ * route their reads through @MysqlReplicas. */
 public class MysqlHandler
 {
-	public static MysqlHandler INSTANCE;
-	private String url, username, password;
+	/** The handler, set by {@link #init()} before it is ready. Its methods wait until it is. */
+	public static volatile MysqlHandler INSTANCE;
+	
+	/** Completes once the config is read and the first connections are open. The fields below are set before. */
+	private final CompletableFuture<MysqlHandler> ready = new CompletableFuture<>();
+	private volatile MysqlConfig config;
+	private String url;
+	private Properties properties;
+	private MysqlReplicas replicas;
+	private final BlockingQueue<Connection> warm = new LinkedBlockingQueue<>();
+	private final ExecutorService warmer = Executors.newSingleThreadExecutor(runnable ->
+	{
+		Thread thread = new Thread(runnable, "Faucet MySQL Warmup");
+		thread.setDaemon(true);
+		return thread;
+	});
 	
 	public MysqlHandler(String hostname, int port, String username, String password)
 	{
-		this.url = "jdbc:mysql://" + hostname + ":" + port + "/";
-		this.username = username;
-		this.password = password;
+		this(new MysqlConfig(hostname, port, username, password));
+	}
+	
+	public MysqlHandler(MysqlConfig config)
+	{
+		configure(config);
+		ready.complete(this);
 	}
 	
-	public static void init()
+	/** Creates a handler that becomes ready once {@link #init()} read its config. */
+	private MysqlHandler()
+	{}
+	
+	private void configure(MysqlConfig config)
+	{
+		this.url = config.getUrl();
+		this.properties = config.getProperties();
+		this.replicas = config.getReplicas().isEmpty() ? null : new MysqlReplicas(config);
+		this.config = config;
+	}
+	
+	/** Reads the config and opens the first connections in the background. {@link #INSTANCE} is set right away.
+	 *
+	 * @return a future completing with the handler once it is ready, or exceptionally if the config could not be read. */
+	public static CompletableFuture<MysqlHandler> init()
 	{
-		Map<Serializable, Serializable> mysqlCredentials = new HashMap<>();
 		File mysqlCredentialsFile = new File(Faucet.plugin.getDataFolder(), "mysqlCredentials.json");
-		if (mysqlCredentialsFile.exists())
+		MysqlHandler handler = new MysqlHandler();
+		INSTANCE = handler;
+		Thread thread = new Thread(() ->
 		{
 			try
 			{
-				mysqlCredentials = JSONManager.loadMap(mysqlCredentialsFile);
+				handler.configure(MysqlConfig.load(mysqlCredentialsFile));
+				handler.warmUp();
+				if (handler.replicas != null)
+				{
+					handler.replicas.start();
+				}
+				if (!handler.ready.complete(handler))
+				{
+					// shut down while connecting, close what was opened since
+					handler.close();
+				}
 			}
-			catch (IOException | ParseException e)
+			catch (IOException | ParseException | RuntimeException e)
 			{
-				e.printStackTrace();
+				Faucet.plugin.getLogger().log(Level.SEVERE, "Could not read the MySQL config", e);
+				handler.ready.completeExceptionally(e);
 			}
+		}, "Faucet MySQL Init");
+		thread.setDaemon(true);
+		thread.start();
+		return handler.ready;
+	}
+	
+	/** Waits for {@link #init()} to finish, up to the ready timeout of the config. Avoid calling this from the main thread during startup.
+	 *
+	 * @return the handler.
+	 * @throws IllegalStateException if the handler did not become ready in time or could not be created. */
+	public static MysqlHandler get() throws IllegalStateException
+	{
+		MysqlHandler handler = INSTANCE;
+		if (handler == null)
+		{
+			throw new IllegalStateException("MySQL has not been initialized!");
+		}
+		return handler.awaitReady();
+	}
+	
+	/** Waits for this handler to become ready, up to the ready timeout of the config.
+	 *
+	 * @throws IllegalStateException if the handler did not become ready in time or could not be created. */
+	private MysqlHandler awaitReady() throws IllegalStateException
+	{
+		if (ready.isDone() && !ready.isCompletedExceptionally())
+		{
+			return this;
+		}
+		MysqlConfig config = this.config;
+		long timeout = config == null ? MysqlConfig.DEFAULT_READY_TIMEOUT : config.getReadyTimeout();
+		try
+		{
+			return ready.get(timeout, TimeUnit.MILLISECONDS);
+		}
+		catch (CancellationException e)
+		{
+			throw new IllegalStateException("MySQL has been shut down!", e);
+		}
+		catch (TimeoutException e)
+		{
+			throw new IllegalStateException("MySQL did not become ready within " + timeout + "ms!", e);
 		}
-		else
+		catch (ExecutionException e)
+		{
+			throw new IllegalStateException("MySQL could not be initialized!", e.getCause());
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for MySQL!", e);
+		}
+	}
+	
+	/** @return true once {@link #init()} has finished successfully. */
+	public static boolean isReady()
+	{
+		MysqlHandler handler = INSTANCE;
+		return handler != null && handler.ready.isDone() && !handler.ready.isCompletedExceptionally();
+	}
+	
+	/** Closes the connections that were opened ahead of time. To be called when Faucet gets disabled. */
+	public static void shutdown()
+	{
+		MysqlHandler handler = INSTANCE;
+		if (handler != null)
+		{
+			handler.close();
+		}
+	}
+	
+	public MysqlConfig getConfig()
+	{
+		return awaitReady().config;
+	}
+	
+	/** @return the read replicas, or null if none are configured. */
+	public MysqlReplicas getReplicas()
+	{
+		return awaitReady().replicas;
+	}
+	
+	/** Opens the configured amount of connections. Failing to connect is logged, the handler then connects on demand. */
+	private void warmUp()
+	{
+		long start = System.nanoTime();
+		for (int i = 0; i < config.getWarmConnections(); i++)
 		{
-			Bukkit.getConsoleSender().sendMessage(
-					ChatColor.RED + "MySQL config does not exist, creating an example one, things might (will) break!");
-			mysqlCredentials.put("hostname", "localhost");
-			mysqlCredentials.put("port", "3306");
-			mysqlCredentials.put("username", "your username here");
-			mysqlCredentials.put("password", "your password here");
 			try
 			{
-				JSONManager.saveMap(mysqlCredentialsFile, mysqlCredentials);
+				warm.offer(DriverManager.getConnection(url, properties));
 			}
-			catch (IOException e)
+			catch (SQLException e)
 			{
-				e.printStackTrace();
+				Faucet.plugin.getLogger().log(Level.SEVERE, "Cannot connect to the database at " + config + "!", e);
+				return;
 			}
 		}
-		String hostname = (String) mysqlCredentials.get("hostname");
-		int port = Integer.valueOf((String) mysqlCredentials.get("port"));
-		String username = (String) mysqlCredentials.get("username");
-		String password = (String) mysqlCredentials.get("password");
-		INSTANCE = new MysqlHandler(hostname, port, username, password);
+		Faucet.plugin.getLogger().info("Connected to MySQL at " + config + " in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+	}
+	
+	/** Opens a connection in the background to replace one that was handed out. */
+	private void refill()
+	{
+		warmer.execute(() ->
+		{
+			if (warm.size() >= config.getWarmConnections())
+			{
+				return;
+			}
+			try
+			{
+				warm.offer(DriverManager.getConnection(url, properties));
+			}
+			catch (SQLException e)
+			{
+				Faucet.plugin.getLogger().log(Level.FINE, "Could not open a connection ahead of time", e);
+			}
+		});
+	}
+	
+	private void close()
+	{
+		warmer.shutdownNow();
+		// keeps a running init from completing, it closes the handler again once it is done
+		ready.cancel(false);
+		if (replicas != null)
+		{
+			replicas.shutdown();
+		}
+		Connection connection;
+		while ((connection = warm.poll()) != null)
+		{
+			closeQuietly(connection);
+		}
+	}
+	
+	private static void closeQuietly(Connection connection)
+	{
+		try
+		{
+			connection.close();
+		}
+		catch (SQLException e)
+		{}
 	}
 	
 	private Connection getConnection(String databaseName) throws IllegalStateException
 	{
-		Connection connection = null;
+		Connection connection;
+		while ((connection = warm.poll()) != null)
+		{
+			refill();
+			try
+			{
+				if (connection.isValid(1))
+				{
+					connection.setCatalog(databaseName);
+					return connection;
+				}
+			}
+			catch (SQLException e)
+			{
+				// the connection broke while waiting, try the next one
+			}
+			closeQuietly(connection);
+		}
 		try
 		{
-			connection = DriverManager.getConnection(url + databaseName, username, password);
+			connection = DriverManager.getConnection(url + databaseName, properties);
 		}
 		catch (SQLException e)
 		{
@@ -84,23 +280,31 @@ public class MysqlHandler
 		return connection;
 	}
 	
+	/** Waits for the handler to become ready, then connects to the database.
+	 *
+	 * @throws IllegalStateException if the handler did not become ready in time or the database can not be reached. */
 	public MysqlDatabase getDatabase(String databaseName)
 	{
-		return new MysqlDatabase(getConnection(databaseName));
+		awaitReady();
+		return new MysqlDatabase(getConnection(databaseName), replicas);
 	}
 	
+	/** Waits for the handler to become ready, then connects to every database.
+	 *
+	 * @return the databases, or null if they could not be listed. */
 	public List<MysqlDatabase> getDatabases()
 	{
+		awaitReady();
 		try
 		{
 			List<MysqlDatabase> databases = new ArrayList<>();
-			Connection connection = DriverManager.getConnection(url.substring(0, url.length()), username, password);
+			Connection connection = DriverManager.getConnection(url, properties);
 			DatabaseMetaData metadata = connection.getMetaData();
 			ResultSet queryResults = metadata.getCatalogs();
 			while (queryResults.next())
 			{
 				String databaseName = queryResults.getString("TABLE_CAT");
-				databases.add(new MysqlDatabase(getConnection(databaseName)));
+				databases.add(new MysqlDatabase(getConnection(databaseName), replicas));
 			}
 			connection.close();
 			return databases;
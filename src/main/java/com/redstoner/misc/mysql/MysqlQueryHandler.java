@@ -2,32 +2,110 @@ package com.redstoner.misc.mysql;
 
 import java.sql.CallableStatement;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 
+/** Executes statements, timing every one of them through the @QueryMonitor. Failures are logged and reported as null or false.</br>
+ * The methods taking an execution let the caller start it, e.g. for a @MysqlDatabase, and count the rows it reads from the results. */
 public class MysqlQueryHandler {
 	public static ResultSet queryResult(Connection connection, String query) {
+		return queryResult(connection, QueryMonitor.start(query), query);
+	}
+	
+	public static ResultSet queryResult(Connection connection, QueryMonitor.Execution execution, String query) {
 		try {
 			Statement statement = connection.createStatement();
 			ResultSet results = statement.executeQuery(query);
+			execution.finish(-1);
 			
 			return results;
 		} catch (SQLException e) {
-			e.printStackTrace();
+			execution.fail(e);
 			return null;
 		}
 	}
 	
 	public static boolean queryNoResult(Connection connection, String query) {
+		return queryNoResult(connection, QueryMonitor.start(query), query);
+	}
+	
+	public static boolean queryNoResult(Connection connection, QueryMonitor.Execution execution, String query) {
 		try {
 			CallableStatement statement = connection.prepareCall(query);
 			statement.execute();
+			execution.finish(statement.getUpdateCount());
 			
 			return true;
 		} catch (SQLException e) {
-			e.printStackTrace();
+			execution.fail(e);
 			return false;
 		}
 	}
+	
+	/** Executes a query with bound parameters. Closing the returned results also closes the statement.
+	 *
+	 * @param query the query, with a ? for every parameter.
+	 * @param parameters the values of the parameters, bound with setObject.
+	 * @return the results, or null if the query failed. */
+	public static ResultSet query(Connection connection, String query, Object... parameters) {
+		return query(connection, QueryMonitor.start(query, parameters), query, parameters);
+	}
+	
+	/** Executes a query with bound parameters, timed by the given execution. Closing the returned results also closes the statement.
+	 *
+	 * @param execution the execution started for the query, to count the rows read with {@link QueryMonitor.Execution#read(long)}.
+	 * @param query the query, with a ? for every parameter.
+	 * @param parameters the values of the parameters, bound with setObject.
+	 * @return the results, or null if the query failed. */
+	public static ResultSet query(Connection connection, QueryMonitor.Execution execution, String query, Object... parameters) {
+		try {
+			PreparedStatement statement = prepare(connection, query, parameters);
+			ResultSet results = statement.executeQuery();
+			statement.closeOnCompletion();
+			execution.finish(-1);
+			
+			return results;
+		} catch (SQLException e) {
+			execution.fail(e);
+			return null;
+		}
+	}
+	
+	/** Executes an insert, update or delete with bound parameters.
+	 *
+	 * @param query the statement, with a ? for every parameter.
+	 * @param parameters the values of the parameters, bound with setObject.
+	 * @return the amount of rows changed, or -1 if the statement failed. */
+	public static int update(Connection connection, String query, Object... parameters) {
+		return update(connection, QueryMonitor.start(query, parameters), query, parameters);
+	}
+	
+	/** Executes an insert, update or delete with bound parameters, timed by the given execution.
+	 *
+	 * @param execution the execution started for the statement.
+	 * @param query the statement, with a ? for every parameter.
+	 * @param parameters the values of the parameters, bound with setObject.
+	 * @return the amount of rows changed, or -1 if the statement failed. */
+	public static int update(Connection connection, QueryMonitor.Execution execution, String query, Object... parameters) {
+		try (PreparedStatement statement = prepare(connection, query, parameters)) {
+			int rows = statement.executeUpdate();
+			execution.finish(rows);
+			
+			return rows;
+		} catch (SQLException e) {
+			execution.fail(e);
+			return -1;
+		}
+	}
+	
+	private static PreparedStatement prepare(Connection connection, String query, Object... parameters) throws SQLException {
+		PreparedStatement statement = connection.prepareStatement(query);
+		for (int i = 0; i < parameters.length; i++) {
+			statement.setObject(i + 1, parameters[i]);
+		}
+		
+		return statement;
+	}
 }
@@ -0,0 +1,410 @@
+package com.redstoner.misc.mysql;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+import com.redstoner.faucet.Faucet;
+import com.redstoner.misc.Utils;
+
+/** The read replicas of the @MysqlHandler.</br>
+ * Reads of @MysqlTable and @MysqlQuery go to the healthy replica with the fewest reads in progress. Writes always go to the primary server,
+ * and so do reads on a connection inside a transaction. After a module wrote, its reads go to the primary server for
+ * {@link MysqlConfig#getReadYourWritesWindow()}, so it does not read data older than its own write from a lagging replica.</br>
+ * Every replica gets checked in the background. Replicas that can not be reached, whose replication stopped or that lag behind by more than
+ * {@link MysqlConfig#getMaxReplicaLag()} seconds receive no reads until they recover. Their connections are closed once the reads in
+ * progress on them finished. Servers that do not replicate at all only receive reads if
+ * {@link MysqlConfig#isAllowNonReplicatingReplicas()} is set. */
+public final class MysqlReplicas
+{
+	private final MysqlConfig config;
+	private final List<Replica> replicas;
+	private final Map<String, Long> lastWrites = new ConcurrentHashMap<>();
+	private final long window;
+	/** The time of the most recent write of any module, to skip looking up the calling module while no write is recent. */
+	private volatile long lastWrite;
+	private final AtomicInteger next = new AtomicInteger();
+	private ScheduledExecutorService checker;
+	
+	MysqlReplicas(MysqlConfig config)
+	{
+		this.config = config;
+		this.window = TimeUnit.MILLISECONDS.toNanos(config.getReadYourWritesWindow());
+		this.lastWrite = System.nanoTime() - window;
+		List<Replica> replicas = new ArrayList<>();
+		for (String address : config.getReplicas())
+		{
+			int colon = address.lastIndexOf(':');
+			String hostname = colon < 0 ? address : address.substring(0, colon);
+			int port = colon < 0 ? config.getPort() : Integer.parseInt(address.substring(colon + 1).trim());
+			replicas.add(new Replica(hostname.trim(), port, config.getProperties()));
+		}
+		this.replicas = Collections.unmodifiableList(replicas);
+	}
+	
+	/** Starts checking the health of the replicas, the first check runs right away. */
+	synchronized void start()
+	{
+		if (checker != null || replicas.isEmpty())
+			return;
+		checker = Executors.newSingleThreadScheduledExecutor(runnable ->
+		{
+			Thread thread = new Thread(runnable, "Faucet MySQL Health");
+			thread.setDaemon(true);
+			return thread;
+		});
+		checker.scheduleWithFixedDelay(this::checkAll, 0, config.getHealthCheckInterval(), TimeUnit.MILLISECONDS);
+	}
+	
+	synchronized void shutdown()
+	{
+		if (checker != null)
+		{
+			checker.shutdownNow();
+			checker = null;
+		}
+		for (Replica replica : replicas)
+			replica.closeAll();
+	}
+	
+	/** @return the replicas, healthy or not. */
+	public List<Replica> getReplicas()
+	{
+		return replicas;
+	}
+	
+	/** Notes that the calling module wrote, so its reads go to the primary server for a while. Called by @MysqlTable for its writes, modules
+	 * writing through the connection of a @MysqlDatabase directly should call {@link com.redstoner.misc.mysql.elements.MysqlDatabase#markWritten()}. */
+	public void markWritten()
+	{
+		markWritten(getModule());
+	}
+	
+	/** Notes that the module wrote, so its reads go to the primary server for a while.
+	 *
+	 * @param module the name of the module, {@link QueryMonitor#NO_MODULE} for Faucet itself. */
+	public void markWritten(String module)
+	{
+		long now = System.nanoTime();
+		lastWrites.put(module, now);
+		lastWrite = now;
+	}
+	
+	/** @return true if the calling module wrote within the read your writes window. */
+	public boolean isPinned()
+	{
+		long now = System.nanoTime();
+		return now - lastWrite < window && isPinned(getModule(), now);
+	}
+	
+	/** @param module the name of the module, {@link QueryMonitor#NO_MODULE} for Faucet itself.
+	 * @return true if the module wrote within the read your writes window. */
+	public boolean isPinned(String module)
+	{
+		return isPinned(module, System.nanoTime());
+	}
+	
+	private boolean isPinned(String module, long now)
+	{
+		if (now - lastWrite >= window)
+			return false;
+		Long written = lastWrites.get(module);
+		return written != null && now - written < window;
+	}
+	
+	/** Picks the healthy replica with the fewest reads in progress for the calling module.
+	 *
+	 * @param database the database to read from.
+	 * @return a lease on a connection to the replica, or null if the read has to go to the primary server. */
+	public Lease acquire(String database)
+	{
+		if (replicas.isEmpty() || isPinned())
+			return null;
+		return pick(database);
+	}
+	
+	/** Picks the healthy replica with the fewest reads in progress.
+	 *
+	 * @param database the database to read from.
+	 * @param module the module reading, {@link QueryMonitor#NO_MODULE} for Faucet itself.
+	 * @return a lease on a connection to the replica, or null if the read has to go to the primary server. */
+	public Lease acquire(String database, String module)
+	{
+		if (replicas.isEmpty() || isPinned(module))
+			return null;
+		return pick(database);
+	}
+	
+	private Lease pick(String database)
+	{
+		// start at a rotating offset, so ties do not all go to the first replica
+		int offset = Math.floorMod(next.getAndIncrement(), replicas.size());
+		Replica best = null;
+		for (int i = 0; i < replicas.size(); i++)
+		{
+			Replica replica = replicas.get((offset + i) % replicas.size());
+			if (replica.healthy && (best == null || replica.outstanding.get() < best.outstanding.get()))
+				best = replica;
+		}
+		if (best == null)
+			return null;
+		best.outstanding.incrementAndGet();
+		try
+		{
+			return new Lease(best.getConnection(database), best);
+		}
+		catch (SQLException e)
+		{
+			best.outstanding.decrementAndGet();
+			best.evict("it refused a connection (" + e.getMessage() + ")");
+			return null;
+		}
+	}
+	
+	/** @return a lease on the primary server, for reads that can not go to a replica. */
+	public static Lease primary(Connection connection)
+	{
+		return new Lease(connection, null);
+	}
+	
+	private void checkAll()
+	{
+		for (Replica replica : replicas)
+		{
+			if (Thread.currentThread().isInterrupted())
+				return;
+			replica.check(config.getMaxReplicaLag(), config.isAllowNonReplicatingReplicas());
+		}
+	}
+	
+	private static String getModule()
+	{
+		String module = Utils.getCallingModule();
+		return module == null ? QueryMonitor.NO_MODULE : module;
+	}
+	
+	/** A connection to read from, counted as a read in progress until closed. */
+	public static final class Lease implements AutoCloseable
+	{
+		private final Connection connection;
+		private final Replica replica;
+		private boolean closed;
+		
+		private Lease(Connection connection, Replica replica)
+		{
+			this.connection = connection;
+			this.replica = replica;
+		}
+		
+		public Connection getConnection()
+		{
+			return connection;
+		}
+		
+		/** @return the replica read from, null for the primary server. */
+		public Replica getReplica()
+		{
+			return replica;
+		}
+		
+		/** Ends the read. The connection stays open for later reads, unless the replica got evicted and this was its last read. */
+		@Override
+		public void close()
+		{
+			if (!closed && replica != null && replica.outstanding.decrementAndGet() == 0 && !replica.healthy)
+				replica.closeConnections();
+			closed = true;
+		}
+	}
+	
+	/** A single read replica. */
+	public static final class Replica
+	{
+		private final String name;
+		private final String url;
+		private final Properties properties;
+		private final Map<String, Connection> connections = new ConcurrentHashMap<>();
+		/** Returned by readLag for servers that do not replicate from any source. */
+		private static final long NOT_REPLICATING = -2;
+		
+		private final AtomicInteger outstanding = new AtomicInteger();
+		private volatile boolean healthy;
+		private volatile long lag = -1;
+		private Connection probe;
+		
+		private Replica(String hostname, int port, Properties properties)
+		{
+			this.name = hostname + ":" + port;
+			this.url = "jdbc:mysql://" + hostname + ":" + port + "/";
+			this.properties = properties;
+		}
+		
+		/** @return the address, as host:port. */
+		public String getName()
+		{
+			return name;
+		}
+		
+		/** @return true if the replica receives reads. */
+		public boolean isHealthy()
+		{
+			return healthy;
+		}
+		
+		/** @return the amount of reads in progress. */
+		public int getOutstanding()
+		{
+			return outstanding.get();
+		}
+		
+		/** @return the seconds the replica lagged behind at its last check, -1 if unknown. */
+		public long getLag()
+		{
+			return lag;
+		}
+		
+		/** One connection per database is kept. The driver runs the statements of a connection one after another. */
+		private Connection getConnection(String database) throws SQLException
+		{
+			Connection connection = connections.get(database);
+			if (connection != null && !connection.isClosed())
+				return connection;
+			synchronized (this)
+			{
+				connection = connections.get(database);
+				if (connection == null || connection.isClosed())
+				{
+					connection = DriverManager.getConnection(url + database, properties);
+					connections.put(database, connection);
+				}
+				return connection;
+			}
+		}
+		
+		private void check(long maxLag, boolean allowNonReplicating)
+		{
+			try
+			{
+				if (probe == null || !probe.isValid(2))
+				{
+					close(probe);
+					probe = DriverManager.getConnection(url, properties);
+				}
+				lag = readLag(probe);
+				if (lag == NOT_REPLICATING)
+				{
+					if (!allowNonReplicating)
+					{
+						lag = -1;
+						evict("it does not replicate from any source");
+						return;
+					}
+					lag = 0;
+				}
+				else if (lag < 0)
+				{
+					evict("its replication is stopped");
+					return;
+				}
+				if (lag > maxLag)
+				{
+					evict("it lags behind by " + lag + " seconds");
+					return;
+				}
+				if (!healthy)
+					Faucet.plugin.getLogger().info("MySQL replica " + name + " is healthy, sending reads to it.");
+				healthy = true;
+			}
+			catch (SQLException e)
+			{
+				close(probe);
+				probe = null;
+				evict("it can not be reached (" + e.getMessage() + ")");
+			}
+		}
+		
+		/** @return the seconds the server lags behind its source, -1 if its replication is stopped and {@link #NOT_REPLICATING} if it does
+		 *         not replicate from any source. */
+		private static long readLag(Connection connection) throws SQLException
+		{
+			try (Statement statement = connection.createStatement())
+			{
+				String column = "Seconds_Behind_Source";
+				ResultSet status;
+				try
+				{
+					status = statement.executeQuery("SHOW REPLICA STATUS");
+				}
+				catch (SQLException e)
+				{
+					// servers older than MySQL 8.0.22 only know the old names
+					status = statement.executeQuery("SHOW SLAVE STATUS");
+					column = "Seconds_Behind_Master";
+				}
+				try (ResultSet results = status)
+				{
+					if (!results.next())
+						return NOT_REPLICATING;
+					long lag = results.getLong(column);
+					return results.wasNull() ? -1 : lag;
+				}
+			}
+		}
+		
+		/** Stops sending reads to the replica until a health check passes again. Its connections are closed once no read is in progress on
+		 * them anymore, either right away or when the last lease gets closed. */
+		private void evict(String reason)
+		{
+			if (healthy)
+				Faucet.plugin.getLogger().warning("MySQL replica " + name + " receives no more reads, as " + reason + ".");
+			else
+				Faucet.plugin.getLogger().log(Level.FINE, "MySQL replica " + name + " is still unhealthy, as " + reason + ".");
+			healthy = false;
+			if (outstanding.get() == 0)
+				closeConnections();
+		}
+		
+		private synchronized void closeConnections()
+		{
+			// a health check may have passed since the last read ended
+			if (healthy)
+				return;
+			for (Connection connection : connections.values())
+				close(connection);
+			connections.clear();
+		}
+		
+		private void closeAll()
+		{
+			healthy = false;
+			close(probe);
+			probe = null;
+			closeConnections();
+		}
+		
+		private static void close(Connection connection)
+		{
+			if (connection == null)
+				return;
+			try
+			{
+				connection.close();
+			}
+			catch (SQLException e)
+			{}
+		}
+	}
+}
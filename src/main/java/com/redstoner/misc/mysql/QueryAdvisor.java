@@ -0,0 +1,175 @@
+package com.redstoner.misc.mysql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import com.redstoner.faucet.Faucet;
+import com.redstoner.misc.mysql.elements.MysqlDatabase;
+
+/** Warns about statements of @MysqlTable that scan a whole large table, which usually means an index is missing.</br>
+ * When enabled, the first execution of every statement shape gets explained on a background thread, with the same parameters. If MySQL
+ * plans to read every row of a table with at least {@link #getRowThreshold()} rows, a warning names the table, the shape and the module that
+ * issued it. Disabled by default, as every explain is an extra query.</br>
+ * The explains run on connections of their own, one per database, so they never share a connection with the statement being checked. */
+public final class QueryAdvisor
+{
+	/** The default amount of rows a table needs for full scans of it to be reported. */
+	public static final long DEFAULT_ROW_THRESHOLD = 10000;
+	/** The most shapes remembered. Once reached, new shapes are no longer explained. */
+	private static final int MAX_SHAPES = 10000;
+	
+	private static final Set<String> explained = ConcurrentHashMap.newKeySet();
+	private static volatile boolean enabled;
+	private static volatile long rowThreshold = DEFAULT_ROW_THRESHOLD;
+	private static ThreadPoolExecutor executor;
+	/** The connections to explain on by database name. Only used on the thread of the executor. */
+	private static final Map<String, Connection> connections = new HashMap<>();
+	
+	private QueryAdvisor()
+	{}
+	
+	public static synchronized void setEnabled(boolean enable)
+	{
+		if (enable && executor == null)
+		{
+			// explains are best effort, so they are dropped instead of piling up
+			executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(256), runnable ->
+			{
+				Thread thread = new Thread(runnable, "Faucet Query Advisor");
+				thread.setDaemon(true);
+				return thread;
+			}, new ThreadPoolExecutor.DiscardPolicy());
+		}
+		enabled = enable;
+	}
+	
+	public static boolean isEnabled()
+	{
+		return enabled;
+	}
+	
+	/** @param rows the amount of rows a table needs for full scans of it to be reported. */
+	public static void setRowThreshold(long rows)
+	{
+		rowThreshold = rows;
+	}
+	
+	public static long getRowThreshold()
+	{
+		return rowThreshold;
+	}
+	
+	/** Stops explaining statements. To be called when Faucet gets disabled. */
+	public static synchronized void shutdown()
+	{
+		enabled = false;
+		if (executor != null)
+		{
+			executor.shutdownNow();
+			try
+			{
+				executor.awaitTermination(1, TimeUnit.SECONDS);
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+			executor = null;
+		}
+		for (Connection connection : connections.values())
+			close(connection);
+		connections.clear();
+		explained.clear();
+	}
+	
+	/** Explains the statement in the background if it is the first of its shape. Called by @MysqlTable and @MysqlQuery before executing.
+	 *
+	 * @param database the database the statement is executed on.
+	 * @param sql a SELECT, UPDATE or DELETE statement.
+	 * @param parameters the values to bind. */
+	public static void check(MysqlDatabase database, String sql, Object... parameters)
+	{
+		if (!enabled || explained.size() >= MAX_SHAPES)
+			return;
+		String shape = QueryMonitor.getShape(sql);
+		if (!explained.add(shape))
+			return;
+		String name = database.getName();
+		String module = database.getModule();
+		ThreadPoolExecutor executor = QueryAdvisor.executor;
+		if (executor != null && name != null)
+			executor.execute(() -> explain(name, sql, parameters, shape, module));
+	}
+	
+	/** @return the connection to explain statements on the database with, opened on first use. */
+	private static Connection getConnection(String database) throws SQLException
+	{
+		Connection connection = connections.get(database);
+		if (connection != null && connection.isValid(1))
+			return connection;
+		close(connection);
+		connections.remove(database);
+		connection = MysqlHandler.get().getDatabase(database).getConnection();
+		connections.put(database, connection);
+		return connection;
+	}
+	
+	private static void explain(String database, String sql, Object[] parameters, String shape, String module)
+	{
+		Connection connection;
+		try
+		{
+			connection = getConnection(database);
+		}
+		catch (SQLException | IllegalStateException e)
+		{
+			Faucet.plugin.getLogger().log(Level.FINE, "Could not connect to explain " + shape, e);
+			return;
+		}
+		try (PreparedStatement statement = connection.prepareStatement("EXPLAIN " + sql))
+		{
+			for (int i = 0; i < parameters.length; i++)
+				statement.setObject(i + 1, parameters[i]);
+			try (ResultSet plan = statement.executeQuery())
+			{
+				while (plan.next())
+				{
+					long rows = plan.getLong("rows");
+					if ("ALL".equals(plan.getString("type")) && rows >= rowThreshold)
+					{
+						String possibleKeys = plan.getString("possible_keys");
+						Faucet.plugin.getLogger().warning("Full scan of `" + plan.getString("table") + "` (about " + rows + " rows) by " + module
+								+ ": " + shape + (possibleKeys == null ? ". No index can be used, consider adding one on the filtered columns."
+										: ". MySQL chose not to use " + possibleKeys + "."));
+					}
+				}
+			}
+		}
+		catch (SQLException e)
+		{
+			Faucet.plugin.getLogger().log(Level.FINE, "Could not explain " + shape, e);
+		}
+	}
+	
+	private static void close(Connection connection)
+	{
+		if (connection == null)
+			return;
+		try
+		{
+			connection.close();
+		}
+		catch (SQLException e)
+		{}
+	}
+}
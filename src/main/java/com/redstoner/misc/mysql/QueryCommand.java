@@ -0,0 +1,106 @@
+package com.redstoner.misc.mysql;
+
+import java.util.List;
+
+import org.bukkit.command.CommandSender;
+
+import com.nemez.cmdmgr.Command;
+
+/** The /queries command, showing the statistics of the @QueryMonitor. */
+public final class QueryCommand
+{
+	/** The amount of shapes listed. */
+	private static final int LIMIT = 10;
+	public static final String COMMAND = String.join("\n",
+			"command queries {",
+			"	perm faucet.queries;",
+			"	[empty] {",
+			"		help Shows the queries that took the most time in total.;",
+			"		run queries_show;",
+			"	}",
+			"	modules {",
+			"		help Shows the time each module spent on queries.;",
+			"		run queries_modules;",
+			"	}",
+			"	slow [int:millis] {",
+			"		help Sets the time after which queries get logged as slow, 0 to log none.;",
+			"		run queries_slow millis;",
+			"	}",
+			"	advisor on {",
+			"		help Warns about statements scanning whole large tables.;",
+			"		run queries_advisor_on;",
+			"	}",
+			"	advisor off {",
+			"		help Stops checking statements for full table scans.;",
+			"		run queries_advisor_off;",
+			"	}",
+			"	reset {",
+			"		help Forgets all statistics.;",
+			"		run queries_reset;",
+			"	}",
+			"}");
+	
+	@Command(hook = "queries_show")
+	public boolean show(CommandSender sender)
+	{
+		List<QueryStatistics> statistics = QueryMonitor.getStatistics();
+		if (statistics.isEmpty())
+			sender.sendMessage("§7No queries executed yet.");
+		for (QueryStatistics query : statistics.subList(0, Math.min(LIMIT, statistics.size())))
+			send(sender, query);
+		return true;
+	}
+	
+	@Command(hook = "queries_modules")
+	public boolean modules(CommandSender sender)
+	{
+		List<QueryStatistics> statistics = QueryMonitor.getModuleStatistics();
+		if (statistics.isEmpty())
+			sender.sendMessage("§7No queries executed yet.");
+		for (QueryStatistics module : statistics)
+			send(sender, module);
+		return true;
+	}
+	
+	@Command(hook = "queries_slow")
+	public boolean slow(CommandSender sender, int millis)
+	{
+		QueryMonitor.setSlowQueryThreshold(millis);
+		sender.sendMessage(millis <= 0 ? "§7Slow queries are no longer logged." : "§7Queries taking " + millis + "ms or longer are logged.");
+		return true;
+	}
+	
+	@Command(hook = "queries_advisor_on")
+	public boolean advisorOn(CommandSender sender)
+	{
+		QueryAdvisor.setEnabled(true);
+		sender.sendMessage("§7Statements scanning tables with " + QueryAdvisor.getRowThreshold() + " or more rows will be reported.");
+		return true;
+	}
+	
+	@Command(hook = "queries_advisor_off")
+	public boolean advisorOff(CommandSender sender)
+	{
+		QueryAdvisor.setEnabled(false);
+		sender.sendMessage("§7Stopped checking statements for full table scans.");
+		return true;
+	}
+	
+	@Command(hook = "queries_reset")
+	public boolean reset(CommandSender sender)
+	{
+		QueryMonitor.reset();
+		sender.sendMessage("§7Reset the query statistics.");
+		return true;
+	}
+	
+	private static void send(CommandSender sender, QueryStatistics query)
+	{
+		sender.sendMessage(String.format("§e%s§7: §f%d §7queries, §f%.1fs §7total, p50 §f%.2fms§7, p99 §f%.2fms§7, §f%d§7/§f%d §7rows read/written%s",
+				query.getModule(), query.getCount(), query.getTotalMicros() / 1e6, query.getMedianMicros() / 1000.0,
+				query.getP99Micros() / 1000.0, query.getRowsRead(), query.getRowsWritten(),
+				query.getErrors() == 0 ? "" : ", §c" + query.getErrors() + " errors"));
+		if (query.getShape() != null)
+			sender.sendMessage("§8  " + query.getShape());
+	}
+}
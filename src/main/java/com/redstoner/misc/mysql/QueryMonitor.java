@@ -0,0 +1,346 @@
+package com.redstoner.misc.mysql;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.regex.Pattern;
+
+import com.redstoner.faucet.Faucet;
+import com.redstoner.misc.LatencyHistogram;
+import com.redstoner.misc.MetricWriter;
+import com.redstoner.misc.Utils;
+import com.redstoner.misc.mysql.elements.MysqlDatabase;
+import com.redstoner.modules.ModuleLogger;
+
+/** Times every query executed through the MySQL layer.</br>
+ * Queries are grouped by their shape, the statement with all literals replaced by ? and lists of values collapsed, and by the module that
+ * issued them. Each group has a @LatencyHistogram and counts the rows read and written. Queries slower than the threshold are written to
+ * the SlowQueries log, showing only their shape and the types of their parameters, so no player data ends up in the log.</br>
+ * Statements on a @MysqlDatabase are attributed to the module that opened it, which is looked up once when the database is opened.
+ * Code executing statements itself wraps them with {@link #start(MysqlDatabase, String, Object...)}, or with
+ * {@link #start(String, Object...)}, which looks up the calling module on every call. */
+public final class QueryMonitor
+{
+	/** The default time in milliseconds after which a query gets logged as slow. */
+	public static final long DEFAULT_SLOW_THRESHOLD = 200;
+	/** Shown instead of a module name for queries Faucet issues on its own. */
+	public static final String NO_MODULE = "(faucet)";
+	private static final int MAX_CACHED_SHAPES = 4096;
+	private static final Pattern VALUE_LIST = Pattern.compile("\\(\\s*\\?(?:\\s*,\\s*\\?)+\\s*\\)");
+	private static final Pattern ROW_LIST = Pattern.compile("\\(\\?\\+\\)(?:\\s*,\\s*\\(\\?\\+\\))+");
+	
+	private static final Map<String, Entry> entries = new ConcurrentHashMap<>();
+	/** Shapes of statements without literals, which are executed again and again. Bounded, as statements with literals never repeat. */
+	private static final Map<String, String> shapes = new ConcurrentHashMap<>();
+	private static volatile long slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_SLOW_THRESHOLD);
+	private static ModuleLogger slowLog;
+	
+	private QueryMonitor()
+	{}
+	
+	/** Starts timing a statement. Must be called on the thread that executes it.
+	 *
+	 * @param sql the statement.
+	 * @param parameters the bound parameters, only their types are ever logged.
+	 * @return the execution, to be completed with {@link Execution#finish(long)} or {@link Execution#fail(SQLException)}. */
+	public static Execution start(String sql, Object... parameters)
+	{
+		String module = Utils.getCallingModule();
+		return new Execution(module == null ? NO_MODULE : module, sql, parameters);
+	}
+	
+	/** Starts timing a statement on a database, attributed to the module that opened it.
+	 *
+	 * @param database the database the statement is executed on.
+	 * @param sql the statement.
+	 * @param parameters the bound parameters, only their types are ever logged.
+	 * @return the execution, to be completed with {@link Execution#finish(long)} or {@link Execution#fail(SQLException)}. */
+	public static Execution start(MysqlDatabase database, String sql, Object... parameters)
+	{
+		return new Execution(database.getModule(), sql, parameters);
+	}
+	
+	/** @param millis the time after which a query gets logged as slow, 0 to log none. */
+	public static void setSlowQueryThreshold(long millis)
+	{
+		slowThresholdNanos = millis <= 0 ? Long.MAX_VALUE : TimeUnit.MILLISECONDS.toNanos(millis);
+	}
+	
+	/** @return the time in milliseconds after which a query gets logged as slow, 0 if none are logged. */
+	public static long getSlowQueryThreshold()
+	{
+		long threshold = slowThresholdNanos;
+		return threshold == Long.MAX_VALUE ? 0 : TimeUnit.NANOSECONDS.toMillis(threshold);
+	}
+	
+	/** @return the statistics of every shape and module, with the longest total time first. */
+	public static List<QueryStatistics> getStatistics()
+	{
+		List<QueryStatistics> statistics = new ArrayList<>();
+		for (Entry entry : entries.values())
+			statistics.add(entry.snapshot());
+		statistics.sort(Comparator.comparingLong(QueryStatistics::getTotalMicros).reversed());
+		return statistics;
+	}
+	
+	/** @return the statistics of every module over all of its shapes, with the longest total time first. The shape is null. */
+	public static List<QueryStatistics> getModuleStatistics()
+	{
+		Map<String, Entry> modules = new LinkedHashMap<>();
+		for (Entry entry : entries.values())
+			modules.computeIfAbsent(entry.module, module -> new Entry(null, module)).add(entry);
+		List<QueryStatistics> statistics = new ArrayList<>();
+		for (Entry entry : modules.values())
+			statistics.add(entry.snapshot());
+		statistics.sort(Comparator.comparingLong(QueryStatistics::getTotalMicros).reversed());
+		return statistics;
+	}
+	
+	/** Forgets all statistics. */
+	public static void reset()
+	{
+		entries.clear();
+	}
+	
+	/** Writes the counters of every shape and module. Registered with @Metrics by Faucet. */
+	public static void collect(MetricWriter writer)
+	{
+		List<QueryStatistics> statistics = getStatistics();
+		for (QueryStatistics query : statistics)
+			writer.counter("query_seconds_total", "Time spent executing queries.", query.getTotalMicros() / 1e6, "module", query.getModule(),
+					"shape", query.getShape());
+		for (QueryStatistics query : statistics)
+			writer.counter("queries_total", "Executed queries.", query.getCount(), "module", query.getModule(), "shape", query.getShape());
+		for (QueryStatistics query : statistics)
+			writer.counter("query_errors_total", "Queries that failed.", query.getErrors(), "module", query.getModule(), "shape",
+					query.getShape());
+		for (QueryStatistics query : statistics)
+			writer.counter("query_rows_read_total", "Rows read from results.", query.getRowsRead(), "module", query.getModule(), "shape",
+					query.getShape());
+		for (QueryStatistics query : statistics)
+			writer.counter("query_rows_written_total", "Rows changed by statements.", query.getRowsWritten(), "module", query.getModule(),
+					"shape", query.getShape());
+		for (QueryStatistics query : statistics)
+		{
+			writer.gauge("query_latency_seconds", "Latency percentiles since the last reset.", query.getMedianMicros() / 1e6, "module",
+					query.getModule(), "shape", query.getShape(), "quantile", "0.5");
+			writer.gauge("query_latency_seconds", null, query.getP99Micros() / 1e6, "module", query.getModule(), "shape",
+					query.getShape(), "quantile", "0.99");
+		}
+	}
+	
+	/** Replaces all literals of the statement with ?, collapses whitespace and lists of values.
+	 *
+	 * @param sql the statement.
+	 * @return the shape of the statement, which contains no values anymore. */
+	public static String getShape(String sql)
+	{
+		String shape = shapes.get(sql);
+		if (shape != null)
+			return shape;
+		boolean literals = false;
+		StringBuilder builder = new StringBuilder(sql.length());
+		boolean space = false;
+		for (int i = 0; i < sql.length(); i++)
+		{
+			char c = sql.charAt(i);
+			if (Character.isWhitespace(c))
+			{
+				space = builder.length() > 0;
+				continue;
+			}
+			if (space)
+			{
+				builder.append(' ');
+				space = false;
+			}
+			if (c == '\'' || c == '"')
+			{
+				i = skipQuoted(sql, i);
+				builder.append('?');
+				literals = true;
+			}
+			else if (c == '`')
+			{
+				int end = sql.indexOf('`', i + 1);
+				end = end < 0 ? sql.length() - 1 : end;
+				builder.append(sql, i, end + 1);
+				i = end;
+			}
+			else if (Character.isDigit(c) && (i == 0 || !isIdentifierPart(sql.charAt(i - 1))))
+			{
+				while (i + 1 < sql.length() && (isIdentifierPart(sql.charAt(i + 1)) || sql.charAt(i + 1) == '.'))
+					i++;
+				builder.append('?');
+				literals = true;
+			}
+			else
+				builder.append(c);
+		}
+		while (builder.length() > 0 && builder.charAt(builder.length() - 1) == ';')
+			builder.setLength(builder.length() - 1);
+		shape = ROW_LIST.matcher(VALUE_LIST.matcher(builder).replaceAll("(?+)")).replaceAll("(?+), ...");
+		if (!literals && shapes.size() < MAX_CACHED_SHAPES)
+			shapes.put(sql, shape);
+		return shape;
+	}
+	
+	private static int skipQuoted(String sql, int start)
+	{
+		char quote = sql.charAt(start);
+		for (int i = start + 1; i < sql.length(); i++)
+		{
+			char c = sql.charAt(i);
+			if (c == '\\')
+				i++;
+			else if (c == quote)
+			{
+				if (i + 1 < sql.length() && sql.charAt(i + 1) == quote)
+					i++;
+				else
+					return i;
+			}
+		}
+		return sql.length() - 1;
+	}
+	
+	private static boolean isIdentifierPart(char c)
+	{
+		return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+	}
+	
+	private static Entry getEntry(String shape, String module)
+	{
+		return entries.computeIfAbsent(shape + '\0' + module, key -> new Entry(shape, module));
+	}
+	
+	private static synchronized ModuleLogger getSlowLog()
+	{
+		if (slowLog == null)
+		{
+			slowLog = new ModuleLogger("SlowQueries");
+			slowLog.enableLogFile();
+		}
+		return slowLog;
+	}
+	
+	private static String describe(Object[] parameters)
+	{
+		StringBuilder builder = new StringBuilder("[");
+		for (int i = 0; i < parameters.length; i++)
+		{
+			if (i > 0)
+				builder.append(", ");
+			Object parameter = parameters[i];
+			if (parameter == null)
+				builder.append("null");
+			else if (parameter instanceof CharSequence)
+				builder.append("String(").append(((CharSequence) parameter).length()).append(')');
+			else if (parameter instanceof byte[])
+				builder.append("byte[").append(((byte[]) parameter).length).append(']');
+			else
+				builder.append(parameter.getClass().getSimpleName());
+		}
+		return builder.append(']').toString();
+	}
+	
+	/** A statement being executed. */
+	public static final class Execution
+	{
+		private final String sql;
+		private final Object[] parameters;
+		private final String module;
+		private final long start;
+		private Entry entry;
+		private boolean finished;
+		
+		private Execution(String module, String sql, Object[] parameters)
+		{
+			this.sql = sql;
+			this.parameters = parameters;
+			this.module = module;
+			this.start = System.nanoTime();
+		}
+		
+		/** Records the statement as successful.
+		 *
+		 * @param rowsWritten the update count of the statement, negative for queries. */
+		public void finish(long rowsWritten)
+		{
+			long duration = System.nanoTime() - start;
+			finished = true;
+			Entry entry = getEntry();
+			entry.histogram.record(duration);
+			if (rowsWritten > 0)
+				entry.rowsWritten.add(rowsWritten);
+			if (duration >= slowThresholdNanos)
+				getSlowLog().warn(TimeUnit.NANOSECONDS.toMillis(duration) + "ms by " + module + ": " + entry.shape
+						+ (parameters.length == 0 ? "" : " " + describe(parameters)));
+		}
+		
+		/** Records the statement as failed and logs the failure. Also counts failures while reading results after {@link #finish(long)}. */
+		public void fail(SQLException e)
+		{
+			Entry entry = getEntry();
+			if (!finished)
+				entry.histogram.record(System.nanoTime() - start);
+			entry.errors.increment();
+			Faucet.plugin.getLogger().log(Level.SEVERE, "Query of " + module + " failed: " + entry.shape, e);
+		}
+		
+		/** Counts rows read from the results of the query. Called by the code reading them once it is done, e.g. @MysqlTable and @MysqlQuery.
+		 *
+		 * @param rows the amount of rows read. */
+		public void read(long rows)
+		{
+			if (rows > 0)
+				getEntry().rowsRead.add(rows);
+		}
+		
+		private Entry getEntry()
+		{
+			if (entry == null)
+				entry = QueryMonitor.getEntry(getShape(sql), module);
+			return entry;
+		}
+	}
+	
+	/** The counters of one shape issued by one module. */
+	private static final class Entry
+	{
+		private final String shape;
+		private final String module;
+		private final LatencyHistogram histogram = new LatencyHistogram();
+		private final LongAdder rowsRead = new LongAdder();
+		private final LongAdder rowsWritten = new LongAdder();
+		private final LongAdder errors = new LongAdder();
+		
+		private Entry(String shape, String module)
+		{
+			this.shape = shape;
+			this.module = module;
+		}
+		
+		private void add(Entry other)
+		{
+			histogram.add(other.histogram);
+			rowsRead.add(other.rowsRead.sum());
+			rowsWritten.add(other.rowsWritten.sum());
+			errors.add(other.errors.sum());
+		}
+		
+		private QueryStatistics snapshot()
+		{
+			return new QueryStatistics(shape, module, histogram.getCount(), errors.sum(), rowsRead.sum(), rowsWritten.sum(),
+					histogram.getTotalMicros(), histogram.getMaxMicros(), histogram.getPercentileMicros(50), histogram.getPercentileMicros(95),
+					histogram.getPercentileMicros(99));
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package com.redstoner.misc.mysql;
+
+/** An immutable snapshot of the counters the @QueryMonitor keeps for one statement shape issued by one module. */
+public final class QueryStatistics
+{
+	private final String shape;
+	private final String module;
+	private final long count;
+	private final long errors;
+	private final long rowsRead;
+	private final long rowsWritten;
+	private final long totalMicros;
+	private final long maxMicros;
+	private final long medianMicros;
+	private final long p95Micros;
+	private final long p99Micros;
+	
+	QueryStatistics(String shape, String module, long count, long errors, long rowsRead, long rowsWritten, long totalMicros, long maxMicros,
+			long medianMicros, long p95Micros, long p99Micros)
+	{
+		this.shape = shape;
+		this.module = module;
+		this.count = count;
+		this.errors = errors;
+		this.rowsRead = rowsRead;
+		this.rowsWritten = rowsWritten;
+		this.totalMicros = totalMicros;
+		this.maxMicros = maxMicros;
+		this.medianMicros = medianMicros;
+		this.p95Micros = p95Micros;
+		this.p99Micros = p99Micros;
+	}
+	
+	/** @return the statement with all values replaced by ?, or null for the totals of a module. */
+	public String getShape()
+	{
+		return shape;
+	}
+	
+	/** @return the name of the module that issued the queries, {@link QueryMonitor#NO_MODULE} for Faucet itself. */
+	public String getModule()
+	{
+		return module;
+	}
+	
+	/** @return how often the statement was executed, including failures. */
+	public long getCount()
+	{
+		return count;
+	}
+	
+	public long getErrors()
+	{
+		return errors;
+	}
+	
+	/** @return the rows read from the results, only counted for results that were read completely or partially. */
+	public long getRowsRead()
+	{
+		return rowsRead;
+	}
+	
+	/** @return the rows inserted, updated or deleted. */
+	public long getRowsWritten()
+	{
+		return rowsWritten;
+	}
+	
+	public long getTotalMicros()
+	{
+		return totalMicros;
+	}
+	
+	public long getMaxMicros()
+	{
+		return maxMicros;
+	}
+	
+	public long getMedianMicros()
+	{
+		return medianMicros;
+	}
+	
+	public long getP95Micros()
+	{
+		return p95Micros;
+	}
+	
+	public long getP99Micros()
+	{
+		return p99Micros;
+	}
+	
+	public double getMeanMicros()
+	{
+		return count == 0 ? 0 : (double) totalMicros / count;
+	}
+	
+	@Override
+	public String toString()
+	{
+		return module + (shape == null ? "" : " " + shape) + ": " + count + " queries, p50 " + medianMicros / 1000.0 + "ms, p99 "
+				+ p99Micros / 1000.0 + "ms, max " + maxMicros / 1000.0 + "ms, " + rowsRead + " rows read, " + rowsWritten + " written, "
+				+ errors + " errors";
+	}
+}
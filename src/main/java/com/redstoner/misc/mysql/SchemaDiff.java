@@ -0,0 +1,71 @@
+package com.redstoner.misc.mysql;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.redstoner.misc.mysql.elements.MysqlSchema;
+
+/** The changes needed to bring a table in line with its @MysqlSchema, as computed by {@link SchemaMigrator#diff}. */
+public final class SchemaDiff
+{
+	private final MysqlSchema schema;
+	private final boolean missing;
+	private final List<String> clauses;
+	private final List<String> unknownColumns;
+	private final boolean invertedNullability;
+	
+	SchemaDiff(MysqlSchema schema, boolean missing, List<String> clauses, List<String> unknownColumns, boolean invertedNullability)
+	{
+		this.schema = schema;
+		this.missing = missing;
+		this.clauses = Collections.unmodifiableList(clauses);
+		this.unknownColumns = Collections.unmodifiableList(unknownColumns);
+		this.invertedNullability = invertedNullability;
+	}
+	
+	public MysqlSchema getSchema()
+	{
+		return schema;
+	}
+	
+	/** @return true if the table does not exist yet and has to be created. */
+	public boolean isMissing()
+	{
+		return missing;
+	}
+	
+	/** @return true if the table already matches its schema. */
+	public boolean isEmpty()
+	{
+		return !missing && clauses.isEmpty();
+	}
+	
+	/** @return the clauses of the ALTER TABLE statement, e.g. ADD COLUMN `name` VARCHAR(16) NOT NULL. */
+	public List<String> getClauses()
+	{
+		return clauses;
+	}
+	
+	/** @return the columns of the table that the schema does not declare. They are kept, as dropping them would lose data. */
+	public List<String> getUnknownColumns()
+	{
+		return unknownColumns;
+	}
+	
+	/** @return true if every column has the opposite nullability of its declaration, as in tables created by older versions of Faucet. The
+	 *         nullability of such tables is not changed unless {@link SchemaMigrator#setRepairNullability(boolean)} is enabled. */
+	public boolean hasInvertedNullability()
+	{
+		return invertedNullability;
+	}
+	
+	@Override
+	public String toString()
+	{
+		if (missing)
+			return "CREATE TABLE `" + schema.getTable() + "`";
+		if (clauses.isEmpty())
+			return "`" + schema.getTable() + "` is up to date";
+		return "ALTER TABLE `" + schema.getTable() + "` " + String.join(", ", clauses);
+	}
+}
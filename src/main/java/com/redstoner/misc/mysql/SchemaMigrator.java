@@ -0,0 +1,539 @@
+package com.redstoner.misc.mysql;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+
+import com.redstoner.faucet.Faucet;
+import com.redstoner.misc.mysql.elements.MysqlDatabase;
+import com.redstoner.misc.mysql.elements.MysqlField;
+import com.redstoner.misc.mysql.elements.MysqlIndex;
+import com.redstoner.misc.mysql.elements.MysqlSchema;
+import com.redstoner.misc.mysql.elements.MysqlTable;
+import com.redstoner.misc.mysql.types.MysqlType;
+import com.redstoner.misc.mysql.types.text.Char;
+import com.redstoner.misc.mysql.types.text.VarChar;
+import com.redstoner.modules.Module;
+import com.redstoner.scheduler.ModuleScheduler;
+
+/** Brings tables in line with the @MysqlSchema declared by their module, usually from {@link Module#migrate}.</br>
+ * The actual columns and keys are compared with the declared ones and only the missing or changed ones are altered, in a single statement.
+ * Columns and keys the schema does not declare are kept. Small tables are altered right away. Tables with at least
+ * {@link #getOnlineThreshold()} rows are altered in the background on the scheduler of the module, so loading the module does not wait
+ * for them: first as an online ALTER that keeps the table writable, and if MySQL can not do the change that way, by copying the table in
+ * chunks to a new one that gets swapped in at the end. Triggers keep the copy up to date with writes made in the meantime. Background
+ * migrations run on a connection of their own. Changes whose old rows might not fit the new layout, e.g. a new NOT NULL column or a
+ * shorter type, are not copied, as a failing trigger would fail the writes to the table. Those tables get altered with a lock instead.</br>
+ * Faucet used to create every column with the opposite nullability of its @MysqlField. Tables where at least two declared columns outside
+ * the primary key exist and all of them have the opposite nullability are reported and their nullability is left alone, as fixing it
+ * modifies every column and fails for columns holding NULL. Call {@link #setRepairNullability(boolean)} to have it fixed. */
+public final class SchemaMigrator
+{
+	/** The default amount of rows from which tables are migrated in the background. */
+	public static final long DEFAULT_ONLINE_THRESHOLD = 50000;
+	/** The default amount of rows copied at once. */
+	public static final int DEFAULT_CHUNK_SIZE = 1000;
+	/** The time in milliseconds to wait between two chunks, so the copy leaves room for other queries. */
+	private static final long CHUNK_PAUSE = 20;
+	
+	private static final Set<String> running = ConcurrentHashMap.newKeySet();
+	private static volatile long onlineThreshold = DEFAULT_ONLINE_THRESHOLD;
+	private static volatile int chunkSize = DEFAULT_CHUNK_SIZE;
+	private static volatile boolean repairNullability;
+	
+	private SchemaMigrator()
+	{}
+	
+	/** @param rows the amount of rows from which tables are migrated in the background. */
+	public static void setOnlineThreshold(long rows)
+	{
+		onlineThreshold = rows;
+	}
+	
+	public static long getOnlineThreshold()
+	{
+		return onlineThreshold;
+	}
+	
+	/** @param rows the amount of rows copied at once when a table has to be rebuilt. */
+	public static void setChunkSize(int rows)
+	{
+		chunkSize = Math.max(1, rows);
+	}
+	
+	public static int getChunkSize()
+	{
+		return chunkSize;
+	}
+	
+	/** @param repair true to fix tables whose columns all have the opposite nullability, by modifying every column. Fails for tables holding
+	 *        NULL in a column that becomes NOT NULL. */
+	public static void setRepairNullability(boolean repair)
+	{
+		repairNullability = repair;
+	}
+	
+	public static boolean isRepairNullability()
+	{
+		return repairNullability;
+	}
+	
+	/** Compares a table with its schema. Column types are compared by kind, and by length for CHAR and VARCHAR. The display width of
+	 * integers and the values of ENUMs and SETs are not reported by MySQL and thus not compared.
+	 *
+	 * @return the changes to make, or null if the table could not be read. */
+	public static SchemaDiff diff(MysqlDatabase database, MysqlSchema schema)
+	{
+		MysqlTable table = database.getTable(schema.getTable());
+		MysqlField[] actual = table.describe();
+		if (actual == null)
+			return null;
+		if (actual.length == 0)
+			return new SchemaDiff(schema, true, new ArrayList<>(), new ArrayList<>(), false);
+		List<MysqlIndex> indexes = table.getIndexes();
+		if (indexes == null)
+			return null;
+		List<String> clauses = new ArrayList<>();
+		List<String> unknownColumns = new ArrayList<>();
+		boolean inverted = isInverted(schema, actual, indexes) && !repairNullability;
+		String previous = null;
+		for (MysqlField field : schema.getFields())
+		{
+			MysqlField existing = find(actual, field.getName());
+			if (existing == null)
+				clauses.add("ADD COLUMN " + MysqlSchema.getDefinition(field)
+						+ (previous == null ? " FIRST" : " AFTER " + quote(previous)));
+			else if (!matches(field, existing, !inverted))
+				// keep the nullability of inverted tables, only the type changes
+				clauses.add("MODIFY COLUMN " + MysqlSchema.getDefinition(inverted ? new MysqlField(field.getName(), field.getType(),
+						existing.canBeNull()) : field));
+			previous = field.getName();
+		}
+		for (MysqlField field : actual)
+			if (schema.getField(field.getName()) == null)
+				unknownColumns.add(field.getName());
+		for (MysqlIndex index : schema.getIndexes())
+		{
+			MysqlIndex named = null;
+			boolean covered = false;
+			for (MysqlIndex existing : indexes)
+			{
+				if (existing.getName().equalsIgnoreCase(index.getName()))
+					named = existing;
+				else if (existing.covers(index) && index.getKind() != MysqlIndex.Kind.PRIMARY)
+					covered = true;
+			}
+			if (named != null && named.getKind() == index.getKind() && named.getColumns().equals(index.getColumns()))
+				continue;
+			if (named == null && covered)
+				continue;
+			if (named != null)
+				clauses.add(named.getKind() == MysqlIndex.Kind.PRIMARY ? "DROP PRIMARY KEY" : "DROP INDEX " + quote(named.getName()));
+			clauses.add("ADD " + index.getDefinition());
+		}
+		return new SchemaDiff(schema, false, clauses, unknownColumns, inverted);
+	}
+	
+	/** Migrates the tables of a module. Missing tables are created and small ones altered before this returns, large ones are altered in the
+	 * background and keep serving their old layout until then.
+	 *
+	 * @param module the module owning the tables, whose scheduler runs the background migrations.
+	 * @param schemas the desired layout of each table.
+	 * @return a future completing with true once every table matches its schema, or with false if any migration failed. */
+	public static CompletableFuture<Boolean> migrate(Module module, MysqlDatabase database, MysqlSchema... schemas)
+	{
+		List<CompletableFuture<Boolean>> migrations = new ArrayList<>();
+		for (MysqlSchema schema : schemas)
+		{
+			SchemaDiff diff = diff(database, schema);
+			if (diff == null)
+			{
+				Faucet.plugin.getLogger().severe("Could not read the layout of `" + schema.getTable() + "`, it was not migrated.");
+				migrations.add(CompletableFuture.completedFuture(false));
+				continue;
+			}
+			if (diff.hasInvertedNullability())
+				Faucet.plugin.getLogger().warning("`" + schema.getTable() + "` has the opposite nullability in every column, as tables created by "
+						+ "older versions of Faucet do. It is left alone, call SchemaMigrator.setRepairNullability(true) to fix it.");
+			if (diff.isEmpty())
+				continue;
+			if (!diff.getUnknownColumns().isEmpty())
+				Faucet.plugin.getLogger().info("`" + schema.getTable() + "` has undeclared columns " + diff.getUnknownColumns() + ", keeping them.");
+			if (diff.isMissing())
+			{
+				migrations.add(CompletableFuture.completedFuture(database.createTableIfNotExists(schema.getTable(),
+						schema.getFields().toArray(new MysqlField[0]), schema.getIndexes().toArray(new MysqlIndex[0]))));
+				continue;
+			}
+			String key = database.getName() + "." + schema.getTable();
+			if (!running.add(key))
+			{
+				Faucet.plugin.getLogger().warning("`" + schema.getTable() + "` is already being migrated.");
+				migrations.add(CompletableFuture.completedFuture(false));
+				continue;
+			}
+			long rows = estimateRows(database, schema.getTable());
+			if (rows < onlineThreshold)
+			{
+				try
+				{
+					migrations.add(CompletableFuture.completedFuture(alter(database.getConnection(), diff)));
+				}
+				finally
+				{
+					running.remove(key);
+				}
+				continue;
+			}
+			Faucet.plugin.getLogger().info("Migrating `" + schema.getTable() + "` (about " + rows + " rows) in the background: " + diff);
+			CompletableFuture<Boolean> migration = ModuleScheduler.get(module).supplyAsync(() -> migrateOnline(database, diff));
+			migrations.add(migration.handle((result, error) ->
+			{
+				running.remove(key);
+				return error == null && result;
+			}));
+		}
+		return CompletableFuture.allOf(migrations.toArray(new CompletableFuture<?>[0]))
+				.thenApply(done -> migrations.stream().allMatch(migration -> Boolean.TRUE.equals(migration.join())));
+	}
+	
+	private static boolean migrateOnline(MysqlDatabase database, SchemaDiff diff)
+	{
+		MysqlDatabase own;
+		try
+		{
+			own = MysqlHandler.get().getDatabase(database.getName());
+		}
+		catch (IllegalStateException e)
+		{
+			Faucet.plugin.getLogger().log(Level.SEVERE, "Could not connect to migrate `" + diff.getSchema().getTable() + "`", e);
+			return false;
+		}
+		try
+		{
+			return migrateOnline(database, own, diff);
+		}
+		finally
+		{
+			try
+			{
+				own.getConnection().close();
+			}
+			catch (SQLException e)
+			{}
+		}
+	}
+	
+	/** @param database the database of the module, which the statements are attributed to.
+	 * @param own the same database on a connection of its own, to run the statements on. */
+	private static boolean migrateOnline(MysqlDatabase database, MysqlDatabase own, SchemaDiff diff)
+	{
+		String table = diff.getSchema().getTable();
+		Connection connection = own.getConnection();
+		String sql = getAlter(diff) + ", ALGORITHM=INPLACE, LOCK=NONE";
+		QueryMonitor.Execution execution = QueryMonitor.start(database, sql);
+		try (Statement statement = connection.createStatement())
+		{
+			statement.execute(sql);
+			execution.finish(0);
+			Faucet.plugin.getLogger().info("Migrated `" + table + "` online.");
+			return true;
+		}
+		catch (SQLException e)
+		{
+			// MySQL refuses changes it can not make without locking, e.g. changing the type of a column
+			Faucet.plugin.getLogger().info("`" + table + "` can not be altered online (" + e.getMessage() + "), copying it instead.");
+		}
+		List<MysqlIndex> indexes = own.getTable(table).getIndexes();
+		MysqlIndex primary = null;
+		if (indexes != null)
+			for (MysqlIndex index : indexes)
+				if (index.getKind() == MysqlIndex.Kind.PRIMARY)
+					primary = index;
+		if (primary == null)
+		{
+			Faucet.plugin.getLogger().warning("`" + table + "` has no primary key to copy it by, altering it with a lock instead.");
+			return alter(connection, diff);
+		}
+		return copyAndSwap(own, diff, primary);
+	}
+	
+	/** Creates an altered copy of the table, fills it in chunks of the primary key and swaps it with the original in one atomic rename.
+	 * Falls back to altering the table with a lock if the old rows might not fit into the copy. */
+	private static boolean copyAndSwap(MysqlDatabase database, SchemaDiff diff, MysqlIndex primary)
+	{
+		Connection connection = database.getConnection();
+		String table = diff.getSchema().getTable();
+		String shadow = "_" + table + "_new";
+		String old = "_" + table + "_old";
+		String[] triggers = {"_" + table + "_ins", "_" + table + "_upd", "_" + table + "_del"};
+		MysqlField[] fields = database.getTable(table).describe();
+		if (fields == null)
+			return false;
+		String problem = getCopyProblem(diff, fields);
+		if (problem != null)
+		{
+			Faucet.plugin.getLogger().warning("`" + table + "` can not be copied, as " + problem + ". Altering it with a lock instead.");
+			return alter(connection, diff);
+		}
+		StringBuilder columns = new StringBuilder();
+		StringBuilder values = new StringBuilder();
+		for (MysqlField field : fields)
+		{
+			columns.append(columns.length() == 0 ? "" : ", ").append(quote(field.getName()));
+			values.append(values.length() == 0 ? "NEW." : ", NEW.").append(quote(field.getName()));
+		}
+		StringBuilder oldKey = new StringBuilder();
+		for (String column : primary.getColumns())
+			oldKey.append(oldKey.length() == 0 ? "" : " AND ").append(quote(column)).append(" <=> OLD.").append(quote(column));
+		String replace = "REPLACE INTO " + quote(shadow) + " (" + columns + ") VALUES (" + values + ")";
+		String delete = "DELETE IGNORE FROM " + quote(shadow) + " WHERE " + oldKey;
+		boolean swapped = false;
+		try
+		{
+			dropCopy(connection, shadow, triggers);
+			if (!execute(connection, "CREATE TABLE " + quote(shadow) + " LIKE " + quote(table))
+					|| !execute(connection, "ALTER TABLE " + quote(shadow) + " " + String.join(", ", diff.getClauses())))
+				return false;
+			// a trigger that fails would fail the write to the table, so its statement is tried on the copy first
+			if (!validate(connection, table, shadow, columns.toString()))
+			{
+				dropCopy(connection, shadow, triggers);
+				return alter(connection, diff);
+			}
+			if (!execute(connection, "CREATE TRIGGER " + quote(triggers[0]) + " AFTER INSERT ON " + quote(table) + " FOR EACH ROW " + replace)
+					|| !execute(connection, "CREATE TRIGGER " + quote(triggers[1]) + " AFTER UPDATE ON " + quote(table) + " FOR EACH ROW BEGIN "
+							+ delete + "; " + replace + "; END")
+					|| !execute(connection, "CREATE TRIGGER " + quote(triggers[2]) + " AFTER DELETE ON " + quote(table) + " FOR EACH ROW " + delete))
+				return false;
+			long copied = copy(connection, table, shadow, columns.toString(), primary.getColumns().get(0));
+			if (copied < 0)
+				return false;
+			// both renames happen at once, so queries never see a missing table
+			if (!execute(connection, "RENAME TABLE " + quote(table) + " TO " + quote(old) + ", " + quote(shadow) + " TO " + quote(table)))
+				return false;
+			swapped = true;
+			execute(connection, "DROP TABLE " + quote(old));
+			Faucet.plugin.getLogger().info("Migrated `" + table + "` by copying " + copied + " rows.");
+			return true;
+		}
+		finally
+		{
+			if (!swapped)
+				dropCopy(connection, shadow, triggers);
+		}
+	}
+	
+	/** Checks whether the old rows fit into the altered table. Strict mode refuses rows without a value for a NOT NULL column and values
+	 * that no longer fit their column, which would make the triggers fail the writes to the table.
+	 *
+	 * @param fields the actual columns of the table.
+	 * @return why the rows might not fit, or null if they do. */
+	private static String getCopyProblem(SchemaDiff diff, MysqlField[] fields)
+	{
+		for (MysqlField field : diff.getSchema().getFields())
+		{
+			MysqlField existing = find(fields, field.getName());
+			if (existing == null)
+			{
+				if (!field.canBeNull())
+					return "the new column " + quote(field.getName()) + " is NOT NULL";
+			}
+			else if (!field.canBeNull() && existing.canBeNull() && !diff.hasInvertedNullability())
+				return quote(field.getName()) + " becomes NOT NULL";
+			else if (!fits(existing.getType(), field.getType()))
+				return quote(field.getName()) + " changes from " + existing.getType().getName() + " to " + field.getType().getName();
+		}
+		return null;
+	}
+	
+	/** @return true if every value of the actual type fits into the declared one: the same type, or a CHAR or VARCHAR that got longer. Types
+	 *         MysqlType does not know are never modified, so they fit. */
+	private static boolean fits(MysqlType actual, MysqlType declared)
+	{
+		if (actual == null || declared == null)
+			return true;
+		if (actual.getClass() != declared.getClass())
+			return false;
+		if (declared instanceof Char || declared instanceof VarChar)
+			return getLength(declared) >= getLength(actual);
+		return true;
+	}
+	
+	private static int getLength(MysqlType type)
+	{
+		String name = type.getName();
+		return Integer.parseInt(name.substring(name.indexOf('(') + 1, name.indexOf(')')).trim());
+	}
+	
+	/** Runs the statement of the triggers for one row of the table on the empty copy, then empties the copy again.
+	 *
+	 * @return true if the copy accepts the row. */
+	private static boolean validate(Connection connection, String table, String shadow, String columns)
+	{
+		String sql = "REPLACE INTO " + quote(shadow) + " (" + columns + ") SELECT " + columns + " FROM " + quote(table) + " LIMIT 1";
+		try (Statement statement = connection.createStatement())
+		{
+			statement.executeUpdate(sql);
+			statement.executeUpdate("DELETE FROM " + quote(shadow));
+			return true;
+		}
+		catch (SQLException e)
+		{
+			Faucet.plugin.getLogger().warning("The rows of `" + table + "` do not fit into its copy (" + e.getMessage()
+					+ "), altering it with a lock instead.");
+			return false;
+		}
+	}
+	
+	/** Copies the rows in ranges of the first key column. Rows written by the triggers in the meantime are newer and thus kept.
+	 *
+	 * @return the amount of rows copied, or -1 if the copy failed or was interrupted. */
+	private static long copy(Connection connection, String table, String shadow, String columns, String key)
+	{
+		String insert = "INSERT IGNORE INTO " + quote(shadow) + " (" + columns + ") SELECT " + columns + " FROM " + quote(table);
+		String bound = "SELECT " + quote(key) + " FROM " + quote(table);
+		String order = " ORDER BY " + quote(key) + " LIMIT 1 OFFSET " + (chunkSize - 1);
+		String after = " WHERE " + quote(key) + " > ?";
+		Object lower = null;
+		long copied = 0;
+		while (true)
+		{
+			if (Thread.currentThread().isInterrupted())
+			{
+				Faucet.plugin.getLogger().warning("Copying `" + table + "` was interrupted, it keeps its old layout.");
+				return -1;
+			}
+			Object upper;
+			try (ResultSet results = lower == null ? MysqlQueryHandler.query(connection, bound + order)
+					: MysqlQueryHandler.query(connection, bound + after + order, lower))
+			{
+				if (results == null)
+					return -1;
+				upper = results.next() ? results.getObject(1) : null;
+			}
+			catch (SQLException e)
+			{
+				e.printStackTrace();
+				return -1;
+			}
+			int rows;
+			if (upper == null)
+				rows = lower == null ? MysqlQueryHandler.update(connection, insert) : MysqlQueryHandler.update(connection, insert + after, lower);
+			else if (lower == null)
+				rows = MysqlQueryHandler.update(connection, insert + " WHERE " + quote(key) + " <= ?", upper);
+			else
+				rows = MysqlQueryHandler.update(connection, insert + after + " AND " + quote(key) + " <= ?", lower, upper);
+			if (rows < 0)
+				return -1;
+			copied += rows;
+			if (upper == null)
+				return copied;
+			lower = upper;
+			try
+			{
+				Thread.sleep(CHUNK_PAUSE);
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+	
+	private static void dropCopy(Connection connection, String shadow, String[] triggers)
+	{
+		for (String trigger : triggers)
+			execute(connection, "DROP TRIGGER IF EXISTS " + quote(trigger));
+		execute(connection, "DROP TABLE IF EXISTS " + quote(shadow));
+	}
+	
+	private static boolean alter(Connection connection, SchemaDiff diff)
+	{
+		return execute(connection, getAlter(diff));
+	}
+	
+	private static String getAlter(SchemaDiff diff)
+	{
+		return "ALTER TABLE " + quote(diff.getSchema().getTable()) + " " + String.join(", ", diff.getClauses());
+	}
+	
+	private static boolean execute(Connection connection, String sql)
+	{
+		return MysqlQueryHandler.update(connection, sql) >= 0;
+	}
+	
+	/** @return the amount of rows MySQL estimates the table to have, 0 if unknown. */
+	private static long estimateRows(MysqlDatabase database, String table)
+	{
+		try (ResultSet results = MysqlQueryHandler.query(database.getConnection(),
+				"SELECT TABLE_ROWS FROM information_schema.TABLES WHERE TABLE_SCHEMA = ? AND TABLE_NAME = ?", database.getName(), table))
+		{
+			return results != null && results.next() ? results.getLong(1) : 0;
+		}
+		catch (SQLException e)
+		{
+			Faucet.plugin.getLogger().log(Level.WARNING, "Could not estimate the size of `" + table + "`", e);
+			return 0;
+		}
+	}
+	
+	private static MysqlField find(MysqlField[] fields, String name)
+	{
+		for (MysqlField field : fields)
+			if (field.getName().equalsIgnoreCase(name))
+				return field;
+		return null;
+	}
+	
+	/** @return true if every declared column that exists has the opposite nullability, and there are at least two of them. A single column
+	 *         can just as well have been changed on purpose. Columns of the primary key are skipped, as MySQL makes them NOT NULL either way. */
+	private static boolean isInverted(MysqlSchema schema, MysqlField[] actual, List<MysqlIndex> indexes)
+	{
+		List<String> key = new ArrayList<>();
+		for (MysqlIndex index : indexes)
+			if (index.getKind() == MysqlIndex.Kind.PRIMARY)
+				for (String column : index.getColumns())
+					key.add(column.toLowerCase());
+		int compared = 0;
+		for (MysqlField field : schema.getFields())
+		{
+			MysqlField existing = find(actual, field.getName());
+			if (existing == null || key.contains(field.getName().toLowerCase()))
+				continue;
+			if (existing.canBeNull() == field.canBeNull())
+				return false;
+			compared++;
+		}
+		return compared >= 2;
+	}
+	
+	/** @param nullability false to ignore differences in nullability. */
+	private static boolean matches(MysqlField declared, MysqlField actual, boolean nullability)
+	{
+		if (nullability && declared.canBeNull() != actual.canBeNull())
+			return false;
+		MysqlType expected = declared.getType();
+		MysqlType type = actual.getType();
+		// types MysqlType does not know can not be compared, so they are left alone
+		if (type == null || expected == null)
+			return true;
+		if (expected.getClass() != type.getClass())
+			return false;
+		if (expected instanceof Char || expected instanceof VarChar)
+			return expected.getName().equalsIgnoreCase(type.getName());
+		return true;
+	}
+	
+	private static String quote(String name)
+	{
+		return "`" + name.replace("`", "``") + "`";
+	}
+}
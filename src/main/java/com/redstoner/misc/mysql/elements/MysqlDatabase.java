@@ -6,14 +6,36 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.logging.Level;
 
+import com.redstoner.faucet.Faucet;
+import com.redstoner.misc.Utils;
 import com.redstoner.misc.mysql.MysqlQueryHandler;
+import com.redstoner.misc.mysql.MysqlReplicas;
+import com.redstoner.misc.mysql.QueryMonitor;
 
 public class MysqlDatabase {
 	private Connection connection;
+	private MysqlReplicas replicas;
+	private final String module;
 	
 	public MysqlDatabase(Connection connection) {
+		this(connection, null);
+	}
+	
+	/** @param connection the connection to the primary server, used for all writes.
+	 * @param replicas the replicas to read from, null to read from the primary server. */
+	public MysqlDatabase(Connection connection, MysqlReplicas replicas) {
 		this.connection = connection;
+		this.replicas = replicas;
+		String module = Utils.getCallingModule();
+		this.module = module == null ? QueryMonitor.NO_MODULE : module;
+	}
+	
+	/** @return the module that opened this database, which its queries and writes are attributed to. {@link QueryMonitor#NO_MODULE} if
+	 *         Faucet opened it. */
+	public String getModule() {
+		return module;
 	}
 	
 	public String getName() {
@@ -37,6 +59,22 @@ public class MysqlDatabase {
 		return MysqlQueryHandler.queryNoResult(connection, "CREATE TABLE IF NOT EXISTS `" + name + "` " + getDescription(description) + ";");
 	}
 	
+	/** Creates a table with keys, so lookups on the key columns do not have to scan the whole table.
+	 *
+	 * @param description the columns.
+	 * @param indexes the primary key, unique keys and indexes. */
+	public boolean createTable(String name, MysqlField[] description, MysqlIndex... indexes) {
+		return MysqlQueryHandler.queryNoResult(connection, "CREATE TABLE `" + name + "` " + getDescription(description, indexes) + ";");
+	}
+	
+	/** Creates a table with keys unless it exists already. Use {@link MysqlTable#ensureIndex(MysqlIndex)} to add keys to existing tables.
+	 *
+	 * @param description the columns.
+	 * @param indexes the primary key, unique keys and indexes. */
+	public boolean createTableIfNotExists(String name, MysqlField[] description, MysqlIndex... indexes) {
+		return MysqlQueryHandler.queryNoResult(connection, "CREATE TABLE IF NOT EXISTS `" + name + "` " + getDescription(description, indexes) + ";");
+	}
+	
 	public boolean dropTable(String name) {
 		return MysqlQueryHandler.queryNoResult(connection, "DROP TABLE `" + name + "`;");
 	}
@@ -62,27 +100,84 @@ public class MysqlDatabase {
 		}
 	}
 	
-	protected Connection getConnection() {
+	/** @return the connection to the primary server. Use {@link #markWritten()} after writing through it directly. */
+	public Connection getConnection() {
 		return connection;
 	}
 	
+	/** Picks the connection for a read: a replica, unless there are none, the connection is inside a transaction or the module that
+	 * opened this database wrote recently. Close the lease once the results are read.
+	 *
+	 * @return the lease on the connection to read from. */
+	public MysqlReplicas.Lease read() {
+		if (replicas != null) {
+			try {
+				if (connection.getAutoCommit()) {
+					MysqlReplicas.Lease lease = replicas.acquire(getName(), module);
+					if (lease != null) {
+						return lease;
+					}
+				}
+			} catch (SQLException e) {
+				e.printStackTrace();
+			}
+		}
+		return MysqlReplicas.primary(connection);
+	}
+	
+	/** Runs a read on the connection picked by {@link #read()}. A read that fails on a replica, e.g. because it got evicted meanwhile, is
+	 * retried once on the primary server.
+	 *
+	 * @param action the read, which must not write.
+	 * @return the result of the read.
+	 * @throws SQLException if the read failed on the primary server. */
+	public <T> T read(ReadAction<T> action) throws SQLException {
+		try (MysqlReplicas.Lease lease = read()) {
+			if (lease.getReplica() == null) {
+				return action.read(lease.getConnection());
+			}
+			try {
+				return action.read(lease.getConnection());
+			} catch (SQLException e) {
+				Faucet.plugin.getLogger().log(Level.FINE, "Read from MySQL replica " + lease.getReplica().getName() + " failed, retrying on the "
+						+ "primary server", e);
+			}
+		}
+		return action.read(connection);
+	}
+	
+	/** Sends the reads of the module that opened this database to the primary server for a while, so it reads its own writes. Called by
+	 * @MysqlTable after writing. */
+	public void markWritten() {
+		if (replicas != null) {
+			replicas.markWritten(module);
+		}
+	}
+	
+	/** A read run through {@link MysqlDatabase#read(ReadAction)}. */
+	public static interface ReadAction<T> {
+		public T read(Connection connection) throws SQLException;
+	}
+	
 	private String getDescription(MysqlField... description) {
+		return getDescription(description, new MysqlIndex[0]);
+	}
+	
+	private String getDescription(MysqlField[] description, MysqlIndex[] indexes) {
 		String desc = "(";
 		
 		for (int i = 0; i < description.length; i++) {
-			String nil = "";
-			
-			if (description[i].canBeNull()) {
-				nil = " NOT NULL";
-			}
-			
-			desc += "`" + description[i].getName() + "` " + description[i].getType().getName() + nil;
+			desc += MysqlSchema.getDefinition(description[i]);
 			
 			if (i < description.length - 1) {
 				desc += ",";
 			}
 		}
 		
+		for (MysqlIndex index : indexes) {
+			desc += "," + index.getDefinition();
+		}
+		
 		desc += ")";
 		
 		return desc;
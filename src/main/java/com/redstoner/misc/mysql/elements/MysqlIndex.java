@@ -0,0 +1,106 @@
+package com.redstoner.misc.mysql.elements;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/** A primary key, unique key or plain index of a table, for {@link MysqlDatabase#createTable(String, MysqlField[], MysqlIndex...)} and
+ * {@link MysqlTable#ensureIndex(MysqlIndex)}. */
+public class MysqlIndex {
+	public enum Kind {
+		PRIMARY, UNIQUE, INDEX
+	}
+	
+	private final String name;
+	private final Kind kind;
+	private final List<String> columns;
+	
+	public MysqlIndex(String name, Kind kind, String... columns) {
+		if (columns.length == 0) {
+			throw new IllegalArgumentException("An index needs at least one column");
+		}
+		this.name = kind == Kind.PRIMARY ? "PRIMARY" : name;
+		this.kind = kind;
+		this.columns = Collections.unmodifiableList(Arrays.asList(columns.clone()));
+	}
+	
+	public static MysqlIndex primaryKey(String... columns) {
+		return new MysqlIndex("PRIMARY", Kind.PRIMARY, columns);
+	}
+	
+	/** @return a unique index named after its columns. */
+	public static MysqlIndex unique(String... columns) {
+		return new MysqlIndex("uq_" + String.join("_", columns), Kind.UNIQUE, columns);
+	}
+	
+	/** @return an index named after its columns. */
+	public static MysqlIndex index(String... columns) {
+		return new MysqlIndex("idx_" + String.join("_", columns), Kind.INDEX, columns);
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+	public Kind getKind() {
+		return kind;
+	}
+	
+	/** @return the columns in the order of the index. */
+	public List<String> getColumns() {
+		return columns;
+	}
+	
+	/** @return true if this index can serve every lookup the other one can, because it starts with the same columns and is as unique. */
+	public boolean covers(MysqlIndex other) {
+		if (other.kind != Kind.INDEX && kind != other.kind && !(kind == Kind.PRIMARY && other.kind == Kind.UNIQUE)) {
+			return false;
+		}
+		if (other.kind == Kind.INDEX) {
+			return columns.size() >= other.columns.size() && columns.subList(0, other.columns.size()).equals(other.columns);
+		}
+		return columns.equals(other.columns);
+	}
+	
+	/** @return the definition as used in CREATE TABLE, e.g. UNIQUE KEY `uq_name` (`name`). */
+	public String getDefinition() {
+		StringBuilder definition = new StringBuilder();
+		switch (kind) {
+			case PRIMARY:
+				definition.append("PRIMARY KEY");
+				break;
+			case UNIQUE:
+				MysqlPredicate.appendColumn(definition.append("UNIQUE KEY "), name);
+				break;
+			default:
+				MysqlPredicate.appendColumn(definition.append("KEY "), name);
+		}
+		definition.append(" (");
+		for (int i = 0; i < columns.size(); i++) {
+			if (i > 0) {
+				definition.append(", ");
+			}
+			MysqlPredicate.appendColumn(definition, columns.get(i));
+		}
+		return definition.append(')').toString();
+	}
+	
+	@Override
+	public boolean equals(Object other) {
+		if (!(other instanceof MysqlIndex)) {
+			return false;
+		}
+		MysqlIndex index = (MysqlIndex) other;
+		return kind == index.kind && name.equals(index.name) && columns.equals(index.columns);
+	}
+	
+	@Override
+	public int hashCode() {
+		return name.hashCode() * 31 + columns.hashCode();
+	}
+	
+	@Override
+	public String toString() {
+		return getDefinition();
+	}
+}
@@ -0,0 +1,43 @@
+package com.redstoner.misc.mysql.elements;
+
+import java.util.Collections;
+import java.util.List;
+
+/** One page of rows fetched by {@link MysqlQuery#fetchPage(int)}. */
+public class MysqlPage {
+	private final MysqlQuery query;
+	private final int size;
+	private final List<Object[]> rows;
+	private final Object[] nextKey;
+	
+	MysqlPage(MysqlQuery query, int size, List<Object[]> rows, Object[] nextKey) {
+		this.query = query.copy();
+		this.size = size;
+		this.rows = Collections.unmodifiableList(rows);
+		this.nextKey = nextKey;
+	}
+	
+	/** @return the rows, each holding the values of the selected columns in order. */
+	public List<Object[]> getRows() {
+		return rows;
+	}
+	
+	/** @return true if there is at least one more row after this page. */
+	public boolean hasNext() {
+		return nextKey != null;
+	}
+	
+	/** @return the values of the order columns of the last row, to continue with {@link MysqlQuery#after(Object...)} later, e.g. in the
+	 *         next click of a paginated chat list. Null if this is the last page. */
+	public Object[] getNextKey() {
+		return nextKey == null ? null : nextKey.clone();
+	}
+	
+	/** @return the following page, or null if this is the last one. */
+	public MysqlPage next() {
+		if (nextKey == null) {
+			return null;
+		}
+		return query.copy().after(nextKey).fetchPage(size);
+	}
+}
@@ -0,0 +1,133 @@
+package com.redstoner.misc.mysql.elements;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/** A condition of a @MysqlQuery. All values are bound as parameters, never pasted into the statement. */
+public abstract class MysqlPredicate {
+	MysqlPredicate() {}
+	
+	/** Appends the condition to the statement and its values to the parameters. */
+	abstract void render(StringBuilder sql, List<Object> parameters);
+	
+	public static MysqlPredicate compare(String column, ConstraintOperator operator, Object value) {
+		return new MysqlPredicate() {
+			@Override
+			void render(StringBuilder sql, List<Object> parameters) {
+				appendColumn(sql, column).append(' ').append(operator).append(" ?");
+				parameters.add(value);
+			}
+		};
+	}
+	
+	public static MysqlPredicate equal(String column, Object value) {
+		return compare(column, ConstraintOperator.EQUAL, value);
+	}
+	
+	/** @return the condition of an old style constraint. */
+	public static MysqlPredicate of(MysqlConstraint constraint) {
+		return compare(constraint.getFieldName(), constraint.getOperator(), constraint.getValue());
+	}
+	
+	/** @return a condition matching rows whose column equals one of the values. Never matches for an empty list. */
+	public static MysqlPredicate in(String column, Collection<?> values) {
+		Object[] copy = values.toArray();
+		return new MysqlPredicate() {
+			@Override
+			void render(StringBuilder sql, List<Object> parameters) {
+				if (copy.length == 0) {
+					sql.append("FALSE");
+					return;
+				}
+				appendColumn(sql, column).append(" IN (");
+				for (int i = 0; i < copy.length; i++) {
+					sql.append(i == 0 ? "?" : ", ?");
+					parameters.add(copy[i]);
+				}
+				sql.append(')');
+			}
+		};
+	}
+	
+	public static MysqlPredicate in(String column, Object... values) {
+		return in(column, Arrays.asList(values));
+	}
+	
+	/** @return a condition matching rows whose column lies between the bounds, both inclusive. */
+	public static MysqlPredicate between(String column, Object low, Object high) {
+		return new MysqlPredicate() {
+			@Override
+			void render(StringBuilder sql, List<Object> parameters) {
+				appendColumn(sql, column).append(" BETWEEN ? AND ?");
+				parameters.add(low);
+				parameters.add(high);
+			}
+		};
+	}
+	
+	public static MysqlPredicate isNull(String column) {
+		return new MysqlPredicate() {
+			@Override
+			void render(StringBuilder sql, List<Object> parameters) {
+				appendColumn(sql, column).append(" IS NULL");
+			}
+		};
+	}
+	
+	public static MysqlPredicate isNotNull(String column) {
+		return new MysqlPredicate() {
+			@Override
+			void render(StringBuilder sql, List<Object> parameters) {
+				appendColumn(sql, column).append(" IS NOT NULL");
+			}
+		};
+	}
+	
+	/** @return a condition matching rows that match all of the given ones. */
+	public static MysqlPredicate and(MysqlPredicate... predicates) {
+		return group(" AND ", "TRUE", predicates);
+	}
+	
+	/** @return a condition matching rows that match any of the given ones. */
+	public static MysqlPredicate or(MysqlPredicate... predicates) {
+		return group(" OR ", "FALSE", predicates);
+	}
+	
+	public static MysqlPredicate not(MysqlPredicate predicate) {
+		return new MysqlPredicate() {
+			@Override
+			void render(StringBuilder sql, List<Object> parameters) {
+				sql.append("NOT (");
+				predicate.render(sql, parameters);
+				sql.append(')');
+			}
+		};
+	}
+	
+	private static MysqlPredicate group(String operator, String empty, MysqlPredicate[] predicates) {
+		MysqlPredicate[] copy = predicates.clone();
+		return new MysqlPredicate() {
+			@Override
+			void render(StringBuilder sql, List<Object> parameters) {
+				if (copy.length == 0) {
+					sql.append(empty);
+					return;
+				}
+				sql.append('(');
+				for (int i = 0; i < copy.length; i++) {
+					if (i > 0) {
+						sql.append(operator);
+					}
+					copy[i].render(sql, parameters);
+				}
+				sql.append(')');
+			}
+		};
+	}
+	
+	/** Appends the column name quoted with backticks. */
+	static StringBuilder appendColumn(StringBuilder sql, String column) {
+		return sql.append('`').append(column.replace("`", "``")).append('`');
+	}
+}
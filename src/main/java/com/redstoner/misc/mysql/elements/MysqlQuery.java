@@ -0,0 +1,242 @@
+package com.redstoner.misc.mysql.elements;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.redstoner.misc.mysql.MysqlQueryHandler;
+import com.redstoner.misc.mysql.QueryAdvisor;
+import com.redstoner.misc.mysql.QueryMonitor;
+
+/** Builds and runs a SELECT on a @MysqlTable, created through {@link MysqlTable#select(String...)}.</br>
+ * Besides conditions, ordering and limits, it supports keyset pagination: instead of skipping rows with an offset, which makes MySQL read
+ * and throw away every skipped row, the next page starts right after the last row of the previous one. With an index on the order columns
+ * every page is a short index range scan, no matter how deep into the table it is. The order columns must identify a row uniquely, so add
+ * the primary key as the last one if needed, and must not be null. */
+public class MysqlQuery {
+	private final MysqlTable table;
+	private final String[] columns;
+	private final List<MysqlPredicate> predicates = new ArrayList<>();
+	private final List<String> orderColumns = new ArrayList<>();
+	private final List<Boolean> descending = new ArrayList<>();
+	private int limit = -1;
+	private Object[] after;
+	
+	MysqlQuery(MysqlTable table, String... columns) {
+		this.table = table;
+		this.columns = columns.clone();
+	}
+	
+	private MysqlQuery(MysqlQuery query) {
+		this(query.table, query.columns);
+		predicates.addAll(query.predicates);
+		orderColumns.addAll(query.orderColumns);
+		descending.addAll(query.descending);
+		limit = query.limit;
+		after = query.after;
+	}
+	
+	/** Adds conditions that all rows must match. */
+	public MysqlQuery where(MysqlPredicate... predicates) {
+		this.predicates.addAll(Arrays.asList(predicates));
+		return this;
+	}
+	
+	/** Adds old style constraints that all rows must match. */
+	public MysqlQuery where(MysqlConstraint... constraints) {
+		for (MysqlConstraint constraint : constraints) {
+			predicates.add(MysqlPredicate.of(constraint));
+		}
+		return this;
+	}
+	
+	/** Orders the rows by the column, ascending. Columns added later only order rows that are equal in all earlier ones. */
+	public MysqlQuery orderBy(String column) {
+		return orderBy(column, false);
+	}
+	
+	/** Orders the rows by the column, descending. Columns added later only order rows that are equal in all earlier ones. */
+	public MysqlQuery orderByDescending(String column) {
+		return orderBy(column, true);
+	}
+	
+	private MysqlQuery orderBy(String column, boolean descending) {
+		if (after != null) {
+			throw new IllegalStateException("The order must be complete before calling after");
+		}
+		orderColumns.add(column);
+		this.descending.add(descending);
+		return this;
+	}
+	
+	/** @param limit the highest amount of rows to return. */
+	public MysqlQuery limit(int limit) {
+		if (limit < 0) {
+			throw new IllegalArgumentException("The limit must not be negative");
+		}
+		this.limit = limit;
+		return this;
+	}
+	
+	/** Only returns rows that come after the given key in the order of this query.
+	 *
+	 * @param key the values of the order columns of the last row already seen, e.g. {@link MysqlPage#getNextKey()}. */
+	public MysqlQuery after(Object... key) {
+		if (key.length != orderColumns.size()) {
+			throw new IllegalArgumentException("The key needs one value for each of the " + orderColumns.size() + " order columns");
+		}
+		after = key.clone();
+		return this;
+	}
+	
+	/** @return the rows, each holding the values of the selected columns in order. Empty if the query failed. */
+	public List<Object[]> fetch() {
+		return fetch(columns.length == 0 ? -1 : columns.length, null);
+	}
+	
+	/** @return the values of the first selected column. Empty if the query failed. */
+	public Object[] fetchColumn() {
+		List<Object[]> rows = fetch();
+		Object[] values = new Object[rows.size()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = rows.get(i)[0];
+		}
+		return values;
+	}
+	
+	/** Fetches one page of rows. The query must be ordered, and the limit gets replaced by the page size.
+	 *
+	 * @param size the amount of rows per page, at least 1.
+	 * @return the page, whose {@link MysqlPage#next()} fetches the following one. */
+	public MysqlPage fetchPage(int size) {
+		if (size < 1) {
+			throw new IllegalArgumentException("A page needs at least one row");
+		}
+		if (orderColumns.isEmpty()) {
+			throw new IllegalStateException("Pages need an order, call orderBy first");
+		}
+		MysqlQuery query = new MysqlQuery(this).limit(size + 1);
+		List<Object[]> keys = new ArrayList<>();
+		List<Object[]> rows = query.fetch(columns.length == 0 ? -1 : columns.length, keys);
+		boolean more = rows.size() > size;
+		if (more) {
+			rows = rows.subList(0, size);
+		}
+		Object[] nextKey = more ? keys.get(size - 1) : null;
+		return new MysqlPage(this, size, new ArrayList<>(rows), nextKey);
+	}
+	
+	/** @param parameters receives the values to bind.
+	 * @return the statement. */
+	public String toSql(List<Object> parameters) {
+		StringBuilder sql = new StringBuilder("SELECT ");
+		List<String> selected = getSelectedColumns();
+		if (selected.isEmpty()) {
+			sql.append('*');
+		}
+		for (int i = 0; i < selected.size(); i++) {
+			if (i > 0) {
+				sql.append(", ");
+			}
+			MysqlPredicate.appendColumn(sql, selected.get(i));
+		}
+		sql.append(" FROM `").append(table.getName().replace("`", "``")).append('`');
+		List<MysqlPredicate> conditions = new ArrayList<>(predicates);
+		if (after != null) {
+			conditions.add(getSeekPredicate());
+		}
+		if (!conditions.isEmpty()) {
+			sql.append(" WHERE ");
+			MysqlPredicate.and(conditions.toArray(new MysqlPredicate[0])).render(sql, parameters);
+		}
+		for (int i = 0; i < orderColumns.size(); i++) {
+			sql.append(i == 0 ? " ORDER BY " : ", ");
+			MysqlPredicate.appendColumn(sql, orderColumns.get(i)).append(descending.get(i) ? " DESC" : " ASC");
+		}
+		if (limit >= 0) {
+			sql.append(" LIMIT ").append(limit);
+		}
+		return sql.append(';').toString();
+	}
+	
+	/** @return the selected columns plus any order columns missing from them, which are needed for the keys of pages. Empty for all. */
+	private List<String> getSelectedColumns() {
+		List<String> selected = new ArrayList<>(Arrays.asList(columns));
+		if (!selected.isEmpty()) {
+			for (String column : orderColumns) {
+				if (!selected.contains(column)) {
+					selected.add(column);
+				}
+			}
+		}
+		return selected;
+	}
+	
+	/** @return (a > ?) OR (a = ? AND b > ?) OR ... for the order columns a, b, ..., with < for descending ones. */
+	private MysqlPredicate getSeekPredicate() {
+		MysqlPredicate[] alternatives = new MysqlPredicate[orderColumns.size()];
+		for (int i = 0; i < alternatives.length; i++) {
+			MysqlPredicate[] parts = new MysqlPredicate[i + 1];
+			for (int j = 0; j < i; j++) {
+				parts[j] = MysqlPredicate.equal(orderColumns.get(j), after[j]);
+			}
+			ConstraintOperator operator = descending.get(i) ? ConstraintOperator.LESS_THAN : ConstraintOperator.GREATER_THAN;
+			parts[i] = MysqlPredicate.compare(orderColumns.get(i), operator, after[i]);
+			alternatives[i] = MysqlPredicate.and(parts);
+		}
+		return MysqlPredicate.or(alternatives);
+	}
+	
+	/** @param width the amount of columns to return per row, -1 for all.
+	 * @param keys receives the values of the order columns of every row, null if not needed. */
+	private List<Object[]> fetch(int width, List<Object[]> keys) {
+		List<Object> parameters = new ArrayList<>();
+		String sql = toSql(parameters);
+		MysqlDatabase database = table.getDatabase();
+		QueryAdvisor.check(database, sql, parameters.toArray());
+		try {
+			return database.read(connection -> {
+				List<Object[]> rows = new ArrayList<>();
+				if (keys != null) {
+					keys.clear();
+				}
+				QueryMonitor.Execution execution = QueryMonitor.start(database, sql, parameters.toArray());
+				try (ResultSet results = MysqlQueryHandler.query(connection, execution, sql, parameters.toArray())) {
+					if (results == null) {
+						throw new SQLException("Could not read from `" + table.getName() + "`");
+					}
+					int columnCount = width < 0 ? results.getMetaData().getColumnCount() : width;
+					while (results.next()) {
+						Object[] row = new Object[columnCount];
+						for (int i = 0; i < columnCount; i++) {
+							row[i] = results.getObject(i + 1);
+						}
+						rows.add(row);
+						if (keys != null) {
+							Object[] key = new Object[orderColumns.size()];
+							for (int i = 0; i < key.length; i++) {
+								key[i] = results.getObject(orderColumns.get(i));
+							}
+							keys.add(key);
+						}
+					}
+					execution.read(rows.size());
+				}
+				return rows;
+			});
+		} catch (SQLException e) {
+			e.printStackTrace();
+			if (keys != null) {
+				keys.clear();
+			}
+			return new ArrayList<>();
+		}
+	}
+	
+	/** @return a copy of this query, so changing one does not affect the other. */
+	public MysqlQuery copy() {
+		return new MysqlQuery(this);
+	}
+}
@@ -0,0 +1,67 @@
+package com.redstoner.misc.mysql.elements;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/** The desired layout of a table: its columns and keys. Modules declare one per table and hand it to
+ * {@link com.redstoner.misc.mysql.SchemaMigrator}, which brings the actual table in line with it. */
+public class MysqlSchema {
+	private final String table;
+	private final List<MysqlField> fields;
+	private final List<MysqlIndex> indexes;
+	
+	/** @param table the name of the table.
+	 * @param fields the columns, in the order of a newly created table.
+	 * @param indexes the primary key, unique keys and indexes. */
+	public MysqlSchema(String table, MysqlField[] fields, MysqlIndex... indexes) {
+		if (fields.length == 0) {
+			throw new IllegalArgumentException("A table needs at least one column");
+		}
+		this.table = table;
+		this.fields = Collections.unmodifiableList(Arrays.asList(fields.clone()));
+		this.indexes = Collections.unmodifiableList(Arrays.asList(indexes.clone()));
+	}
+	
+	public String getTable() {
+		return table;
+	}
+	
+	public List<MysqlField> getFields() {
+		return fields;
+	}
+	
+	public List<MysqlIndex> getIndexes() {
+		return indexes;
+	}
+	
+	/** @return the declared field of that name, or null. Column names are not case sensitive in MySQL. */
+	public MysqlField getField(String name) {
+		for (MysqlField field : fields) {
+			if (field.getName().equalsIgnoreCase(name)) {
+				return field;
+			}
+		}
+		return null;
+	}
+	
+	/** @return the primary key, or null if none is declared. */
+	public MysqlIndex getPrimaryKey() {
+		for (MysqlIndex index : indexes) {
+			if (index.getKind() == MysqlIndex.Kind.PRIMARY) {
+				return index;
+			}
+		}
+		return null;
+	}
+	
+	/** @return the definition of the column as used in CREATE and ALTER TABLE, e.g. `name` VARCHAR(16) NOT NULL. */
+	public static String getDefinition(MysqlField field) {
+		StringBuilder definition = new StringBuilder();
+		MysqlPredicate.appendColumn(definition, field.getName()).append(' ').append(field.getType().getName());
+		if (!field.canBeNull()) {
+			definition.append(" NOT NULL");
+		}
+		return definition.toString();
+	}
+}
@@ -1,15 +1,27 @@
 package com.redstoner.misc.mysql.elements;
 
 import com.redstoner.misc.mysql.MysqlQueryHandler;
+import com.redstoner.misc.mysql.QueryAdvisor;
+import com.redstoner.misc.mysql.QueryMonitor;
 
+import java.sql.Connection;
 import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class MysqlTable
 {
+	/** The most rows {@link #upsertAll(String[], List, String...)} sends in one statement. */
+	public static final int UPSERT_BATCH_ROWS = 500;
+	/** MySQL does not accept more placeholders in one statement. */
+	private static final int MAX_PARAMETERS = 65535;
+	
 	private MysqlDatabase database;
 	private String name;
 	
@@ -24,13 +36,27 @@ public class MysqlTable
 		return this.name;
 	}
 	
+	public MysqlDatabase getDatabase()
+	{
+		return this.database;
+	}
+	
+	/** Starts a query on this table, see @MysqlQuery.
+	 * 
+	 * @param columns the columns to return, none for all of them.
+	 * @return the query, to be refined and then fetched. */
+	public MysqlQuery select(String... columns)
+	{
+		return new MysqlQuery(this, columns);
+	}
+	
 	public MysqlField[] describe()
 	{
 		try
 		{
 			List<MysqlField> description = new ArrayList<>();
 			DatabaseMetaData metadata = database.getConnection().getMetaData();
-			ResultSet queryResults = metadata.getColumns(null, null, name, null);
+			ResultSet queryResults = metadata.getColumns(database.getName(), null, name, null);
 			while (queryResults.next())
 			{
 				description.add(new MysqlField(queryResults.getString(4),
@@ -46,14 +72,73 @@ public class MysqlTable
 		}
 	}
 	
+	/** @return the primary key, unique keys and indexes of the table, or null if they could not be read. */
+	public List<MysqlIndex> getIndexes()
+	{
+		try (ResultSet queryResults = database.getConnection().getMetaData().getIndexInfo(database.getName(), null, name, false, false))
+		{
+			Map<String, List<String>> columns = new LinkedHashMap<>();
+			Map<String, Boolean> unique = new LinkedHashMap<>();
+			List<Object[]> rows = new ArrayList<>();
+			while (queryResults.next())
+			{
+				String index = queryResults.getString("INDEX_NAME");
+				if (index == null)
+				{
+					continue;
+				}
+				rows.add(new Object[] {index, queryResults.getShort("ORDINAL_POSITION"), queryResults.getString("COLUMN_NAME")});
+				unique.put(index, !queryResults.getBoolean("NON_UNIQUE"));
+			}
+			rows.sort((a, b) -> Short.compare((Short) a[1], (Short) b[1]));
+			for (Object[] row : rows)
+			{
+				columns.computeIfAbsent((String) row[0], index -> new ArrayList<>()).add((String) row[2]);
+			}
+			List<MysqlIndex> indexes = new ArrayList<>();
+			for (Map.Entry<String, List<String>> index : columns.entrySet())
+			{
+				MysqlIndex.Kind kind = index.getKey().equals("PRIMARY") ? MysqlIndex.Kind.PRIMARY
+						: unique.get(index.getKey()) ? MysqlIndex.Kind.UNIQUE : MysqlIndex.Kind.INDEX;
+				indexes.add(new MysqlIndex(index.getKey(), kind, index.getValue().toArray(new String[0])));
+			}
+			return indexes;
+		}
+		catch (SQLException e)
+		{
+			e.printStackTrace();
+			return null;
+		}
+	}
+	
+	/** Adds the index unless the table already has one that covers it, i.e. one starting with the same columns that is at least as unique.
+	 * Adding an index to a big table takes a while, so call this from an async task.
+	 * 
+	 * @return true if the table has the index now. */
+	public boolean ensureIndex(MysqlIndex index)
+	{
+		List<MysqlIndex> indexes = getIndexes();
+		if (indexes == null)
+		{
+			return false;
+		}
+		for (MysqlIndex existing : indexes)
+		{
+			if (existing.covers(index))
+			{
+				return true;
+			}
+		}
+		return write("ALTER TABLE `" + name.replace("`", "``") + "` ADD " + index.getDefinition() + ";");
+	}
+	
 	public boolean insert(String... values)
 	{
 		MysqlField[] description = describe();
 		if (values.length > 0 && values.length == description.length)
 		{
 			String val = "(\"" + String.join("\",\"", values) + "\")";
-			return MysqlQueryHandler.queryNoResult(database.getConnection(),
-					"INSERT INTO `" + name + "` VALUES " + val + ";");
+			return write("INSERT INTO `" + name + "` VALUES " + val + ";");
 		}
 		else
 		{
@@ -63,52 +148,206 @@ public class MysqlTable
 	
 	public Object[] get(String fieldName, MysqlConstraint... constraints)
 	{
-		ResultSet results = MysqlQueryHandler.queryResult(database.getConnection(),
-				"SELECT " + fieldName + " FROM `" + name + "`" + getConstraints(constraints) + ";");
-		List<Object> resObj = new ArrayList<>();
+		String query = "SELECT " + fieldName + " FROM `" + name + "`" + getConstraints(constraints) + ";";
+		QueryAdvisor.check(database, query);
 		try
 		{
-			while (results.next())
-			{
-				resObj.add(results.getObject(1));
-			}
+			return database.read(connection -> readColumn(connection, query));
 		}
 		catch (SQLException e)
 		{
 			e.printStackTrace();
 			return new Object[0];
 		}
-		return resObj.toArray(new Object[0]);
 	}
 	
+	/** Runs a statement and returns the first column of its results. It always runs on the primary server, as it may depend on the session,
+	 * e.g. LAST_INSERT_ID() or SELECT ... FOR UPDATE, or read what the module wrote through {@link MysqlDatabase#getConnection()}. */
 	public Object[] get(String statement)
 	{
-		ResultSet results = MysqlQueryHandler.queryResult(database.getConnection(), statement);
-		List<Object> resObj = new ArrayList<>();
 		try
 		{
-			while (results.next())
-			{
-				resObj.add(results.getObject(1));
-			}
+			return readColumn(database.getConnection(), statement);
 		}
 		catch (SQLException e)
 		{
 			e.printStackTrace();
 			return new Object[0];
 		}
+	}
+	
+	private Object[] readColumn(Connection connection, String query) throws SQLException
+	{
+		List<Object> resObj = new ArrayList<>();
+		QueryMonitor.Execution execution = QueryMonitor.start(database, query);
+		ResultSet results = MysqlQueryHandler.queryResult(connection, execution, query);
+		if (results == null)
+		{
+			throw new SQLException("Could not read from `" + name + "`");
+		}
+		while (results.next())
+		{
+			resObj.add(results.getObject(1));
+		}
+		execution.read(resObj.size());
 		return resObj.toArray(new Object[0]);
 	}
 	
+	/** Inserts the row, or updates the existing row with the same primary or unique key, in a single statement.
+	 * 
+	 * @param row the values by column name.
+	 * @param updateColumns the columns to overwrite if the row exists, none for all columns of the row.
+	 * @return whether the row was updated, or inserted or left unchanged, null if the statement failed. */
+	public MysqlUpsertResult upsert(Map<String, ?> row, String... updateColumns)
+	{
+		return upsertAll(row.keySet().toArray(new String[0]), Collections.singletonList(row.values().toArray()), updateColumns);
+	}
+	
+	/** Inserts the rows, or updates the existing rows with the same primary or unique key, using INSERT ... ON DUPLICATE KEY UPDATE.</br>
+	 * The rows are sent {@link #UPSERT_BATCH_ROWS} at a time as multi row statements, which are executed as one JDBC batch, so the amount
+	 * of round trips does not grow with every row.
+	 * 
+	 * @param columns the columns the values of each row are given for.
+	 * @param rows the values of each row, in the order of the columns.
+	 * @param updateColumns the columns to overwrite if a row exists, none for all of the given columns.
+	 * @return how many rows were updated, and how many were inserted or left unchanged, null if a statement failed. Rows sent before the failure stay written. */
+	public MysqlUpsertResult upsertAll(String[] columns, List<Object[]> rows, String... updateColumns)
+	{
+		if (columns.length == 0)
+		{
+			throw new IllegalArgumentException("An upsert needs at least one column");
+		}
+		for (Object[] row : rows)
+		{
+			if (row.length != columns.length)
+			{
+				throw new IllegalArgumentException("Every row needs one value for each of the " + columns.length + " columns");
+			}
+		}
+		if (rows.isEmpty())
+		{
+			return new MysqlUpsertResult(0, 0);
+		}
+		int batchRows = Math.max(1, Math.min(UPSERT_BATCH_ROWS, MAX_PARAMETERS / columns.length));
+		int remaining = rows.size() % batchRows;
+		int full = rows.size() - remaining;
+		Connection connection = database.getConnection();
+		String sql = getUpsert(columns, batchRows, updateColumns);
+		QueryMonitor.Execution execution = QueryMonitor.start(database, sql);
+		long affected = 0;
+		database.markWritten();
+		try
+		{
+			if (full > 0)
+			{
+				try (PreparedStatement statement = connection.prepareStatement(sql))
+				{
+					for (int start = 0; start < full; start += batchRows)
+					{
+						bind(statement, rows, start, batchRows);
+						statement.addBatch();
+					}
+					for (int count : statement.executeBatch())
+					{
+						affected += Math.max(count, 0);
+					}
+				}
+			}
+			if (remaining > 0)
+			{
+				try (PreparedStatement statement = connection.prepareStatement(getUpsert(columns, remaining, updateColumns)))
+				{
+					bind(statement, rows, full, remaining);
+					affected += statement.executeUpdate();
+				}
+			}
+			execution.finish(affected);
+		}
+		catch (SQLException e)
+		{
+			execution.fail(e);
+			return null;
+		}
+		finally
+		{
+			// rows sent before a failure stay written as well
+			database.markWritten();
+		}
+		return new MysqlUpsertResult(rows.size(), affected);
+	}
+	
+	private String getUpsert(String[] columns, int rows, String... updateColumns)
+	{
+		StringBuilder sql = new StringBuilder("INSERT INTO `").append(name.replace("`", "``")).append("` (");
+		StringBuilder tuple = new StringBuilder("(");
+		for (int i = 0; i < columns.length; i++)
+		{
+			if (i > 0)
+			{
+				sql.append(", ");
+				tuple.append(", ");
+			}
+			MysqlPredicate.appendColumn(sql, columns[i]);
+			tuple.append('?');
+		}
+		tuple.append(')');
+		sql.append(") VALUES ");
+		for (int i = 0; i < rows; i++)
+		{
+			sql.append(i == 0 ? "" : ", ").append(tuple);
+		}
+		sql.append(" ON DUPLICATE KEY UPDATE ");
+		String[] updated = updateColumns.length == 0 ? columns : updateColumns;
+		for (int i = 0; i < updated.length; i++)
+		{
+			if (i > 0)
+			{
+				sql.append(", ");
+			}
+			MysqlPredicate.appendColumn(sql, updated[i]).append(" = VALUES(");
+			MysqlPredicate.appendColumn(sql, updated[i]).append(')');
+		}
+		return sql.append(';').toString();
+	}
+	
+	private static void bind(PreparedStatement statement, List<Object[]> rows, int start, int count) throws SQLException
+	{
+		int index = 1;
+		for (int i = start; i < start + count; i++)
+		{
+			for (Object value : rows.get(i))
+			{
+				statement.setObject(index++, value);
+			}
+		}
+	}
+	
 	public boolean delete(MysqlConstraint... constraints)
 	{
-		return MysqlQueryHandler.queryNoResult(database.getConnection(),
-				"DELETE FROM `" + name + "`" + getConstraints(constraints) + ";");
+		String query = "DELETE FROM `" + name + "`" + getConstraints(constraints) + ";";
+		QueryAdvisor.check(database, query);
+		return write(query);
 	}
 	
 	public boolean drop()
 	{
-		return MysqlQueryHandler.queryNoResult(database.getConnection(), "DROP TABLE `" + name + "`;");
+		String query = "DROP TABLE `" + name + "`;";
+		return MysqlQueryHandler.queryNoResult(database.getConnection(), QueryMonitor.start(database, query), query);
+	}
+	
+	/** Runs a write on the primary server. It is marked as written both before and after, so the read your writes window starts once the
+	 * write is done, however long it took. */
+	private boolean write(String query)
+	{
+		database.markWritten();
+		try
+		{
+			return MysqlQueryHandler.queryNoResult(database.getConnection(), QueryMonitor.start(database, query), query);
+		}
+		finally
+		{
+			database.markWritten();
+		}
 	}
 	
 	private String getConstraints(MysqlConstraint... constraints)
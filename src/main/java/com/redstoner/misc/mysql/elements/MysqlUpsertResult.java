@@ -0,0 +1,41 @@
+package com.redstoner.misc.mysql.elements;
+
+/** The outcome of {@link MysqlTable#upsert(java.util.Map, String...)} and {@link MysqlTable#upsertAll(String[], java.util.List, String...)}.
+ * </br>
+ * MySQL reports the rows changed by an upsert as one per inserted row and two per updated row. By default the driver counts an existing
+ * row that already held the given values as found, which is also reported as one. Inserted and unchanged rows can not be told apart from
+ * that, so they are counted together. */
+public class MysqlUpsertResult {
+	private final int rows;
+	private final long affected;
+	
+	MysqlUpsertResult(int rows, long affected) {
+		this.rows = rows;
+		this.affected = affected;
+	}
+	
+	/** @return the amount of rows handed to the upsert. */
+	public int getRows() {
+		return rows;
+	}
+	
+	/** @return the amount of rows that did not exist yet, plus the existing rows that already held the given values. */
+	public int getInsertedOrUnchanged() {
+		return rows - getUpdated();
+	}
+	
+	/** @return the amount of existing rows whose values were changed. */
+	public int getUpdated() {
+		return (int) Math.max(0, Math.min(rows, affected - rows));
+	}
+	
+	/** @return the sum of the affected rows reported by MySQL. */
+	public long getAffectedRows() {
+		return affected;
+	}
+	
+	@Override
+	public String toString() {
+		return rows + " rows, " + getInsertedOrUnchanged() + " inserted or unchanged, " + getUpdated() + " updated";
+	}
+}
@@ -0,0 +1,60 @@
+package com.redstoner.misc.playerdata;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.util.UUID;
+
+import com.redstoner.misc.SaveQueue;
+import com.redstoner.misc.StorageFormat;
+
+/** Stores the data of every player in its own file, named after their UUID. */
+public class JsonFileBackend implements PlayerDataBackend
+{
+	private final File folder;
+	private final StorageFormat format;
+	
+	/** @param folder the folder holding the files. */
+	public JsonFileBackend(File folder)
+	{
+		this(folder, StorageFormat.JSON);
+	}
+	
+	/** @param folder the folder holding the files.
+	 * @param format the format the data gets encoded in, which determines the extension of the files. */
+	public JsonFileBackend(File folder, StorageFormat format)
+	{
+		this.folder = folder;
+		this.format = format;
+	}
+	
+	public StorageFormat getFormat()
+	{
+		return format;
+	}
+	
+	@Override
+	public byte[] load(UUID player) throws IOException
+	{
+		try
+		{
+			return Files.readAllBytes(getFile(player).toPath());
+		}
+		catch (NoSuchFileException e)
+		{
+			return null;
+		}
+	}
+	
+	@Override
+	public void save(UUID player, byte[] data) throws IOException
+	{
+		SaveQueue.saveSync(data, getFile(player));
+	}
+	
+	private File getFile(UUID player)
+	{
+		return new File(folder, player + format.getExtension());
+	}
+}
@@ -0,0 +1,75 @@
+package com.redstoner.misc.playerdata;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.UUID;
+
+import com.redstoner.misc.mysql.MysqlQueryHandler;
+import com.redstoner.misc.mysql.QueryMonitor;
+import com.redstoner.misc.mysql.elements.MysqlDatabase;
+
+/** Stores the data of every player in one row of a MySQL table, keyed by their UUID. The table gets created if it does not exist. */
+public class MysqlBackend implements PlayerDataBackend
+{
+	private final MysqlDatabase database;
+	private final Connection connection;
+	private final String loadQuery;
+	private final String saveQuery;
+	
+	/** @param database the database holding the table.
+	 * @param table the name of the table. */
+	public MysqlBackend(MysqlDatabase database, String table)
+	{
+		this.database = database;
+		this.connection = database.getConnection();
+		MysqlQueryHandler.queryNoResult(connection, "CREATE TABLE IF NOT EXISTS `" + table
+				+ "` (`uuid` CHAR(36) NOT NULL PRIMARY KEY, `data` MEDIUMBLOB NOT NULL);");
+		this.loadQuery = "SELECT `data` FROM `" + table + "` WHERE `uuid` = ?;";
+		this.saveQuery = "INSERT INTO `" + table + "` (`uuid`, `data`) VALUES (?, ?) ON DUPLICATE KEY UPDATE `data` = VALUES(`data`);";
+	}
+	
+	@Override
+	public byte[] load(UUID player) throws IOException
+	{
+		QueryMonitor.Execution execution = QueryMonitor.start(database, loadQuery, player);
+		try (PreparedStatement statement = connection.prepareStatement(loadQuery))
+		{
+			statement.setString(1, player.toString());
+			try (ResultSet result = statement.executeQuery())
+			{
+				execution.finish(-1);
+				if (!result.next())
+				{
+					return null;
+				}
+				execution.read(1);
+				return result.getBytes(1);
+			}
+		}
+		catch (SQLException e)
+		{
+			execution.fail(e);
+			throw new IOException("Could not load the data of " + player, e);
+		}
+	}
+	
+	@Override
+	public void save(UUID player, byte[] data) throws IOException
+	{
+		QueryMonitor.Execution execution = QueryMonitor.start(database, saveQuery, player, data);
+		try (PreparedStatement statement = connection.prepareStatement(saveQuery))
+		{
+			statement.setString(1, player.toString());
+			statement.setBytes(2, data);
+			execution.finish(statement.executeUpdate());
+		}
+		catch (SQLException e)
+		{
+			execution.fail(e);
+			throw new IOException("Could not save the data of " + player, e);
+		}
+	}
+}
@@ -0,0 +1,19 @@
+package com.redstoner.misc.playerdata;
+
+import java.io.IOException;
+import java.util.UUID;
+
+/** Where a @PlayerDataCache loads player data from and writes it back to. Gets called off the main thread only.</br>
+ * The data is handed over encoded, so backends never touch the live objects the main thread is working with. */
+public interface PlayerDataBackend
+{
+	/** @param player the UUID of the player.
+	 * @return the stored data, or null if there is none yet.
+	 * @throws IOException if the data could not be read. */
+	public byte[] load(UUID player) throws IOException;
+	
+	/** @param player the UUID of the player.
+	 * @param data the complete data to store.
+	 * @throws IOException if the data could not be written. */
+	public void save(UUID player, byte[] data) throws IOException;
+}
@@ -0,0 +1,413 @@
+package com.redstoner.misc.playerdata;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.scheduler.BukkitTask;
+import org.json.simple.JSONObject;
+
+import com.redstoner.faucet.Faucet;
+import com.redstoner.misc.JsonStream;
+import com.redstoner.misc.StorageFormat;
+import com.redstoner.modules.Module;
+import com.redstoner.scheduler.ModuleProfiler;
+
+/** Keeps the data of online players in memory, so accessing it is a single map lookup.</br>
+ * A player's data is loaded while they log in, before they are on the server, and kept until they have been gone for the grace period. If
+ * their login gets rejected after it was loaded, it is evicted after the grace period as well.
+ * Changed data is written back periodically and on eviction. The data lives in a @PlayerDataBackend, such as JSON files, a MySQL table or a
+ * @KeyValueStore.</br>
+ * The data objects must only be accessed from the main thread. Call {@link #markDirty(UUID)} after changing one, or change it through
+ * {@link #update(Player, Consumer)}. */
+public final class PlayerDataCache
+{
+	/** The default time in ticks the data of a player is kept after they quit. */
+	public static final long DEFAULT_GRACE_PERIOD = 5 * 60 * 20;
+	/** The interval in ticks at which changed data gets written back. */
+	public static final long WRITE_BACK_INTERVAL = 30 * 20;
+
+	private static final List<PlayerDataCache> caches = new CopyOnWriteArrayList<>();
+	/** Performs all writes and the loads after join. A single thread, so writes to the same player never overtake each other. */
+	private static ExecutorService io;
+	private static BukkitTask writeBackTask;
+
+	private final String name;
+	private final PlayerDataBackend backend;
+	private final StorageFormat format;
+	private final long gracePeriod;
+	private final Map<UUID, Entry> entries = new ConcurrentHashMap<>();
+	/** Data handed to the io thread but not written yet. Loads check here first so they never read outdated data. */
+	private final Map<UUID, byte[]> writing = new ConcurrentHashMap<>();
+	private volatile boolean closed;
+
+	private PlayerDataCache(String name, PlayerDataBackend backend, StorageFormat format, long gracePeriod)
+	{
+		this.name = name;
+		this.backend = backend;
+		this.format = format;
+		this.gracePeriod = gracePeriod;
+	}
+
+	/** Creates the cache of a module. Call {@link #close()} when the module gets disabled.
+	 *
+	 * @param module the module owning the data.
+	 * @param backend where the data is stored.
+	 * @return the cache, which already started loading the data of all online players. */
+	public static PlayerDataCache create(Module module, PlayerDataBackend backend)
+	{
+		return create(module.getClass().getSimpleName(), backend, DEFAULT_GRACE_PERIOD);
+	}
+
+	/** Creates a cache. Call {@link #close()} once it is no longer needed.
+	 *
+	 * @param name the name used in log messages.
+	 * @param backend where the data is stored.
+	 * @param gracePeriod the time in ticks the data is kept after a player quit, so it does not need to be loaded again if they reconnect.
+	 * @return the cache, which already started loading the data of all online players. */
+	public static PlayerDataCache create(String name, PlayerDataBackend backend, long gracePeriod)
+	{
+		StorageFormat format = backend instanceof JsonFileBackend ? ((JsonFileBackend) backend).getFormat() : StorageFormat.JSON;
+		PlayerDataCache cache = new PlayerDataCache(name, backend, format, gracePeriod);
+		init();
+		caches.add(cache);
+		for (Player player : Bukkit.getOnlinePlayers())
+			cache.loadLater(player.getUniqueId());
+		return cache;
+	}
+
+	/** @return the data of the player. Loaded on the calling thread if it is not resident yet, which should only happen for offline players.
+	 * @throws UncheckedIOException if the data had to be loaded and that failed. */
+	public JSONObject get(Player player)
+	{
+		return get(player.getUniqueId());
+	}
+
+	/** @param player the UUID of the player, who does not need to be online.
+	 * @return the data of the player. Loaded on the calling thread if it is not resident yet, which should only happen for offline players.
+	 * The data of offline players is evicted again after the grace period.
+	 * @throws UncheckedIOException if the data had to be loaded and that failed. */
+	public JSONObject get(UUID player)
+	{
+		Entry entry = entries.get(player);
+		if (entry != null)
+			return entry.data;
+		entry = entries.computeIfAbsent(player, id ->
+		{
+			try
+			{
+				return new Entry(load(id));
+			}
+			catch (IOException e)
+			{
+				throw new UncheckedIOException(e);
+			}
+		});
+		evictIfOffline(player, entry);
+		return entry.data;
+	}
+
+	/** @return true if the data of the player is in memory. */
+	public boolean isLoaded(UUID player)
+	{
+		return entries.containsKey(player);
+	}
+
+	/** Marks the data of the player as changed, so it gets written back. */
+	public void markDirty(Player player)
+	{
+		markDirty(player.getUniqueId());
+	}
+
+	/** Marks the data of the player as changed, so it gets written back. */
+	public void markDirty(UUID player)
+	{
+		Entry entry = entries.get(player);
+		if (entry != null)
+			entry.dirty = true;
+	}
+
+	/** Changes the data of the player and marks it as changed. */
+	public void update(Player player, Consumer<JSONObject> change)
+	{
+		update(player.getUniqueId(), change);
+	}
+
+	/** Changes the data of the player and marks it as changed. */
+	public void update(UUID player, Consumer<JSONObject> change)
+	{
+		change.accept(get(player));
+		markDirty(player);
+	}
+
+	/** @return the amount of players whose data is in memory. */
+	public int size()
+	{
+		return entries.size();
+	}
+
+	/** Hands all changed data to the io thread to be written. Must be called on the main thread. */
+	public void writeBack()
+	{
+		for (Map.Entry<UUID, Entry> entry : entries.entrySet())
+		{
+			if (entry.getValue().dirty)
+				writeLater(entry.getKey(), entry.getValue());
+		}
+	}
+
+	/** Writes all changed data and stops tracking players, waiting up to 30 seconds for the writes to finish. Must be called on the main
+	 * thread, e.g. when the owning module gets disabled. */
+	public void close()
+	{
+		closed = true;
+		caches.remove(this);
+		for (Map.Entry<UUID, Entry> entry : entries.entrySet())
+		{
+			Entry value = entry.getValue();
+			if (value.eviction != null)
+				value.eviction.cancel();
+			if (value.dirty)
+				writeLater(entry.getKey(), value);
+		}
+		entries.clear();
+		try
+		{
+			// the io thread works in order, so once this ran every write queued before it is done
+			io.submit(() -> {}).get(30, TimeUnit.SECONDS);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		catch (ExecutionException | TimeoutException e)
+		{
+			Faucet.plugin.getLogger().log(Level.WARNING, "Timed out writing the " + name + " player data", e);
+		}
+	}
+
+	/** Closes every cache and waits for pending writes. To be called when Faucet gets disabled. */
+	public static synchronized void closeAll()
+	{
+		for (PlayerDataCache cache : caches)
+			cache.close();
+		if (writeBackTask != null)
+		{
+			writeBackTask.cancel();
+			writeBackTask = null;
+		}
+		if (io != null)
+		{
+			io.shutdown();
+			try
+			{
+				io.awaitTermination(30, TimeUnit.SECONDS);
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+			io = null;
+		}
+	}
+
+	private static synchronized void init()
+	{
+		if (io != null)
+			return;
+		io = Executors.newSingleThreadExecutor(runnable ->
+		{
+			Thread thread = new Thread(runnable, "Faucet Player Data");
+			thread.setDaemon(true);
+			return thread;
+		});
+		Bukkit.getPluginManager().registerEvents(new PlayerDataListener(), Faucet.plugin);
+		writeBackTask = Bukkit.getScheduler().runTaskTimer(Faucet.plugin, () ->
+		{
+			for (PlayerDataCache cache : caches)
+				cache.writeBack();
+		}, WRITE_BACK_INTERVAL, WRITE_BACK_INTERVAL);
+	}
+
+	private JSONObject load(UUID player) throws IOException
+	{
+		byte[] content = writing.get(player);
+		if (content == null)
+			content = backend.load(player);
+		if (content == null)
+			return new JSONObject();
+		Object value = JsonStream.read(content);
+		if (!(value instanceof JSONObject))
+			throw new IOException("The " + name + " data of " + player + " is not an object");
+		return (JSONObject) value;
+	}
+
+	/** Loads the data on the current thread unless it is resident already. Failures are logged, the next access retries.
+	 *
+	 * @return the entry if it was loaded by this call, null otherwise. */
+	private Entry preload(UUID player)
+	{
+		if (closed || entries.containsKey(player))
+			return null;
+		boolean profiled = ModuleProfiler.begin();
+		try
+		{
+			Entry entry = new Entry(load(player));
+			return entries.putIfAbsent(player, entry) == null ? entry : null;
+		}
+		catch (IOException e)
+		{
+			Faucet.plugin.getLogger().log(Level.SEVERE, "Could not load the " + name + " data of " + player, e);
+			return null;
+		}
+		finally
+		{
+			ModuleProfiler.end(name, profiled);
+		}
+	}
+
+	private void loadLater(UUID player)
+	{
+		if (!entries.containsKey(player))
+			io.execute(() -> preload(player));
+	}
+
+	/** Encodes the data on the current thread, which must be the main thread, and writes it on the io thread. */
+	private void writeLater(UUID player, Entry entry)
+	{
+		entry.dirty = false;
+		byte[] content = encode(entry.data);
+		writing.put(player, content);
+		io.execute(() ->
+		{
+			boolean profiled = ModuleProfiler.begin();
+			try
+			{
+				backend.save(player, content);
+			}
+			catch (IOException e)
+			{
+				Faucet.plugin.getLogger().log(Level.SEVERE, "Could not save the " + name + " data of " + player, e);
+				if (entries.get(player) == entry)
+					entry.dirty = true;
+			}
+			finally
+			{
+				ModuleProfiler.end(name, profiled);
+				writing.remove(player, content);
+			}
+		});
+	}
+
+	/** Schedules the eviction of data loaded for a player who is not online. May be called from any thread, the eviction is scheduled on the
+	 * main thread. */
+	private void evictIfOffline(UUID player, Entry entry)
+	{
+		if (!Bukkit.isPrimaryThread())
+		{
+			Bukkit.getScheduler().runTask(Faucet.plugin, () -> evictIfOffline(player, entry));
+			return;
+		}
+		if (!closed && entries.get(player) == entry && Bukkit.getPlayer(player) == null)
+			scheduleEviction(player, entry);
+	}
+
+	/** Must be called on the main thread. */
+	private void scheduleEviction(UUID player, Entry entry)
+	{
+		if (entry.eviction != null)
+			entry.eviction.cancel();
+		entry.eviction = Bukkit.getScheduler().runTaskLater(Faucet.plugin, () ->
+		{
+			entry.eviction = null;
+			if (closed || Bukkit.getPlayer(player) != null || !entries.remove(player, entry))
+				return;
+			if (entry.dirty)
+				writeLater(player, entry);
+		}, gracePeriod);
+	}
+
+	private byte[] encode(JSONObject data)
+	{
+		return JsonStream.toBytes(data, format);
+	}
+
+	private static final class Entry
+	{
+		private final JSONObject data;
+		private volatile boolean dirty;
+		/** The pending eviction, only accessed on the main thread. */
+		private BukkitTask eviction;
+
+		private Entry(JSONObject data)
+		{
+			this.data = data;
+		}
+	}
+
+	private static final class PlayerDataListener implements Listener
+	{
+		@EventHandler(priority = EventPriority.MONITOR)
+		public void onPreLogin(AsyncPlayerPreLoginEvent event)
+		{
+			if (event.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED)
+				return;
+			UUID player = event.getUniqueId();
+			for (PlayerDataCache cache : caches)
+			{
+				// a later login check may still reject the player, who then never joins or quits
+				Entry entry = cache.preload(player);
+				if (entry != null)
+					cache.evictIfOffline(player, entry);
+			}
+		}
+
+		@EventHandler(priority = EventPriority.LOWEST)
+		public void onJoin(PlayerJoinEvent event)
+		{
+			UUID player = event.getPlayer().getUniqueId();
+			for (PlayerDataCache cache : caches)
+			{
+				Entry entry = cache.entries.get(player);
+				if (entry == null)
+					cache.loadLater(player);
+				else if (entry.eviction != null)
+				{
+					entry.eviction.cancel();
+					entry.eviction = null;
+				}
+			}
+		}
+
+		@EventHandler(priority = EventPriority.MONITOR)
+		public void onQuit(PlayerQuitEvent event)
+		{
+			UUID player = event.getPlayer().getUniqueId();
+			for (PlayerDataCache cache : caches)
+			{
+				Entry entry = cache.entries.get(player);
+				if (entry != null)
+					cache.scheduleEviction(player, entry);
+			}
+		}
+	}
+}
@@ -0,0 +1,29 @@
+package com.redstoner.misc.playerdata;
+
+import java.io.IOException;
+import java.util.UUID;
+
+import com.redstoner.misc.store.KeyValueStore;
+
+/** Stores the data of every player as one value of a @KeyValueStore, keyed by their UUID. */
+public class StoreBackend implements PlayerDataBackend
+{
+	private final KeyValueStore store;
+	
+	public StoreBackend(KeyValueStore store)
+	{
+		this.store = store;
+	}
+	
+	@Override
+	public byte[] load(UUID player) throws IOException
+	{
+		return store.get(player.toString());
+	}
+	
+	@Override
+	public void save(UUID player, byte[] data) throws IOException
+	{
+		store.put(player.toString(), data);
+	}
+}
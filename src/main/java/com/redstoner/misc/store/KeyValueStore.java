@@ -0,0 +1,527 @@
+package com.redstoner.misc.store;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.zip.CRC32;
+
+import com.redstoner.faucet.Faucet;
+import com.redstoner.modules.Module;
+
+/** An embedded key value store for small, frequently updated module data such as per player or per region state.</br>
+ * Every change is appended to a log of segment files, nothing is ever rewritten in place. The location of each current value is kept in
+ * memory, so a read is a single positional read from the OS page cache.</br>
+ * Changes are synced to disk in the background at least once per second, call {@link #flush()} when they must be durable right away.
+ * Once more than half of the log is outdated, the live values get copied to the end of the log and the old segments are deleted.
+ * When opened, the log is replayed to rebuild the index. A record that was only partially written during a crash is cut off.</br>
+ * Each module gets its own store in its own folder, see {@link #open(Module)}. */
+public final class KeyValueStore implements Closeable
+{
+	/** The size at which a new segment gets started. */
+	public static final long SEGMENT_SIZE = 16L * 1024 * 1024;
+	/** Record header: crc, key length, value length (-1 for removals). */
+	private static final int HEADER = 12;
+	private static final long SYNC_INTERVAL = 1000;
+	private static final long COMPACTION_INTERVAL = 30000;
+	/** The minimum amount of outdated bytes before a compaction is considered worth it. */
+	private static final long MIN_GARBAGE = 4L * 1024 * 1024;
+
+	private static final Map<File, KeyValueStore> stores = new ConcurrentHashMap<>();
+	private static ScheduledExecutorService maintenance;
+
+	private final File directory;
+	private final Map<String, Location> index = new ConcurrentHashMap<>();
+	private final NavigableMap<Integer, Segment> segments = new ConcurrentSkipListMap<>();
+	private final Object writeLock = new Object();
+	private final Object compactionLock = new Object();
+	/** The segment currently written to, guarded by the write lock like the counters below. */
+	private Segment active;
+	private long totalBytes;
+	private long garbageBytes;
+	private volatile boolean dirty;
+	private volatile boolean closed;
+
+	private KeyValueStore(File directory) throws IOException
+	{
+		this.directory = directory;
+		if (!directory.isDirectory() && !directory.mkdirs())
+			throw new IOException("Could not create " + directory);
+		File[] files = directory.listFiles();
+		List<Integer> ids = new ArrayList<>();
+		for (File file : files == null ? new File[0] : files)
+		{
+			int id = Segment.parseId(file);
+			if (id >= 0)
+				ids.add(id);
+		}
+		Collections.sort(ids);
+		try
+		{
+			for (int id : ids)
+			{
+				Segment segment = new Segment(directory, id);
+				segments.put(id, segment);
+				replay(segment);
+			}
+			active = segments.isEmpty() ? null : segments.lastEntry().getValue();
+			if (active == null)
+			{
+				active = new Segment(directory, 0);
+				segments.put(0, active);
+			}
+		}
+		catch (IOException e)
+		{
+			for (Segment segment : segments.values())
+				segment.close();
+			throw e;
+		}
+	}
+
+	/** Opens the store of a module, located in "store/&lt;module name&gt;" in Faucet's data folder.
+	 *
+	 * @param module the module owning the store.
+	 * @return the store. Repeated calls return the same store until it gets closed. */
+	public static KeyValueStore open(Module module) throws IOException
+	{
+		return open(module.getClass().getSimpleName());
+	}
+
+	/** Opens a store located in "store/&lt;namespace&gt;" in Faucet's data folder.
+	 *
+	 * @param namespace the name of the store.
+	 * @return the store. Repeated calls return the same store until it gets closed. */
+	public static KeyValueStore open(String namespace) throws IOException
+	{
+		return open(new File(new File(Faucet.plugin.getDataFolder(), "store"), namespace));
+	}
+
+	/** Opens the store located in the given folder, replaying its log.
+	 *
+	 * @param directory the folder holding the segments of the store. Gets created if it does not exist.
+	 * @return the store. Repeated calls return the same store until it gets closed. */
+	public static synchronized KeyValueStore open(File directory) throws IOException
+	{
+		directory = directory.getAbsoluteFile();
+		KeyValueStore store = stores.get(directory);
+		if (store == null)
+		{
+			store = new KeyValueStore(directory);
+			stores.put(directory, store);
+			ensureMaintenance();
+		}
+		return store;
+	}
+
+	/** Flushes and closes every open store. To be called when Faucet gets disabled. */
+	public static synchronized void closeAll()
+	{
+		for (KeyValueStore store : new ArrayList<>(stores.values()))
+		{
+			try
+			{
+				store.close();
+			}
+			catch (IOException e)
+			{
+				e.printStackTrace();
+			}
+		}
+		if (maintenance != null)
+		{
+			maintenance.shutdown();
+			maintenance = null;
+		}
+	}
+
+	/** @param key the key.
+	 * @return the value stored for the key, or null if there is none. */
+	public byte[] get(String key) throws IOException
+	{
+		while (true)
+		{
+			ensureOpen();
+			Location location = index.get(key);
+			if (location == null)
+				return null;
+			Segment segment = segments.get(location.segment);
+			if (segment != null)
+			{
+				ByteBuffer value = ByteBuffer.allocate(location.length);
+				try
+				{
+					segment.read(value, location.position);
+					return value.array();
+				}
+				catch (ClosedByInterruptException e)
+				{
+					segment.reopen();
+					throw e;
+				}
+				catch (ClosedChannelException e)
+				{
+					// the segment was compacted away meanwhile, the index points to the new location by now
+				}
+			}
+			if (index.get(key) == location)
+				throw new IOException("The segment holding " + key + " is missing in " + directory);
+		}
+	}
+
+	/** @param key the key.
+	 * @return the value stored for the key decoded as UTF-8, or null if there is none. */
+	public String getString(String key) throws IOException
+	{
+		byte[] value = get(key);
+		return value == null ? null : new String(value, StandardCharsets.UTF_8);
+	}
+
+	public boolean contains(String key)
+	{
+		return index.containsKey(key);
+	}
+
+	/** Stores a value, replacing the previous one.
+	 *
+	 * @param key the key.
+	 * @param value the new value. */
+	public void put(String key, byte[] value) throws IOException
+	{
+		if (value == null)
+			throw new IllegalArgumentException("Use remove to remove values");
+		byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+		ByteBuffer record = encode(keyBytes, value);
+		synchronized (writeLock)
+		{
+			ensureOpen();
+			append(key, keyBytes.length, value.length, record);
+		}
+	}
+
+	/** Stores a string encoded as UTF-8, replacing the previous value. */
+	public void putString(String key, String value) throws IOException
+	{
+		put(key, value.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/** Removes the value stored for the key.
+	 *
+	 * @return true if there was a value. */
+	public boolean remove(String key) throws IOException
+	{
+		byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+		ByteBuffer record = encode(keyBytes, null);
+		synchronized (writeLock)
+		{
+			ensureOpen();
+			if (!index.containsKey(key))
+				return false;
+			append(key, keyBytes.length, -1, record);
+			return true;
+		}
+	}
+
+	/** @return a live, unmodifiable view of all keys. */
+	public Set<String> keys()
+	{
+		return Collections.unmodifiableSet(index.keySet());
+	}
+
+	public int size()
+	{
+		return index.size();
+	}
+
+	/** @return the size of all segments in bytes. */
+	public long getDiskSize()
+	{
+		synchronized (writeLock)
+		{
+			return totalBytes;
+		}
+	}
+
+	/** @return the amount of bytes in the segments that belong to outdated values and will be reclaimed by the next compaction. */
+	public long getGarbageSize()
+	{
+		synchronized (writeLock)
+		{
+			return garbageBytes;
+		}
+	}
+
+	/** Syncs all changes made so far to disk. */
+	public void flush() throws IOException
+	{
+		synchronized (writeLock)
+		{
+			ensureOpen();
+			dirty = false;
+			active.force();
+		}
+	}
+
+	/** Copies all live values out of the older segments and deletes them. Runs in the background on its own when needed, reads and writes
+	 * continue while it runs. */
+	public void compact() throws IOException
+	{
+		synchronized (compactionLock)
+		{
+			List<Segment> old;
+			synchronized (writeLock)
+			{
+				ensureOpen();
+				if (active.size > 0)
+					roll();
+				old = new ArrayList<>(segments.headMap(active.id).values());
+			}
+			if (old.isEmpty())
+				return;
+			Set<Integer> ids = new HashSet<>();
+			for (Segment segment : old)
+				ids.add(segment.id);
+			int firstNew = old.get(old.size() - 1).id + 1;
+			for (Map.Entry<String, Location> entry : index.entrySet())
+			{
+				Location location = entry.getValue();
+				if (!ids.contains(location.segment))
+					continue;
+				byte[] keyBytes = entry.getKey().getBytes(StandardCharsets.UTF_8);
+				ByteBuffer value = ByteBuffer.allocate(location.length);
+				segments.get(location.segment).read(value, location.position);
+				ByteBuffer record = encode(keyBytes, value.array());
+				synchronized (writeLock)
+				{
+					ensureOpen();
+					// only copy values that were not changed while reading them
+					if (index.get(entry.getKey()) == location)
+						append(entry.getKey(), keyBytes.length, location.length, record);
+				}
+			}
+			synchronized (writeLock)
+			{
+				ensureOpen();
+				for (Segment segment : segments.tailMap(firstNew).values())
+					segment.force();
+				// everything left in the old segments is outdated now. The oldest go first, so a crash can never leave a removal deleted
+				// while an older value it hides survives.
+				for (Segment segment : old)
+				{
+					segments.remove(segment.id);
+					totalBytes -= segment.size;
+					garbageBytes -= segment.size;
+					segment.delete();
+				}
+			}
+		}
+	}
+
+	/** Syncs and closes the store. Opening it again afterwards replays the log. */
+	@Override
+	public void close() throws IOException
+	{
+		synchronized (compactionLock)
+		{
+			synchronized (writeLock)
+			{
+				if (closed)
+					return;
+				closed = true;
+				stores.remove(directory, this);
+				IOException failure = null;
+				for (Segment segment : segments.values())
+				{
+					try
+					{
+						if (segment == active)
+							segment.force();
+						segment.close();
+					}
+					catch (IOException e)
+					{
+						failure = e;
+					}
+				}
+				if (failure != null)
+					throw failure;
+			}
+		}
+	}
+
+	/** Appends a record and points the index at it. Must hold the write lock. */
+	private void append(String key, int keyLength, int valueLength, ByteBuffer record) throws IOException
+	{
+		int recordSize = record.remaining();
+		if (active.size > 0 && active.size + recordSize > SEGMENT_SIZE)
+			roll();
+		long position = active.size;
+		try
+		{
+			active.append(record);
+		}
+		catch (ClosedByInterruptException e)
+		{
+			active.reopen();
+			throw e;
+		}
+		active.size += recordSize;
+		totalBytes += recordSize;
+		dirty = true;
+		account(key, valueLength < 0 ? null : new Location(active.id, position + HEADER + keyLength, valueLength, recordSize),
+				recordSize);
+	}
+
+	/** Updates the index and garbage counter for a record that was written or replayed. */
+	private void account(String key, Location location, int recordSize)
+	{
+		Location previous = location == null ? index.remove(key) : index.put(key, location);
+		if (previous != null)
+			garbageBytes += previous.recordSize;
+		// a removal is only needed until the values it hides are compacted away
+		if (location == null)
+			garbageBytes += recordSize;
+	}
+
+	/** Starts a new segment. Must hold the write lock. */
+	private void roll() throws IOException
+	{
+		active.force();
+		Segment next = new Segment(directory, active.id + 1);
+		segments.put(next.id, next);
+		active = next;
+	}
+
+	/** Rebuilds the index from a segment, cutting it off at the first record that is incomplete or corrupt. */
+	private void replay(Segment segment) throws IOException
+	{
+		long size = segment.fileSize();
+		long position = 0;
+		ByteBuffer header = ByteBuffer.allocate(HEADER);
+		CRC32 crc = new CRC32();
+		while (position + HEADER <= size)
+		{
+			header.clear();
+			segment.read(header, position);
+			int checksum = header.getInt(0);
+			int keyLength = header.getInt(4);
+			int valueLength = header.getInt(8);
+			if (keyLength < 0 || valueLength < -1 || position + HEADER + keyLength + Math.max(valueLength, 0) > size)
+				break;
+			ByteBuffer body = ByteBuffer.allocate(keyLength + Math.max(valueLength, 0));
+			segment.read(body, position + HEADER);
+			crc.reset();
+			crc.update(header.array(), 4, HEADER - 4);
+			crc.update(body.array(), 0, body.capacity());
+			if ((int) crc.getValue() != checksum)
+				break;
+			String key = new String(body.array(), 0, keyLength, StandardCharsets.UTF_8);
+			int recordSize = HEADER + body.capacity();
+			account(key, valueLength < 0 ? null : new Location(segment.id, position + HEADER + keyLength, valueLength, recordSize),
+					recordSize);
+			position += recordSize;
+		}
+		if (position < size)
+		{
+			Faucet.plugin.getLogger().log(Level.WARNING, "Discarding " + (size - position) + " incomplete or corrupt bytes at the end of "
+					+ segment.file);
+			segment.truncate(position);
+		}
+		segment.size = position;
+		totalBytes += position;
+	}
+
+	private void ensureOpen() throws IOException
+	{
+		if (closed)
+			throw new IOException("The store in " + directory + " is closed");
+	}
+
+	private static ByteBuffer encode(byte[] key, byte[] value)
+	{
+		int valueLength = value == null ? -1 : value.length;
+		ByteBuffer record = ByteBuffer.allocate(HEADER + key.length + Math.max(valueLength, 0));
+		record.putInt(0);
+		record.putInt(key.length);
+		record.putInt(valueLength);
+		record.put(key);
+		if (value != null)
+			record.put(value);
+		CRC32 crc = new CRC32();
+		crc.update(record.array(), 4, record.capacity() - 4);
+		record.putInt(0, (int) crc.getValue());
+		record.flip();
+		return record;
+	}
+
+	private static void ensureMaintenance()
+	{
+		if (maintenance != null)
+			return;
+		maintenance = Executors.newSingleThreadScheduledExecutor(runnable ->
+		{
+			Thread thread = new Thread(runnable, "Faucet Store Maintenance");
+			thread.setDaemon(true);
+			return thread;
+		});
+		maintenance.scheduleWithFixedDelay(KeyValueStore::syncAll, SYNC_INTERVAL, SYNC_INTERVAL, TimeUnit.MILLISECONDS);
+		maintenance.scheduleWithFixedDelay(KeyValueStore::compactAll, COMPACTION_INTERVAL, COMPACTION_INTERVAL,
+				TimeUnit.MILLISECONDS);
+	}
+
+	private static void syncAll()
+	{
+		for (KeyValueStore store : stores.values())
+		{
+			if (!store.dirty)
+				continue;
+			try
+			{
+				store.flush();
+			}
+			catch (IOException e)
+			{
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private static void compactAll()
+	{
+		for (KeyValueStore store : stores.values())
+		{
+			long garbage, total;
+			synchronized (store.writeLock)
+			{
+				garbage = store.garbageBytes;
+				total = store.totalBytes;
+			}
+			if (garbage < MIN_GARBAGE || garbage * 2 < total)
+				continue;
+			try
+			{
+				store.compact();
+			}
+			catch (IOException e)
+			{
+				e.printStackTrace();
+			}
+		}
+	}
+}
@@ -0,0 +1,20 @@
+package com.redstoner.misc.store;
+
+/** Where the current value of a key is stored. */
+final class Location
+{
+	final int segment;
+	/** The position of the value within the segment. */
+	final long position;
+	final int length;
+	/** The size of the complete record, which becomes garbage once the key is overwritten or removed. */
+	final int recordSize;
+	
+	Location(int segment, long position, int length, int recordSize)
+	{
+		this.segment = segment;
+		this.position = position;
+		this.length = length;
+		this.recordSize = recordSize;
+	}
+}
@@ -0,0 +1,104 @@
+package com.redstoner.misc.store;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+/** A single file of a store's log. Records are only ever appended to the newest segment, older ones are read only until they get
+ * compacted away. */
+final class Segment implements Closeable
+{
+	static final String EXTENSION = ".seg";
+	
+	final int id;
+	final File file;
+	/** The amount of valid bytes, guarded by the write lock of the store. */
+	long size;
+	private volatile FileChannel channel;
+	private volatile boolean deleted;
+	
+	Segment(File directory, int id) throws IOException
+	{
+		this.id = id;
+		this.file = new File(directory, String.format("%010d", id) + EXTENSION);
+		this.channel = open();
+	}
+	
+	/** @return the id of the segment stored in the file, or -1 if it is not a segment. */
+	static int parseId(File file)
+	{
+		String name = file.getName();
+		if (!name.endsWith(EXTENSION))
+			return -1;
+		try
+		{
+			return Integer.parseInt(name.substring(0, name.length() - EXTENSION.length()));
+		}
+		catch (NumberFormatException e)
+		{
+			return -1;
+		}
+	}
+	
+	long fileSize() throws IOException
+	{
+		return channel.size();
+	}
+	
+	void append(ByteBuffer record) throws IOException
+	{
+		long position = size;
+		while (record.hasRemaining())
+			position += channel.write(record, position);
+	}
+	
+	void read(ByteBuffer target, long position) throws IOException
+	{
+		while (target.hasRemaining())
+		{
+			int read = channel.read(target, position);
+			if (read < 0)
+				throw new IOException("Unexpected end of segment " + file);
+			position += read;
+		}
+	}
+	
+	void truncate(long length) throws IOException
+	{
+		channel.truncate(length);
+	}
+	
+	void force() throws IOException
+	{
+		channel.force(false);
+	}
+	
+	/** A thread getting interrupted while reading closes the channel for everyone, so it gets reopened when that happens. */
+	synchronized void reopen() throws IOException
+	{
+		if (!deleted && !channel.isOpen())
+			channel = open();
+	}
+	
+	void delete() throws IOException
+	{
+		deleted = true;
+		close();
+		Files.deleteIfExists(file.toPath());
+	}
+	
+	@Override
+	public void close() throws IOException
+	{
+		channel.close();
+	}
+	
+	private FileChannel open() throws IOException
+	{
+		return FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+	}
+}
@@ -0,0 +1,208 @@
+package com.redstoner.modules;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.bukkit.Bukkit;
+import org.bukkit.command.ConsoleCommandSender;
+
+import net.nemez.chatapi.ChatAPI;
+
+/** The console and file backend of all ModuleLoggers.</br>
+ * Callers only publish their line into a bounded lock-free ring buffer, a single consumer thread colorifies the lines
+ * and hands them to the console in batches. Lines of loggers with a log file are appended to it by the same thread,
+ * which flushes every touched file once per batch. If the buffer is full, lines are dropped and counted instead of blocking the caller,
+ * with the exception of errors, which are then written synchronously. */
+final class AsyncLogWriter
+{
+	private static final int CAPACITY = 8192;
+	private static final int MASK = CAPACITY - 1;
+	private static final int MAX_BATCH = 256;
+	private static final long IDLE_PARK_NANOS = 50_000_000L;
+
+	private static final AtomicReferenceArray<LogRecord> buffer = new AtomicReferenceArray<>(CAPACITY);
+	private static final AtomicLong tail = new AtomicLong();
+	private static volatile long head;
+	private static final LongAdder dropped = new LongAdder();
+	private static long reportedDropped;
+
+	private static volatile Thread consumer;
+	private static volatile boolean sleeping;
+	private static volatile boolean running;
+	/** Set once Faucet is disabled, from then on lines only go to the console and no thread or file is opened again. */
+	private static volatile boolean shutdown;
+
+	private AsyncLogWriter()
+	{}
+
+	/** Queues a line for the console and the log file of its logger.
+	 *
+	 * @param record the line to write. Its message will be colorified by the consumer. */
+	static void write(LogRecord record)
+	{
+		if (shutdown)
+		{
+			writeConsole(record);
+			return;
+		}
+		Thread consumer = AsyncLogWriter.consumer;
+		if (consumer == null)
+		{
+			if (!start())
+			{
+				writeSync(record);
+				return;
+			}
+			consumer = AsyncLogWriter.consumer;
+		}
+		if (!offer(record))
+		{
+			if (record.level == LogLevel.ERROR)
+				writeSync(record);
+			else
+				dropped.increment();
+			return;
+		}
+		if (sleeping)
+			LockSupport.unpark(consumer);
+	}
+
+	/** @return the amount of lines that were dropped because the buffer was full. */
+	static long getDropped()
+	{
+		return dropped.sum();
+	}
+
+	/** @return the amount of lines currently waiting to be written. */
+	static int getPending()
+	{
+		return (int) (tail.get() - head);
+	}
+
+	/** Stops the consumer thread after it wrote every queued line and closes all log files.
+	 * Lines logged afterwards are written to the console synchronously. */
+	static synchronized void shutdown()
+	{
+		shutdown = true;
+		Thread thread = consumer;
+		if (thread == null)
+			return;
+		running = false;
+		LockSupport.unpark(thread);
+		try
+		{
+			thread.join(5000);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		consumer = null;
+		RollingLogFile.closeAll();
+	}
+
+	private static synchronized boolean start()
+	{
+		if (consumer != null)
+			return true;
+		if (shutdown)
+			return false;
+		if (Bukkit.getConsoleSender() == null)
+			return false;
+		running = true;
+		Thread thread = new Thread(AsyncLogWriter::run, "Faucet Log Writer");
+		thread.setDaemon(true);
+		thread.start();
+		consumer = thread;
+		return true;
+	}
+
+	private static boolean offer(LogRecord record)
+	{
+		long slot;
+		do
+		{
+			slot = tail.get();
+			if (slot - head >= CAPACITY)
+				return false;
+		}
+		while (!tail.compareAndSet(slot, slot + 1));
+		buffer.lazySet((int) slot & MASK, record);
+		return true;
+	}
+
+	private static void run()
+	{
+		String[] batch = new String[MAX_BATCH + 1];
+		List<RollingLogFile> touched = new ArrayList<>();
+		while (running || head != tail.get())
+		{
+			int count = drain(batch, touched);
+			if (count > 0)
+			{
+				Bukkit.getConsoleSender().sendMessage(count == batch.length ? batch : Arrays.copyOf(batch, count));
+				for (RollingLogFile file : touched)
+					file.flush();
+				touched.clear();
+			}
+			else
+			{
+				sleeping = true;
+				if (running && head == tail.get())
+					LockSupport.parkNanos(IDLE_PARK_NANOS);
+				sleeping = false;
+			}
+		}
+	}
+
+	private static int drain(String[] batch, List<RollingLogFile> touched)
+	{
+		int count = 0;
+		long current = head;
+		while (count < MAX_BATCH)
+		{
+			int index = (int) current & MASK;
+			LogRecord record = buffer.get(index);
+			// either empty, or a producer claimed the slot but has not published it yet
+			if (record == null)
+				break;
+			buffer.lazySet(index, null);
+			current++;
+			head = current;
+			batch[count++] = record.prefix + ChatAPI.colorify(null, record.message);
+			RollingLogFile file = record.logger.getLogFile();
+			if (file != null && file.append(record) && !touched.contains(file))
+				touched.add(file);
+		}
+		long droppedNow = dropped.sum();
+		if (droppedNow != reportedDropped)
+		{
+			batch[count++] = ModuleLogger.PREFIX_WARN + "Dropped " + (droppedNow - reportedDropped)
+					+ " log messages, the log buffer was full.";
+			reportedDropped = droppedNow;
+		}
+		return count;
+	}
+
+	private static void writeSync(LogRecord record)
+	{
+		writeConsole(record);
+		if (shutdown)
+			return;
+		RollingLogFile file = record.logger.getLogFile();
+		if (file != null && file.append(record))
+			file.flush();
+	}
+
+	private static void writeConsole(LogRecord record)
+	{
+		ConsoleCommandSender console = Bukkit.getConsoleSender();
+		if (console != null)
+			console.sendMessage(record.prefix + ChatAPI.colorify(null, record.message));
+	}
+}
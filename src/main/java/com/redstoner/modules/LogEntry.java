@@ -0,0 +1,53 @@
+package com.redstoner.modules;
+
+/** A line read back from a RollingLogFile. */
+public final class LogEntry
+{
+	private final long time;
+	private final LogLevel level;
+	private final String module;
+	private final String thread;
+	private final String message;
+	
+	public LogEntry(long time, LogLevel level, String module, String thread, String message)
+	{
+		this.time = time;
+		this.level = level;
+		this.module = module;
+		this.thread = thread;
+		this.message = message;
+	}
+	
+	/** @return the time the line was logged at, in milliseconds since the epoch. */
+	public long getTime()
+	{
+		return time;
+	}
+	
+	public LogLevel getLevel()
+	{
+		return level;
+	}
+	
+	public String getModule()
+	{
+		return module;
+	}
+	
+	/** @return the name of the thread the line was logged from. */
+	public String getThread()
+	{
+		return thread;
+	}
+	
+	public String getMessage()
+	{
+		return message;
+	}
+	
+	@Override
+	public String toString()
+	{
+		return time + " [" + level + "] [" + module + "/" + thread + "] " + message;
+	}
+}
@@ -0,0 +1,151 @@
+package com.redstoner.modules;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.zip.GZIPInputStream;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/** Reads the lines of a RollingLogFile and its archives back, e.g. to tail or search the log of a module. */
+public final class LogFileReader
+{
+	private static final JsonFactory factory = new JsonFactory();
+
+	private final File directory;
+	private final String name;
+
+	/** @param directory the folder the log file is in.
+	 * @param name the base name of the log file, usually the name of the module. */
+	public LogFileReader(File directory, String name)
+	{
+		this.directory = directory;
+		this.name = name;
+	}
+
+	/** Gets the last lines matching the filter.
+	 *
+	 * @param count the maximum amount of lines to return.
+	 * @param filter the filter to apply. Set to null to match every line.
+	 * @return the matching lines, oldest first.
+	 * @throws IOException if a log file could not be read. */
+	public List<LogEntry> tail(int count, Predicate<LogEntry> filter) throws IOException
+	{
+		Deque<LogEntry> result = new ArrayDeque<>();
+		List<File> files = getFiles();
+		// read the files from newest to oldest until enough lines were found
+		for (int i = files.size() - 1; i >= 0 && result.size() < count; i--)
+		{
+			Deque<LogEntry> fileTail = new ArrayDeque<>();
+			read(files.get(i), filter, entry ->
+			{
+				fileTail.addLast(entry);
+				if (fileTail.size() > count)
+					fileTail.removeFirst();
+			});
+			while (!fileTail.isEmpty() && result.size() < count)
+				result.addFirst(fileTail.removeLast());
+		}
+		return new ArrayList<>(result);
+	}
+
+	/** Streams every line logged within the given time span through the consumer, oldest first.
+	 *
+	 * @param from the earliest time to include, in milliseconds since the epoch.
+	 * @param to the latest time to include, in milliseconds since the epoch.
+	 * @param filter the filter to apply. Set to null to match every line.
+	 * @param consumer receives the matching lines.
+	 * @throws IOException if a log file could not be read. */
+	public void forEach(long from, long to, Predicate<LogEntry> filter, Consumer<LogEntry> consumer) throws IOException
+	{
+		Predicate<LogEntry> inRange = entry -> entry.getTime() >= from && entry.getTime() <= to;
+		for (File file : getFiles())
+			read(file, filter == null ? inRange : inRange.and(filter), consumer);
+	}
+
+	/** @return the archives followed by the current file, oldest first. */
+	private List<File> getFiles()
+	{
+		List<File> files = new ArrayList<>();
+		for (File archive : RollingLogFile.listArchives(directory, name))
+			files.add(archive);
+		File current = new File(directory, name + RollingLogFile.EXTENSION);
+		if (current.exists())
+			files.add(current);
+		return files;
+	}
+
+	private void read(File file, Predicate<LogEntry> filter, Consumer<LogEntry> consumer) throws IOException
+	{
+		InputStream in = new FileInputStream(file);
+		if (file.getName().endsWith(RollingLogFile.ARCHIVE_EXTENSION))
+			in = new GZIPInputStream(in);
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)))
+		{
+			String line;
+			while ((line = reader.readLine()) != null)
+			{
+				LogEntry entry = parse(line);
+				if (entry != null && (filter == null || filter.test(entry)))
+					consumer.accept(entry);
+			}
+		}
+	}
+
+	/** @return the parsed line or null if the line is not a valid log entry, e.g. one that got cut off by a crash. */
+	private static LogEntry parse(String line)
+	{
+		long time = 0;
+		LogLevel level = null;
+		String module = null, thread = null, message = null;
+		try (JsonParser parser = factory.createParser(line))
+		{
+			if (parser.nextToken() != JsonToken.START_OBJECT)
+				return null;
+			while (parser.nextToken() == JsonToken.FIELD_NAME)
+			{
+				String field = parser.getCurrentName();
+				parser.nextToken();
+				switch (field)
+				{
+					case "time":
+						time = parser.getLongValue();
+						break;
+					case "level":
+						level = LogLevel.valueOf(parser.getText());
+						break;
+					case "module":
+						module = parser.getText();
+						break;
+					case "thread":
+						thread = parser.getText();
+						break;
+					case "message":
+						message = parser.getText();
+						break;
+					default:
+						parser.skipChildren();
+				}
+			}
+		}
+		catch (IOException | IllegalArgumentException e)
+		{
+			return null;
+		}
+		if (level == null || message == null)
+			return null;
+		return new LogEntry(time, level, module, thread, message);
+	}
+}
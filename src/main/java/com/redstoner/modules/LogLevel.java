@@ -0,0 +1,17 @@
+package com.redstoner.modules;
+
+/** The levels a ModuleLogger can log at, in ascending order of severity. */
+public enum LogLevel
+{
+	DEBUG,
+	INFO,
+	WARN,
+	ERROR;
+	
+	/** @param threshold the lowest level that is enabled.
+	 * @return true if messages of this level pass the given threshold. */
+	public boolean isAtLeast(LogLevel threshold)
+	{
+		return ordinal() >= threshold.ordinal();
+	}
+}
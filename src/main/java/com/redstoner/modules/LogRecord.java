@@ -0,0 +1,22 @@
+package com.redstoner.modules;
+
+/** A single line queued by a ModuleLogger, waiting to be written by the AsyncLogWriter. */
+final class LogRecord
+{
+	final ModuleLogger logger;
+	final LogLevel level;
+	final long time;
+	final String thread;
+	final String prefix;
+	final String message;
+	
+	LogRecord(ModuleLogger logger, LogLevel level, String prefix, String message)
+	{
+		this.logger = logger;
+		this.level = level;
+		this.time = System.currentTimeMillis();
+		this.thread = Thread.currentThread().getName();
+		this.prefix = prefix;
+		this.message = message;
+	}
+}
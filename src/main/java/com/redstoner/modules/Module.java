@@ -36,7 +36,8 @@ public interface Module
 	public default void firstLoad()
 	{}
 	
-	/** This method gets run every time a module gets loaded and its version has changed.
+	/** This method gets run every time a module gets loaded and its version has changed. Tables can be brought up to date by declaring their
+	 * layout and handing it to {@link com.redstoner.misc.mysql.SchemaMigrator#migrate}, instead of writing ALTER statements by hand.
 	 * 
 	 * @param old The version of the previous module. */
 	public default void migrate(Version old)
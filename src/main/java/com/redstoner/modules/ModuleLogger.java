@@ -1,36 +1,81 @@
 package com.redstoner.modules;
 
-import org.bukkit.Bukkit;
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
 import org.bukkit.command.CommandSender;
 
-import net.nemez.chatapi.ChatAPI;
+import com.redstoner.faucet.Faucet;
+
 import net.nemez.chatapi.click.Message;
 
+/** Logger handed to modules. Console output is handed off to an asynchronous writer, so logging never blocks the calling thread on console I/O.</br>
+ * Messages below the logger's level are discarded before any string is built; use the Supplier overloads for messages that are expensive to create.</br>
+ * Optionally, every line is also written to a structured, rolling per-module log file (see {@link #enableLogFile()}). */
 public class ModuleLogger
 {
 	public static final String PREFIX_WARN = "§8[§eWARN§8]:§7 ";
 	public static final String PREFIX_ERROR = "§8[§cERROR§8]:§7 ";
 	
 	private String name;
+	private String prefix;
+	private String errorPrefix;
+	private String warnLinePrefix;
+	private String errorLinePrefix;
+	private String header;
+	private volatile LogLevel level = LogLevel.INFO;
+	private volatile RollingLogFile logFile;
 	
 	public ModuleLogger(final String name)
 	{
-		this.name = name;
+		setName(name);
+	}
+	
+	public void debug(final String message)
+	{
+		if (isEnabled(LogLevel.DEBUG))
+			AsyncLogWriter.write(new LogRecord(this, LogLevel.DEBUG, prefix, message));
+	}
+	
+	public void debug(final Supplier<String> message)
+	{
+		if (isEnabled(LogLevel.DEBUG))
+			AsyncLogWriter.write(new LogRecord(this, LogLevel.DEBUG, prefix, message.get()));
 	}
 	
 	public void info(final String message)
 	{
-		Bukkit.getConsoleSender().sendMessage(getPrefix() + ChatAPI.colorify(null, message));
+		if (isEnabled(LogLevel.INFO))
+			AsyncLogWriter.write(new LogRecord(this, LogLevel.INFO, prefix, message));
+	}
+	
+	public void info(final Supplier<String> message)
+	{
+		if (isEnabled(LogLevel.INFO))
+			AsyncLogWriter.write(new LogRecord(this, LogLevel.INFO, prefix, message.get()));
 	}
 	
 	public void warn(final String message)
 	{
-		Bukkit.getConsoleSender().sendMessage(PREFIX_WARN + getPrefix() + ChatAPI.colorify(null, message));
+		if (isEnabled(LogLevel.WARN))
+			AsyncLogWriter.write(new LogRecord(this, LogLevel.WARN, warnLinePrefix, message));
+	}
+	
+	public void warn(final Supplier<String> message)
+	{
+		if (isEnabled(LogLevel.WARN))
+			AsyncLogWriter.write(new LogRecord(this, LogLevel.WARN, warnLinePrefix, message.get()));
 	}
 	
 	public void error(final String message)
 	{
-		Bukkit.getConsoleSender().sendMessage(PREFIX_ERROR + getPrefix() + ChatAPI.colorify(null, message));
+		AsyncLogWriter.write(new LogRecord(this, LogLevel.ERROR, errorLinePrefix, message));
+	}
+	
+	public void error(final Supplier<String> message)
+	{
+		AsyncLogWriter.write(new LogRecord(this, LogLevel.ERROR, errorLinePrefix, message.get()));
 	}
 	
 	public void message(final CommandSender recipient, final String... message)
@@ -51,23 +96,100 @@ public class ModuleLogger
 		m.send();
 	}
 	
+	/** @param level the level to check.
+	 * @return true if messages of the given level will be logged. */
+	public boolean isEnabled(final LogLevel level)
+	{
+		return level.isAtLeast(this.level);
+	}
+	
+	public LogLevel getLevel()
+	{
+		return level;
+	}
+	
+	/** Sets the lowest level that will be logged. Errors are always logged.
+	 *
+	 * @param level the new threshold, defaults to INFO. */
+	public void setLevel(final LogLevel level)
+	{
+		this.level = level;
+	}
+	
 	public String getPrefix()
 	{
-		return getPrefix(false);
+		return prefix;
 	}
 	
 	public String getPrefix(final boolean error)
 	{
-		return "§8[§" + (error ? 'c' : '2') + name + "§8]§7 ";
+		return error ? errorPrefix : prefix;
 	}
 	
 	public String getHeader()
 	{
-		return "§2--=[ " + name + " ]=--\n";
+		return header;
 	}
 	
 	protected final void setName(final String name)
 	{
 		this.name = name;
+		this.prefix = "§8[§2" + name + "§8]§7 ";
+		this.errorPrefix = "§8[§c" + name + "§8]§7 ";
+		this.warnLinePrefix = PREFIX_WARN + prefix;
+		this.errorLinePrefix = PREFIX_ERROR + prefix;
+		this.header = "§2--=[ " + name + " ]=--\n";
+	}
+	
+	public String getName()
+	{
+		return name;
+	}
+	
+	/** Starts writing this logger's lines to "logs/&lt;name&gt;.jsonl" in Faucet's data folder,
+	 * rolling the file daily or once it reaches 16MB and keeping the last 14 archives.
+	 *
+	 * @return the log file. */
+	public RollingLogFile enableLogFile()
+	{
+		return setLogFile(new RollingLogFile(new File(Faucet.plugin.getDataFolder(), "logs"), name, 16L * 1024 * 1024,
+				TimeUnit.DAYS.toMillis(1), 14));
+	}
+	
+	/** Sets the file this logger's lines get written to in addition to the console. The previous file gets closed.
+	 *
+	 * @param logFile the new log file. Set to null to stop writing to a file.
+	 * @return the new log file. */
+	public RollingLogFile setLogFile(final RollingLogFile logFile)
+	{
+		RollingLogFile previous = this.logFile;
+		this.logFile = logFile;
+		if (previous != null && previous != logFile)
+			previous.close();
+		return logFile;
+	}
+	
+	/** @return the file this logger writes to, or null if it only logs to console. */
+	public RollingLogFile getLogFile()
+	{
+		return logFile;
+	}
+	
+	/** @return the amount of console messages of all loggers that were dropped because the log buffer was full. */
+	public static long getDroppedMessages()
+	{
+		return AsyncLogWriter.getDropped();
+	}
+	
+	/** @return the amount of console messages of all loggers that are waiting to be written. */
+	public static int getPendingMessages()
+	{
+		return AsyncLogWriter.getPending();
+	}
+	
+	/** Writes out every queued console message and stops the writer thread. To be called when Faucet gets disabled. */
+	public static void shutdown()
+	{
+		AsyncLogWriter.shutdown();
 	}
 }
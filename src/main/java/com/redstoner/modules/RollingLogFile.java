@@ -0,0 +1,335 @@
+package com.redstoner.modules;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Collections;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+
+/** A per-module log file in JSON-lines format, one object per line with the fields time, level, module, thread and message.</br>
+ * Lines are encoded into a buffer and appended to the file through a channel once per batch of the AsyncLogWriter.
+ * The file is rolled once it exceeds its maximum size or age; rolled files are gzipped in the background and the oldest archives get deleted. */
+public final class RollingLogFile implements Closeable
+{
+	static final String EXTENSION = ".jsonl";
+	static final String ARCHIVE_EXTENSION = ".jsonl.gz";
+	/** The timestamp part of archive names, as written by the archive format. */
+	private static final String TIMESTAMP = "\\d{8}-\\d{6}-\\d{3}";
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final ExecutorService compressor = Executors.newSingleThreadExecutor(runnable ->
+	{
+		Thread thread = new Thread(runnable, "Faucet Log Compressor");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private static final Set<RollingLogFile> openFiles = Collections.newSetFromMap(new IdentityHashMap<>());
+	private static final byte[] TIME = "{\"time\":".getBytes(StandardCharsets.UTF_8);
+	private static final byte[] LEVEL = ",\"level\":\"".getBytes(StandardCharsets.UTF_8);
+	private static final byte[] MODULE = "\",\"module\":\"".getBytes(StandardCharsets.UTF_8);
+	private static final byte[] THREAD = "\",\"thread\":\"".getBytes(StandardCharsets.UTF_8);
+	private static final byte[] MESSAGE = "\",\"message\":\"".getBytes(StandardCharsets.UTF_8);
+	private static final byte[] END = "\"}\n".getBytes(StandardCharsets.UTF_8);
+
+	private final File directory;
+	private final String name;
+	private final long maxBytes;
+	private final long maxAgeMillis;
+	private final int maxArchives;
+	private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+	private final SimpleDateFormat archiveFormat = new SimpleDateFormat("yyyyMMdd-HHmmss-SSS");
+	private FileChannel channel;
+	private long size;
+	private long openedAt;
+	private boolean closed;
+
+	/** @param directory the folder to put the log file and its archives in.
+	 * @param name the base name of the log file, usually the name of the module.
+	 * @param maxBytes the size after which the file gets rolled. Set to 0 to disable size based rolling.
+	 * @param maxAgeMillis the age after which the file gets rolled. Set to 0 to disable time based rolling.
+	 * @param maxArchives the amount of compressed archives to keep. Set to 0 to keep all of them. */
+	public RollingLogFile(File directory, String name, long maxBytes, long maxAgeMillis, int maxArchives)
+	{
+		this.directory = directory;
+		this.name = name;
+		this.maxBytes = maxBytes;
+		this.maxAgeMillis = maxAgeMillis;
+		this.maxArchives = maxArchives;
+	}
+
+	/** Encodes a line into the write buffer, rolling the file first if needed.
+	 *
+	 * @return true if the line was accepted and the file needs to be flushed. */
+	synchronized boolean append(LogRecord record)
+	{
+		if (closed)
+			return false;
+		try
+		{
+			if (channel == null)
+				open();
+			else if ((maxBytes > 0 && size >= maxBytes) || (maxAgeMillis > 0 && record.time - openedAt >= maxAgeMillis))
+				roll();
+			JsonStringEncoder encoder = JsonStringEncoder.getInstance();
+			put(TIME);
+			put(Long.toString(record.time).getBytes(StandardCharsets.US_ASCII));
+			put(LEVEL);
+			put(record.level.name().getBytes(StandardCharsets.US_ASCII));
+			put(MODULE);
+			put(encoder.quoteAsUTF8(record.logger.getName()));
+			put(THREAD);
+			put(encoder.quoteAsUTF8(record.thread));
+			put(MESSAGE);
+			put(encoder.quoteAsUTF8(record.message));
+			put(END);
+			return true;
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+			closeChannel();
+			return false;
+		}
+	}
+
+	/** Writes all buffered lines to the file. */
+	public synchronized void flush()
+	{
+		if (channel == null)
+			return;
+		try
+		{
+			writeBuffer();
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+			closeChannel();
+		}
+	}
+
+	/** Flushes, syncs and closes the file. Lines appended afterwards are discarded. */
+	@Override
+	public synchronized void close()
+	{
+		flush();
+		if (channel != null)
+		{
+			try
+			{
+				channel.force(false);
+			}
+			catch (IOException e)
+			{
+				e.printStackTrace();
+			}
+		}
+		closeChannel();
+		closed = true;
+	}
+
+	/** Closes every log file that is currently open. */
+	static void closeAll()
+	{
+		RollingLogFile[] files;
+		synchronized (openFiles)
+		{
+			files = openFiles.toArray(new RollingLogFile[0]);
+		}
+		for (RollingLogFile file : files)
+			file.close();
+	}
+
+	public File getDirectory()
+	{
+		return directory;
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	public File getCurrentFile()
+	{
+		return new File(directory, name + EXTENSION);
+	}
+
+	/** @return a reader for this file and its archives. */
+	public LogFileReader getReader()
+	{
+		return new LogFileReader(directory, name);
+	}
+
+	/** @return the archived (and possibly not yet compressed) files of this log, oldest first. */
+	File[] getArchives()
+	{
+		return listArchives(directory, name);
+	}
+
+	static File[] listArchives(File directory, String name)
+	{
+		// only the exact timestamp pattern, so "foo-bar.jsonl" of another log never counts as an archive of "foo"
+		Pattern pattern = Pattern.compile(Pattern.quote(name + "-") + TIMESTAMP + Pattern.quote(EXTENSION) + "(\\.gz)?");
+		File[] archives = directory.listFiles((dir, file) -> pattern.matcher(file).matches()
+				// while being compressed, an archive exists both plain and compressed
+				&& !(file.endsWith(EXTENSION) && new File(dir, file + ".gz").exists()));
+		if (archives == null)
+			return new File[0];
+		// the timestamp in the file name sorts chronologically
+		Arrays.sort(archives, Comparator.comparing(File::getName));
+		return archives;
+	}
+
+	private void put(byte[] bytes) throws IOException
+	{
+		if (bytes.length > buffer.remaining())
+		{
+			writeBuffer();
+			if (bytes.length > buffer.capacity())
+			{
+				writeFully(ByteBuffer.wrap(bytes));
+				return;
+			}
+		}
+		buffer.put(bytes);
+	}
+
+	private void writeBuffer() throws IOException
+	{
+		if (buffer.position() == 0)
+			return;
+		buffer.flip();
+		writeFully(buffer);
+		buffer.clear();
+	}
+
+	private void writeFully(ByteBuffer source) throws IOException
+	{
+		while (source.hasRemaining())
+			size += channel.write(source);
+	}
+
+	private void open() throws IOException
+	{
+		if (!directory.exists())
+			directory.mkdirs();
+		File file = getCurrentFile();
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.APPEND);
+		size = channel.size();
+		synchronized (openFiles)
+		{
+			openFiles.add(this);
+		}
+		// many file systems do not report a creation time, so the time of the first line counts as the time the file was started
+		openedAt = size == 0 ? System.currentTimeMillis() : readFirstTime(file);
+		buffer.clear();
+	}
+
+	/** @return the time of the first line of the file, or now if it can not be read. */
+	private static long readFirstTime(File file) throws IOException
+	{
+		byte[] start = new byte[TIME.length + 20];
+		int length = 0;
+		try (InputStream in = new FileInputStream(file))
+		{
+			int read;
+			while (length < start.length && (read = in.read(start, length, start.length - length)) > 0)
+				length += read;
+		}
+		if (length <= TIME.length || !Arrays.equals(Arrays.copyOf(start, TIME.length), TIME))
+			return System.currentTimeMillis();
+		long time = 0;
+		int digits = 0;
+		for (int i = TIME.length; i < length && start[i] >= '0' && start[i] <= '9'; i++, digits++)
+			time = time * 10 + (start[i] - '0');
+		return digits == 0 ? System.currentTimeMillis() : time;
+	}
+
+	private void roll() throws IOException
+	{
+		writeBuffer();
+		channel.force(false);
+		closeChannel();
+		File current = getCurrentFile();
+		File rolled = new File(directory, name + "-" + archiveFormat.format(new Date()) + EXTENSION);
+		if (current.renameTo(rolled))
+			compressor.execute(() -> compress(rolled));
+		open();
+		// if the file could not be renamed it is continued, counting its age from now so it is not rolled for every line
+		openedAt = System.currentTimeMillis();
+	}
+
+	private void compress(File rolled)
+	{
+		File archive = new File(directory, rolled.getName() + ".gz");
+		// compressed under a name no reader lists, so a half written archive is never read
+		File partial = new File(directory, rolled.getName() + ".gz.tmp");
+		try (InputStream in = new FileInputStream(rolled);
+				OutputStream out = new GZIPOutputStream(new FileOutputStream(partial), BUFFER_SIZE))
+		{
+			byte[] block = new byte[BUFFER_SIZE];
+			int length;
+			while ((length = in.read(block)) > 0)
+				out.write(block, 0, length);
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+			partial.delete();
+			return;
+		}
+		if (!partial.renameTo(archive))
+		{
+			partial.delete();
+			return;
+		}
+		rolled.delete();
+		if (maxArchives > 0)
+		{
+			File[] archives = getArchives();
+			for (int i = 0; i < archives.length - maxArchives; i++)
+				archives[i].delete();
+		}
+	}
+
+	private void closeChannel()
+	{
+		if (channel == null)
+			return;
+		try
+		{
+			channel.close();
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+		channel = null;
+		buffer.clear();
+		synchronized (openFiles)
+		{
+			openFiles.remove(this);
+		}
+	}
+}
@@ -0,0 +1,71 @@
+package com.redstoner.scheduler;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Creates the async executors of the module schedulers.</br>
+ * On Java 21 and newer every task gets its own virtual thread, so blocking I/O in module tasks does not tie up a limited pool. Faucet is
+ * compiled for Java 8, so the executor is looked up reflectively. Older versions use a bounded pool per module. */
+final class AsyncExecutors
+{
+	/** The maximum amount of threads per module on Java 20 and older. Further tasks wait in the queue. */
+	static final int POOL_SIZE = Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors()));
+	/** Executors.newVirtualThreadPerTaskExecutor, null if virtual threads are not available. */
+	private static final Method NEW_VIRTUAL_EXECUTOR = findVirtualExecutor();
+	
+	private AsyncExecutors()
+	{}
+	
+	/** @param name the name of the module, used to name the threads of the pool.
+	 * @return a new executor. */
+	static ExecutorService create(String name)
+	{
+		if (NEW_VIRTUAL_EXECUTOR != null)
+		{
+			try
+			{
+				return (ExecutorService) NEW_VIRTUAL_EXECUTOR.invoke(null);
+			}
+			catch (ReflectiveOperationException | RuntimeException e)
+			{
+				// the lookup already created one, use the pool should it fail anyway
+			}
+		}
+		AtomicInteger count = new AtomicInteger();
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, 30, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<>(), runnable ->
+				{
+					Thread thread = new Thread(runnable, "Faucet " + name + " Async #" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+	
+	/** @return true if tasks run on virtual threads. */
+	static boolean isVirtual()
+	{
+		return NEW_VIRTUAL_EXECUTOR != null;
+	}
+	
+	private static Method findVirtualExecutor()
+	{
+		try
+		{
+			Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			// creating one fails if virtual threads are not enabled, then the pool is used for every module
+			((ExecutorService) method.invoke(null)).shutdown();
+			return method;
+		}
+		catch (ReflectiveOperationException | RuntimeException e)
+		{
+			return null;
+		}
+	}
+}
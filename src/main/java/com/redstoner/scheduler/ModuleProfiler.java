@@ -0,0 +1,250 @@
+package com.redstoner.scheduler;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import com.redstoner.misc.MetricWriter;
+import com.redstoner.modules.Module;
+
+/** Attributes CPU time and allocated memory to modules.</br>
+ * Faucet wraps every entry point it calls into a module with {@link #begin()} and {@link #end(String, boolean)}: enabling and disabling,
+ * event handlers, scheduled tasks, work steps and player data io. While profiling is enabled, the CPU time and allocated bytes of the
+ * calling thread are read before and after. Nested entry points, e.g. a handler of one module listening to an event called by another, are
+ * only accounted to the innermost module.</br>
+ * Profiling is off by default. While off, an entry point only costs the read of a volatile field. */
+public final class ModuleProfiler
+{
+	/** The length of one slot of the rolling window in milliseconds. */
+	public static final long SLOT_LENGTH = 1000;
+	/** The amount of slots of the rolling window. */
+	public static final int SLOTS = 60;
+
+	private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+	private static final com.sun.management.ThreadMXBean allocations = findAllocationBean();
+	private static final Map<String, Usage> usages = new ConcurrentHashMap<>();
+	private static final ThreadLocal<Frames> frames = ThreadLocal.withInitial(Frames::new);
+	private static volatile boolean enabled;
+
+	private ModuleProfiler()
+	{}
+
+	/** Turns profiling on or off. Counters are kept while off.
+	 *
+	 * @return false if this JVM can not measure the CPU time of threads. */
+	public static synchronized boolean setEnabled(boolean enable)
+	{
+		if (enable && !threads.isCurrentThreadCpuTimeSupported())
+			return false;
+		if (enable)
+		{
+			if (!threads.isThreadCpuTimeEnabled())
+				threads.setThreadCpuTimeEnabled(true);
+			if (allocations != null && !allocations.isThreadAllocatedMemoryEnabled())
+				allocations.setThreadAllocatedMemoryEnabled(true);
+		}
+		enabled = enable;
+		return true;
+	}
+
+	public static boolean isEnabled()
+	{
+		return enabled;
+	}
+
+	/** @return true if allocated bytes are measured too, which needs a HotSpot based JVM. */
+	public static boolean isMeasuringAllocations()
+	{
+		return allocations != null;
+	}
+
+	/** Marks the start of a call into a module. Must be followed by {@link #end(String, boolean)} on the same thread, best in a finally.
+	 *
+	 * @return whether the call gets measured, to be handed to end. */
+	public static boolean begin()
+	{
+		if (!enabled)
+			return false;
+		frames.get().push(threads.getCurrentThreadCpuTime(), allocatedBytes());
+		return true;
+	}
+
+	/** Marks the end of a call into a module and accounts its usage to the module.
+	 *
+	 * @param begun the result of the matching call to {@link #begin()}. */
+	public static void end(Module module, boolean begun)
+	{
+		if (begun)
+			end(module.getClass().getSimpleName(), true);
+	}
+
+	/** Marks the end of a call into a module and accounts its usage to the module.
+	 *
+	 * @param module the simple class name of the module.
+	 * @param begun the result of the matching call to {@link #begin()}. */
+	public static void end(String module, boolean begun)
+	{
+		if (!begun)
+			return;
+		Frames frames = ModuleProfiler.frames.get();
+		frames.pop(threads.getCurrentThreadCpuTime(), allocatedBytes());
+		usages.computeIfAbsent(module, Usage::new).add(frames.cpu, frames.allocated, System.nanoTime());
+	}
+
+	/** @return the usage of every module that was called while profiling, with the most CPU time in the rolling window first. */
+	public static List<ModuleUsage> getUsage()
+	{
+		long now = System.nanoTime();
+		List<ModuleUsage> result = new ArrayList<>();
+		for (Usage usage : usages.values())
+			result.add(usage.snapshot(now));
+		result.sort(Comparator.comparingLong(ModuleUsage::getWindowCpuNanos).reversed());
+		return result;
+	}
+
+	/** Forgets all counters. */
+	public static void reset()
+	{
+		usages.clear();
+	}
+
+	/** Writes the totals of every module. Registered with @Metrics by Faucet. */
+	public static void collect(MetricWriter writer)
+	{
+		List<ModuleUsage> usage = getUsage();
+		for (ModuleUsage module : usage)
+			writer.counter("module_cpu_seconds_total", "CPU time spent in calls into the module.", module.getCpuNanos() / 1e9, "module",
+					module.getModule());
+		if (allocations != null)
+			for (ModuleUsage module : usage)
+				writer.counter("module_allocated_bytes_total", "Memory allocated during calls into the module.", module.getAllocatedBytes(),
+						"module", module.getModule());
+		for (ModuleUsage module : usage)
+			writer.counter("module_calls_total", "Measured calls into the module.", module.getCalls(), "module", module.getModule());
+	}
+
+	private static long allocatedBytes()
+	{
+		return allocations == null ? 0 : allocations.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	private static com.sun.management.ThreadMXBean findAllocationBean()
+	{
+		try
+		{
+			ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+			if (bean instanceof com.sun.management.ThreadMXBean
+					&& ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported())
+				return (com.sun.management.ThreadMXBean) bean;
+		}
+		catch (LinkageError e)
+		{
+			// not a HotSpot based JVM
+		}
+		return null;
+	}
+
+	/** The calls into modules currently running on one thread, innermost last. */
+	private static final class Frames
+	{
+		private long[] startCpu = new long[8];
+		private long[] startAllocated = new long[8];
+		private long[] childCpu = new long[8];
+		private long[] childAllocated = new long[8];
+		private int depth;
+		/** The exclusive usage of the last popped call. */
+		private long cpu;
+		private long allocated;
+
+		private void push(long cpu, long allocated)
+		{
+			if (depth == startCpu.length)
+			{
+				startCpu = Arrays.copyOf(startCpu, depth * 2);
+				startAllocated = Arrays.copyOf(startAllocated, depth * 2);
+				childCpu = Arrays.copyOf(childCpu, depth * 2);
+				childAllocated = Arrays.copyOf(childAllocated, depth * 2);
+			}
+			startCpu[depth] = cpu;
+			startAllocated[depth] = allocated;
+			childCpu[depth] = 0;
+			childAllocated[depth] = 0;
+			depth++;
+		}
+
+		private void pop(long cpu, long allocated)
+		{
+			depth--;
+			long totalCpu = cpu - startCpu[depth];
+			long totalAllocated = allocated - startAllocated[depth];
+			this.cpu = totalCpu - childCpu[depth];
+			this.allocated = totalAllocated - childAllocated[depth];
+			if (depth > 0)
+			{
+				childCpu[depth - 1] += totalCpu;
+				childAllocated[depth - 1] += totalAllocated;
+			}
+		}
+	}
+
+	/** The counters of one module. The rolling window is a ring of slots, each covering {@link #SLOT_LENGTH} milliseconds. */
+	private static final class Usage
+	{
+		private static final long SLOT_NANOS = TimeUnit.MILLISECONDS.toNanos(SLOT_LENGTH);
+
+		private final String module;
+		private final long[] slotIds = new long[SLOTS];
+		private final long[] slotCpu = new long[SLOTS];
+		private final long[] slotAllocated = new long[SLOTS];
+		private final long[] slotCalls = new long[SLOTS];
+		private long cpu;
+		private long allocated;
+		private long calls;
+
+		private Usage(String module)
+		{
+			this.module = module;
+		}
+
+		private synchronized void add(long cpu, long allocated, long now)
+		{
+			long id = now / SLOT_NANOS;
+			int slot = (int) Math.floorMod(id, (long) SLOTS);
+			if (slotIds[slot] != id)
+			{
+				slotIds[slot] = id;
+				slotCpu[slot] = 0;
+				slotAllocated[slot] = 0;
+				slotCalls[slot] = 0;
+			}
+			slotCpu[slot] += cpu;
+			slotAllocated[slot] += allocated;
+			slotCalls[slot]++;
+			this.cpu += cpu;
+			this.allocated += allocated;
+			calls++;
+		}
+
+		private synchronized ModuleUsage snapshot(long now)
+		{
+			long id = now / SLOT_NANOS;
+			long windowCpu = 0, windowAllocated = 0, windowCalls = 0;
+			for (int i = 0; i < SLOTS; i++)
+			{
+				if (id - slotIds[i] < SLOTS)
+				{
+					windowCpu += slotCpu[i];
+					windowAllocated += slotAllocated[i];
+					windowCalls += slotCalls[i];
+				}
+			}
+			return new ModuleUsage(module, cpu, allocated, calls, windowCpu, windowAllocated, windowCalls);
+		}
+	}
+}
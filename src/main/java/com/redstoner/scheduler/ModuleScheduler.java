@@ -0,0 +1,347 @@
+package com.redstoner.scheduler;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+
+import org.bukkit.Bukkit;
+
+import com.redstoner.faucet.Faucet;
+import com.redstoner.modules.Module;
+
+/** The scheduler of a single module. Every task submitted through it is tied to the module, so unloading the module cancels all of them
+ * and waits for running ones to finish.</br>
+ * Async tasks run on the module's own executor. On Java 21 and newer every task gets its own virtual thread, older versions use a pool of
+ * {@link AsyncExecutors#POOL_SIZE} threads. Delays and periods of async tasks are in real time, those of main thread tasks in ticks.</br>
+ * Modules get their scheduler with {@link #get(Module)} and should not create threads of their own. */
+public final class ModuleScheduler
+{
+	/** The time in milliseconds unloading a module waits for its running async tasks. */
+	public static final long SHUTDOWN_TIMEOUT = 5000;
+
+	private static final Map<Module, ModuleScheduler> schedulers = new ConcurrentHashMap<>();
+	/** Only waits for the delays of async tasks, then hands them to the executor of their module. */
+	private static final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable ->
+	{
+		Thread thread = new Thread(runnable, "Faucet Scheduler Timer");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final String name;
+	private final ExecutorService executor;
+	private final Executor trackedExecutor = this::runAsync;
+	private final Set<ScheduledTask> tasks = ConcurrentHashMap.newKeySet();
+	private final AtomicInteger queued = new AtomicInteger();
+	private final AtomicInteger running = new AtomicInteger();
+	private final LongAdder completed = new LongAdder();
+	private final LongAdder failed = new LongAdder();
+	private final LongAdder totalWaitNanos = new LongAdder();
+	private final AtomicLong maxWaitNanos = new AtomicLong();
+	private final LongAdder totalRunNanos = new LongAdder();
+	private volatile boolean shutdown;
+
+	private ModuleScheduler(Module module)
+	{
+		this.name = module.getClass().getSimpleName();
+		this.executor = AsyncExecutors.create(name);
+	}
+
+	/** @param module the module to get the scheduler of.
+	 * @return the scheduler, created on first use. */
+	public static ModuleScheduler get(Module module)
+	{
+		return schedulers.computeIfAbsent(module, ModuleScheduler::new);
+	}
+
+	/** Cancels every task of the module and waits up to {@link #SHUTDOWN_TIMEOUT} for running async tasks, interrupting them afterwards.
+	 * Called by the ModuleLoader after the module was disabled. */
+	public static void shutdown(Module module)
+	{
+		ModuleScheduler scheduler = schedulers.remove(module);
+		if (scheduler != null)
+			scheduler.shutdown();
+	}
+
+	/** Shuts down the schedulers of all modules. To be called when Faucet gets disabled. */
+	public static void shutdownAll()
+	{
+		for (Module module : new ArrayList<>(schedulers.keySet()))
+			shutdown(module);
+	}
+
+	/** @return the statistics of all modules that used their scheduler, with the longest total run time first. */
+	public static List<SchedulerStatistics> getAllStatistics()
+	{
+		List<SchedulerStatistics> statistics = new ArrayList<>();
+		for (ModuleScheduler scheduler : schedulers.values())
+			statistics.add(scheduler.getStatistics());
+		statistics.sort(Comparator.comparingDouble(SchedulerStatistics::getTotalRunMillis).reversed());
+		return statistics;
+	}
+
+	/** @return true if async tasks run on virtual threads. */
+	public static boolean isVirtual()
+	{
+		return AsyncExecutors.isVirtual();
+	}
+
+	/** @return an executor running tasks through this scheduler, e.g. for CompletableFuture.supplyAsync. */
+	public Executor getExecutor()
+	{
+		return trackedExecutor;
+	}
+
+	/** Runs the task on an async thread as soon as possible. */
+	public ScheduledTask runAsync(Runnable task)
+	{
+		ScheduledTask handle = register(false);
+		submitAsync(handle, new Tracked(handle, task));
+		return handle;
+	}
+
+	/** Computes a value on an async thread. Cancelling the returned future cancels the task if it did not start yet. */
+	public <T> CompletableFuture<T> supplyAsync(Supplier<T> supplier)
+	{
+		CompletableFuture<T> result = new CompletableFuture<>();
+		ScheduledTask handle = register(false);
+		handle.result = result;
+		result.whenComplete((value, error) ->
+		{
+			if (result.isCancelled())
+				handle.cancel();
+		});
+		submitAsync(handle, new Tracked(handle, () -> complete(result, supplier)));
+		return result;
+	}
+
+	/** Runs the task on an async thread once the delay elapsed. */
+	public ScheduledTask runAsyncLater(Runnable task, long delay, TimeUnit unit)
+	{
+		ScheduledTask handle = register(false);
+		Tracked tracked = new Tracked(handle, task);
+		handle.timerFuture = timer.schedule(() -> submitAsync(handle, tracked), delay, unit);
+		return handle;
+	}
+
+	/** Runs the task on an async thread repeatedly. The period is measured from the end of one run to the start of the next, so runs never
+	 * overlap. */
+	public ScheduledTask runAsyncTimer(Runnable task, long delay, long period, TimeUnit unit)
+	{
+		ScheduledTask handle = register(true);
+		Tracked[] tracked = new Tracked[1];
+		tracked[0] = new Tracked(handle, () ->
+		{
+			try
+			{
+				task.run();
+			}
+			finally
+			{
+				if (!handle.isCancelled() && !shutdown)
+					handle.timerFuture = timer.schedule(() -> submitAsync(handle, tracked[0]), period, unit);
+			}
+		});
+		handle.timerFuture = timer.schedule(() -> submitAsync(handle, tracked[0]), delay, unit);
+		return handle;
+	}
+
+	/** Runs the task on the main thread during the next tick. */
+	public ScheduledTask runSync(Runnable task)
+	{
+		ScheduledTask handle = register(false);
+		Tracked tracked = new Tracked(handle, task);
+		tracked.enqueue();
+		handle.bukkitTask = Bukkit.getScheduler().runTask(Faucet.plugin, tracked);
+		return handle;
+	}
+
+	/** Computes a value on the main thread during the next tick, e.g. to access the Bukkit API from an async task. */
+	public <T> CompletableFuture<T> supplySync(Supplier<T> supplier)
+	{
+		CompletableFuture<T> result = new CompletableFuture<>();
+		ScheduledTask handle = register(false);
+		handle.result = result;
+		result.whenComplete((value, error) ->
+		{
+			if (result.isCancelled())
+				handle.cancel();
+		});
+		Tracked tracked = new Tracked(handle, () -> complete(result, supplier));
+		tracked.enqueue();
+		handle.bukkitTask = Bukkit.getScheduler().runTask(Faucet.plugin, tracked);
+		return result;
+	}
+
+	/** Runs the task on the main thread after the given amount of ticks. */
+	public ScheduledTask runSyncLater(Runnable task, long ticks)
+	{
+		ScheduledTask handle = register(false);
+		handle.bukkitTask = Bukkit.getScheduler().runTaskLater(Faucet.plugin, new Tracked(handle, task), ticks);
+		return handle;
+	}
+
+	/** Runs the task on the main thread repeatedly.
+	 *
+	 * @param delay the ticks before the first run.
+	 * @param period the ticks between the start of two runs. */
+	public ScheduledTask runSyncTimer(Runnable task, long delay, long period)
+	{
+		ScheduledTask handle = register(true);
+		handle.bukkitTask = Bukkit.getScheduler().runTaskTimer(Faucet.plugin, new Tracked(handle, task), delay, period);
+		return handle;
+	}
+
+	/** @return the amount of tasks waiting for an async thread or the main thread. */
+	public int getQueueDepth()
+	{
+		return queued.get();
+	}
+
+	public SchedulerStatistics getStatistics()
+	{
+		return new SchedulerStatistics(name, queued.get(), running.get(), tasks.size(), completed.sum(), failed.sum(),
+				totalWaitNanos.sum(), maxWaitNanos.get(), totalRunNanos.sum());
+	}
+
+	/** Called by a task once it will not run again. */
+	void finished(ScheduledTask handle)
+	{
+		tasks.remove(handle);
+		if (handle.queued.compareAndSet(true, false))
+			queued.decrementAndGet();
+	}
+
+	private ScheduledTask register(boolean repeating)
+	{
+		if (shutdown)
+			throw new IllegalStateException("The module " + name + " was unloaded, it can not schedule tasks anymore");
+		ScheduledTask handle = new ScheduledTask(this, repeating);
+		tasks.add(handle);
+		return handle;
+	}
+
+	private void submitAsync(ScheduledTask handle, Tracked tracked)
+	{
+		if (handle.isCancelled())
+			return;
+		tracked.enqueue();
+		try
+		{
+			executor.execute(tracked);
+		}
+		catch (RejectedExecutionException e)
+		{
+			// the module got unloaded meanwhile
+			handle.cancel();
+		}
+	}
+
+	private void shutdown()
+	{
+		shutdown = true;
+		for (ScheduledTask task : tasks)
+			task.cancel();
+		executor.shutdown();
+		try
+		{
+			if (!executor.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS))
+			{
+				Faucet.plugin.getLogger().warning("Async tasks of " + name + " did not finish within " + SHUTDOWN_TIMEOUT
+						+ "ms after unloading, interrupting them");
+				executor.shutdownNow();
+			}
+		}
+		catch (InterruptedException e)
+		{
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static <T> void complete(CompletableFuture<T> result, Supplier<T> supplier)
+	{
+		try
+		{
+			result.complete(supplier.get());
+		}
+		catch (Throwable t)
+		{
+			result.completeExceptionally(t);
+			throw t;
+		}
+	}
+
+	/** Wraps a task to skip it once cancelled and to record its wait and run times. */
+	private final class Tracked implements Runnable
+	{
+		private final ScheduledTask handle;
+		private final Runnable task;
+		private volatile long enqueued;
+
+		private Tracked(ScheduledTask handle, Runnable task)
+		{
+			this.handle = handle;
+			this.task = task;
+		}
+
+		/** Marks the task as waiting to run. Delayed main thread tasks skip this, as Bukkit does not tell when their delay elapsed. */
+		private void enqueue()
+		{
+			enqueued = System.nanoTime();
+			if (handle.queued.compareAndSet(false, true))
+				queued.incrementAndGet();
+		}
+
+		@Override
+		public void run()
+		{
+			if (handle.isCancelled())
+				return;
+			long start = System.nanoTime();
+			if (handle.queued.compareAndSet(true, false))
+			{
+				queued.decrementAndGet();
+				long wait = start - enqueued;
+				totalWaitNanos.add(wait);
+				if (wait > maxWaitNanos.get())
+					maxWaitNanos.accumulateAndGet(wait, Math::max);
+			}
+			running.incrementAndGet();
+			boolean profiled = ModuleProfiler.begin();
+			try
+			{
+				task.run();
+			}
+			catch (Throwable t)
+			{
+				failed.increment();
+				Faucet.plugin.getLogger().log(Level.SEVERE, "A task of " + name + " threw an exception", t);
+			}
+			finally
+			{
+				ModuleProfiler.end(name, profiled);
+				running.decrementAndGet();
+				completed.increment();
+				totalRunNanos.add(System.nanoTime() - start);
+				if (!handle.isRepeating())
+					handle.complete();
+			}
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package com.redstoner.scheduler;
+
+import java.util.concurrent.TimeUnit;
+
+/** An immutable snapshot of the CPU time and memory the @ModuleProfiler accounted to one module. */
+public final class ModuleUsage
+{
+	/** The length of the rolling window in nanoseconds. */
+	private static final long WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(ModuleProfiler.SLOT_LENGTH * ModuleProfiler.SLOTS);
+
+	private final String module;
+	private final long cpuNanos;
+	private final long allocatedBytes;
+	private final long calls;
+	private final long windowCpuNanos;
+	private final long windowAllocatedBytes;
+	private final long windowCalls;
+
+	ModuleUsage(String module, long cpuNanos, long allocatedBytes, long calls, long windowCpuNanos, long windowAllocatedBytes,
+			long windowCalls)
+	{
+		this.module = module;
+		this.cpuNanos = cpuNanos;
+		this.allocatedBytes = allocatedBytes;
+		this.calls = calls;
+		this.windowCpuNanos = windowCpuNanos;
+		this.windowAllocatedBytes = windowAllocatedBytes;
+		this.windowCalls = windowCalls;
+	}
+
+	/** @return the simple class name of the module. */
+	public String getModule()
+	{
+		return module;
+	}
+
+	/** @return the CPU time of all measured calls since profiling started. */
+	public long getCpuNanos()
+	{
+		return cpuNanos;
+	}
+
+	/** @return the bytes allocated by all measured calls since profiling started, 0 if allocations can not be measured. */
+	public long getAllocatedBytes()
+	{
+		return allocatedBytes;
+	}
+
+	public long getCalls()
+	{
+		return calls;
+	}
+
+	/** @return the CPU time of the calls during the rolling window. */
+	public long getWindowCpuNanos()
+	{
+		return windowCpuNanos;
+	}
+
+	/** @return the bytes allocated by the calls during the rolling window. */
+	public long getWindowAllocatedBytes()
+	{
+		return windowAllocatedBytes;
+	}
+
+	public long getWindowCalls()
+	{
+		return windowCalls;
+	}
+
+	/** @return the share of one core the module used during the rolling window, in percent. */
+	public double getWindowCpuPercent()
+	{
+		return windowCpuNanos * 100.0 / WINDOW_NANOS;
+	}
+
+	/** @return the bytes the module allocated per second during the rolling window. */
+	public double getWindowAllocationRate()
+	{
+		return windowAllocatedBytes * 1e9 / WINDOW_NANOS;
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("%s: %.2f%% CPU, %.1f MB/s allocated, %d calls in the last %ds", module, getWindowCpuPercent(),
+				getWindowAllocationRate() / (1 << 20), windowCalls, ModuleProfiler.SLOT_LENGTH * ModuleProfiler.SLOTS / 1000);
+	}
+}
@@ -0,0 +1,72 @@
+package com.redstoner.scheduler;
+
+import java.util.List;
+
+import org.bukkit.command.CommandSender;
+
+import com.nemez.cmdmgr.Command;
+
+/** The /profiler command, showing and controlling the @ModuleProfiler. */
+public final class ProfilerCommand
+{
+	public static final String COMMAND = String.join("\n",
+			"command profiler {",
+			"	perm faucet.profiler;",
+			"	[empty] {",
+			"		help Shows the CPU time and memory used by each module during the last minute.;",
+			"		run profiler_show;",
+			"	}",
+			"	on {",
+			"		help Starts measuring the modules.;",
+			"		run profiler_on;",
+			"	}",
+			"	off {",
+			"		help Stops measuring the modules.;",
+			"		run profiler_off;",
+			"	}",
+			"	reset {",
+			"		help Forgets everything measured so far.;",
+			"		run profiler_reset;",
+			"	}",
+			"}");
+
+	@Command(hook = "profiler_show")
+	public boolean show(CommandSender sender)
+	{
+		List<ModuleUsage> usage = ModuleProfiler.getUsage();
+		sender.sendMessage("§7Profiling is " + (ModuleProfiler.isEnabled() ? "§aon" : "§coff")
+				+ (ModuleProfiler.isMeasuringAllocations() ? "" : "§7, allocations can not be measured on this JVM"));
+		if (usage.isEmpty())
+			sender.sendMessage("§7Nothing measured yet.");
+		for (ModuleUsage module : usage)
+			sender.sendMessage(String.format("§e%s§7: §f%.2f%% §7CPU, §f%.1f MB/s §7allocated, §f%d §7calls", module.getModule(),
+					module.getWindowCpuPercent(), module.getWindowAllocationRate() / (1 << 20), module.getWindowCalls()));
+		return true;
+	}
+
+	@Command(hook = "profiler_on")
+	public boolean on(CommandSender sender)
+	{
+		if (ModuleProfiler.setEnabled(true))
+			sender.sendMessage("§7Started profiling the modules.");
+		else
+			sender.sendMessage("§cThis JVM can not measure the CPU time of threads.");
+		return true;
+	}
+
+	@Command(hook = "profiler_off")
+	public boolean off(CommandSender sender)
+	{
+		ModuleProfiler.setEnabled(false);
+		sender.sendMessage("§7Stopped profiling the modules.");
+		return true;
+	}
+
+	@Command(hook = "profiler_reset")
+	public boolean reset(CommandSender sender)
+	{
+		ModuleProfiler.reset();
+		sender.sendMessage("§7Reset the profiler.");
+		return true;
+	}
+}
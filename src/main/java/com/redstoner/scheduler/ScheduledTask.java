@@ -0,0 +1,67 @@
+package com.redstoner.scheduler;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.bukkit.scheduler.BukkitTask;
+
+/** A handle to a task submitted through a @ModuleScheduler. All tasks of a module get cancelled when it is unloaded. */
+public final class ScheduledTask
+{
+	private final ModuleScheduler scheduler;
+	private final boolean repeating;
+	/** Set while the task waits on an executor or the main thread, to track the queue depth. */
+	final AtomicBoolean queued = new AtomicBoolean();
+	volatile BukkitTask bukkitTask;
+	volatile Future<?> timerFuture;
+	volatile CompletableFuture<?> result;
+	private volatile boolean cancelled;
+	private volatile boolean done;
+	
+	ScheduledTask(ModuleScheduler scheduler, boolean repeating)
+	{
+		this.scheduler = scheduler;
+		this.repeating = repeating;
+	}
+	
+	/** Cancels the task. If it is running right now, it finishes, but it will not run again. */
+	public void cancel()
+	{
+		if (cancelled || done)
+			return;
+		cancelled = true;
+		BukkitTask bukkitTask = this.bukkitTask;
+		if (bukkitTask != null)
+			bukkitTask.cancel();
+		Future<?> timerFuture = this.timerFuture;
+		if (timerFuture != null)
+			timerFuture.cancel(false);
+		CompletableFuture<?> result = this.result;
+		if (result != null)
+			result.cancel(false);
+		scheduler.finished(this);
+	}
+	
+	public boolean isCancelled()
+	{
+		return cancelled;
+	}
+	
+	/** @return true if a task that runs once has run, or the task was cancelled. */
+	public boolean isDone()
+	{
+		return done || cancelled;
+	}
+	
+	public boolean isRepeating()
+	{
+		return repeating;
+	}
+	
+	void complete()
+	{
+		done = true;
+		scheduler.finished(this);
+	}
+}
@@ -0,0 +1,87 @@
+package com.redstoner.scheduler;
+
+/** An immutable snapshot of the task counters of one module's @ModuleScheduler. */
+public final class SchedulerStatistics
+{
+	private final String module;
+	private final int queued;
+	private final int running;
+	private final int scheduled;
+	private final long completed;
+	private final long failed;
+	private final long totalWaitNanos;
+	private final long maxWaitNanos;
+	private final long totalRunNanos;
+	
+	SchedulerStatistics(String module, int queued, int running, int scheduled, long completed, long failed, long totalWaitNanos,
+			long maxWaitNanos, long totalRunNanos)
+	{
+		this.module = module;
+		this.queued = queued;
+		this.running = running;
+		this.scheduled = scheduled;
+		this.completed = completed;
+		this.failed = failed;
+		this.totalWaitNanos = totalWaitNanos;
+		this.maxWaitNanos = maxWaitNanos;
+		this.totalRunNanos = totalRunNanos;
+	}
+	
+	/** @return the simple class name of the module. */
+	public String getModule()
+	{
+		return module;
+	}
+	
+	/** @return the amount of tasks waiting for an async thread or the main thread. */
+	public int getQueued()
+	{
+		return queued;
+	}
+	
+	/** @return the amount of tasks running right now. */
+	public int getRunning()
+	{
+		return running;
+	}
+	
+	/** @return the amount of tasks that were not cancelled and will still run, including repeating ones. */
+	public int getScheduled()
+	{
+		return scheduled;
+	}
+	
+	/** @return how often a task ran, counting every run of repeating tasks. */
+	public long getCompleted()
+	{
+		return completed;
+	}
+	
+	/** @return how often a task threw an exception. */
+	public long getFailed()
+	{
+		return failed;
+	}
+	
+	/** @return the average time tasks waited between being handed to an executor and starting, in milliseconds. */
+	public double getAverageWaitMillis()
+	{
+		return completed == 0 ? 0 : totalWaitNanos / 1e6 / completed;
+	}
+	
+	public double getMaxWaitMillis()
+	{
+		return maxWaitNanos / 1e6;
+	}
+	
+	/** @return the average time tasks ran, in milliseconds. */
+	public double getAverageRunMillis()
+	{
+		return completed == 0 ? 0 : totalRunNanos / 1e6 / completed;
+	}
+	
+	public double getTotalRunMillis()
+	{
+		return totalRunNanos / 1e6;
+	}
+}
@@ -0,0 +1,233 @@
+package com.redstoner.scheduler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
+
+import com.redstoner.faucet.Faucet;
+import com.redstoner.loader.ModuleClassIndex;
+
+/** Detects stalls of the main thread and finds out which modules caused them.</br>
+ * The main thread marks every tick it completes. Once no tick completed for longer than the threshold, the watchdog samples the stack of
+ * the main thread at a high rate until the next tick. Each frame is attributed to the module whose jar defines its class. When the stall
+ * ends, a report with the share of samples per module and the sampled stacks is written to the watchdog folder. The stacks are also written
+ * in the folded format of flame graph tools, one line per distinct stack with the amount of samples it was seen in. */
+public final class Watchdog
+{
+	/** The default time in milliseconds without a tick after which the main thread counts as stalled. */
+	public static final long DEFAULT_THRESHOLD = 500;
+	/** The default time in milliseconds between two samples during a stall. */
+	public static final long DEFAULT_SAMPLE_INTERVAL = 2;
+	/** The most samples taken per stall, to bound the memory of very long stalls. */
+	public static final int MAX_SAMPLES = 50000;
+	/** Shown instead of a module name for frames of the server or of Faucet itself. */
+	public static final String SERVER = "(server)";
+
+	private static volatile long thresholdNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_THRESHOLD);
+	private static volatile long sampleIntervalNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_SAMPLE_INTERVAL);
+	private static volatile long lastTick;
+	private static volatile long incidents;
+	private static Thread mainThread;
+	private static Thread thread;
+	private static BukkitTask heartbeat;
+
+	private Watchdog()
+	{}
+
+	/** Starts watching the main thread. Called by Faucet on enable, which happens on the main thread. */
+	public static synchronized void init()
+	{
+		if (thread != null)
+			return;
+		mainThread = Thread.currentThread();
+		lastTick = System.nanoTime();
+		heartbeat = Bukkit.getScheduler().runTaskTimer(Faucet.plugin, () -> lastTick = System.nanoTime(), 1, 1);
+		thread = new Thread(Watchdog::watch, "Faucet Watchdog");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/** Stops watching the main thread. To be called when Faucet gets disabled. */
+	public static synchronized void shutdown()
+	{
+		if (thread == null)
+			return;
+		heartbeat.cancel();
+		heartbeat = null;
+		thread.interrupt();
+		thread = null;
+	}
+
+	/** @param millis the time without a tick after which the main thread counts as stalled. */
+	public static void setThreshold(long millis)
+	{
+		if (millis < 1)
+			throw new IllegalArgumentException("The threshold must be at least 1ms");
+		thresholdNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+	}
+
+	/** @return the time in milliseconds without a tick after which the main thread counts as stalled. */
+	public static long getThreshold()
+	{
+		return TimeUnit.NANOSECONDS.toMillis(thresholdNanos);
+	}
+
+	/** @param millis the time between two samples during a stall. Every sample briefly pauses the main thread, so keep it above 1ms. */
+	public static void setSampleInterval(long millis)
+	{
+		if (millis < 1)
+			throw new IllegalArgumentException("The sample interval must be at least 1ms");
+		sampleIntervalNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+	}
+
+	/** @return the amount of stalls detected since Faucet was enabled. */
+	public static long getIncidents()
+	{
+		return incidents;
+	}
+
+	private static void watch()
+	{
+		Thread self = Thread.currentThread();
+		try
+		{
+			while (thread == self)
+			{
+				long tick = lastTick;
+				long stalled = System.nanoTime() - tick;
+				if (stalled < thresholdNanos)
+				{
+					TimeUnit.NANOSECONDS.sleep(thresholdNanos - stalled);
+					continue;
+				}
+				Incident incident = new Incident(tick);
+				while (lastTick == tick && incident.samples < MAX_SAMPLES)
+				{
+					incident.sample(mainThread.getStackTrace());
+					TimeUnit.NANOSECONDS.sleep(sampleIntervalNanos);
+				}
+				// waits for the end of stalls too long to sample completely
+				while (lastTick == tick)
+					TimeUnit.MILLISECONDS.sleep(10);
+				incidents++;
+				incident.report(lastTick);
+			}
+		}
+		catch (InterruptedException e)
+		{
+			// shut down
+		}
+	}
+
+	/** The samples of one stall. Only accessed by the watchdog thread. */
+	private static final class Incident
+	{
+		private final long start;
+		private final Date date = new Date();
+		private final Map<String, Integer> stacks = new HashMap<>();
+		private final Map<String, Integer> modules = new HashMap<>();
+		private final StringBuilder builder = new StringBuilder();
+		private int samples;
+
+		private Incident(long start)
+		{
+			this.start = start;
+		}
+
+		/** Adds the stack to the folded stacks. The sample counts for the innermost module on it, the code that was running at the time. */
+		private void sample(StackTraceElement[] stack)
+		{
+			if (stack.length == 0)
+				return;
+			samples++;
+			builder.setLength(0);
+			String culprit = null;
+			// folded stacks start at the root, stack traces at the top
+			for (int i = stack.length - 1; i >= 0; i--)
+			{
+				StackTraceElement frame = stack[i];
+				String module = ModuleClassIndex.getModule(frame.getClassName());
+				if (i != stack.length - 1)
+					builder.append(';');
+				builder.append(frame.getClassName()).append('.').append(frame.getMethodName());
+				if (module != null)
+				{
+					builder.append(" [").append(module).append(']');
+					culprit = module;
+				}
+			}
+			stacks.merge(builder.toString(), 1, Integer::sum);
+			modules.merge(culprit == null ? SERVER : culprit, 1, Integer::sum);
+		}
+
+		private void report(long end)
+		{
+			long millis = TimeUnit.NANOSECONDS.toMillis(end - start);
+			List<Map.Entry<String, Integer>> ranking = sorted(modules);
+			StringBuilder summary = new StringBuilder();
+			for (Map.Entry<String, Integer> entry : ranking)
+			{
+				if (summary.length() > 0)
+					summary.append(", ");
+				summary.append(entry.getKey()).append(' ').append(entry.getValue() * 100 / Math.max(samples, 1)).append('%');
+			}
+			String name = "stall-" + new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss").format(date);
+			Faucet.plugin.getLogger().warning("The main thread stalled for " + millis + "ms (" + summary + "), see watchdog/" + name + ".txt");
+			File folder = new File(Faucet.plugin.getDataFolder(), "watchdog");
+			folder.mkdirs();
+			List<Map.Entry<String, Integer>> folded = sorted(stacks);
+			try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(new File(folder, name + ".txt").toPath(), StandardCharsets.UTF_8)))
+			{
+				writer.println("Main thread stall at " + date);
+				writer.println("Duration: " + millis + "ms, " + samples + " samples");
+				writer.println();
+				writer.println("Samples per module (innermost module frame):");
+				for (Map.Entry<String, Integer> entry : ranking)
+					writer.printf("  %-24s %6d  %5.1f%%%n", entry.getKey(), entry.getValue(), entry.getValue() * 100.0 / Math.max(samples, 1));
+				writer.println();
+				writer.println("Stacks, most frequent first (also in " + name + ".folded):");
+				for (Map.Entry<String, Integer> entry : folded)
+				{
+					writer.println();
+					writer.println(entry.getValue() + " samples:");
+					String[] frames = entry.getKey().split(";");
+					for (int i = frames.length - 1; i >= 0; i--)
+						writer.println("  at " + frames[i]);
+				}
+			}
+			catch (IOException e)
+			{
+				Faucet.plugin.getLogger().log(Level.SEVERE, "Could not write the stall report " + name, e);
+			}
+			try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(new File(folder, name + ".folded").toPath(), StandardCharsets.UTF_8)))
+			{
+				for (Map.Entry<String, Integer> entry : folded)
+					writer.println(entry.getKey() + " " + entry.getValue());
+			}
+			catch (IOException e)
+			{
+				Faucet.plugin.getLogger().log(Level.SEVERE, "Could not write the stall report " + name, e);
+			}
+		}
+
+		private static List<Map.Entry<String, Integer>> sorted(Map<String, Integer> counts)
+		{
+			List<Map.Entry<String, Integer>> entries = new ArrayList<>(counts.entrySet());
+			entries.sort(Map.Entry.<String, Integer> comparingByValue().reversed());
+			return entries;
+		}
+	}
+}
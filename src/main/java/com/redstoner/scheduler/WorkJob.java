@@ -0,0 +1,62 @@
+package com.redstoner.scheduler;
+
+import java.util.concurrent.CompletableFuture;
+
+/** A handle to a job submitted to the @WorkScheduler. */
+public final class WorkJob
+{
+	final WorkStep step;
+	private final CompletableFuture<Void> completion = new CompletableFuture<>();
+	private volatile long steps;
+	
+	WorkJob(WorkStep step)
+	{
+		this.step = step;
+	}
+	
+	/** Stops the job before its next step. */
+	public void cancel()
+	{
+		completion.cancel(false);
+	}
+	
+	public boolean isCancelled()
+	{
+		return completion.isCancelled();
+	}
+	
+	/** @return true once the job completed, failed or was cancelled. */
+	public boolean isDone()
+	{
+		return completion.isDone();
+	}
+	
+	/** @return the amount of steps performed so far. */
+	public long getSteps()
+	{
+		return steps;
+	}
+	
+	/** @return a future that completes on the main thread once the job is complete. It fails if a step threw an exception. */
+	public CompletableFuture<Void> getCompletion()
+	{
+		return completion;
+	}
+	
+	/** Performs one step. Only called on the main thread. */
+	boolean runStep()
+	{
+		steps++;
+		return step.run();
+	}
+	
+	void complete()
+	{
+		completion.complete(null);
+	}
+	
+	void fail(Throwable t)
+	{
+		completion.completeExceptionally(t);
+	}
+}
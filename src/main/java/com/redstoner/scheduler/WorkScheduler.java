@@ -0,0 +1,257 @@
+package com.redstoner.scheduler;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+
+import org.bukkit.Bukkit;
+
+import com.redstoner.faucet.Faucet;
+import com.redstoner.modules.Module;
+
+/** Runs bulk main thread work of modules in small steps, spread over as many ticks as needed instead of in one go.</br>
+ * Every tick the work of all modules gets a shared time budget, which is divided among the modules with pending work according to their
+ * weight. Within a module, jobs run in the order they were submitted. Time a module leaves unused goes to the others in the same tick.
+ * A module whose step overran its share has the excess deducted from its next share, so slow steps do not crowd out other modules. */
+public final class WorkScheduler
+{
+	/** The default budget per tick in milliseconds. */
+	public static final double DEFAULT_BUDGET = 10;
+
+	private static final Map<Module, ModuleWork> work = new ConcurrentHashMap<>();
+	private static volatile long budgetNanos = toNanos(DEFAULT_BUDGET);
+	/** Rotates which module goes first, so equal weights get equal chances at the leftover time. */
+	private static int rotation;
+
+	private WorkScheduler()
+	{}
+
+	/** Starts running jobs every tick. Called by Faucet on enable. */
+	public static void init()
+	{
+		Bukkit.getScheduler().runTaskTimer(Faucet.plugin, WorkScheduler::tick, 1, 1);
+	}
+
+	/** Submits a job. May be called from any thread, the steps always run on the main thread.
+	 *
+	 * @param module the module the time gets accounted to.
+	 * @param step performs one step per call and returns false once the job is complete.
+	 * @return the handle of the job. */
+	public static WorkJob submit(Module module, WorkStep step)
+	{
+		WorkJob job = new WorkJob(step);
+		work.computeIfAbsent(module, ModuleWork::new).jobs.add(job);
+		return job;
+	}
+
+	/** Submits a job that runs each of the given steps once.
+	 *
+	 * @param module the module the time gets accounted to.
+	 * @param steps the steps, pulled from the iterator one at a time on the main thread.
+	 * @return the handle of the job. */
+	public static WorkJob submit(Module module, Iterator<? extends Runnable> steps)
+	{
+		return submit(module, () ->
+		{
+			if (steps.hasNext())
+				steps.next().run();
+			return steps.hasNext();
+		});
+	}
+
+	/** Submits a job that hands each element to the action, one element per step.
+	 *
+	 * @param module the module the time gets accounted to.
+	 * @param elements the elements, iterated on the main thread.
+	 * @param action the action to perform for each element.
+	 * @return the handle of the job. */
+	public static <T> WorkJob submit(Module module, Iterable<T> elements, Consumer<? super T> action)
+	{
+		Iterator<T> iterator = elements.iterator();
+		return submit(module, () ->
+		{
+			if (iterator.hasNext())
+				action.accept(iterator.next());
+			return iterator.hasNext();
+		});
+	}
+
+	/** Sets the share of the budget a module gets relative to the others.
+	 *
+	 * @param weight the weight, 1 by default. */
+	public static void setWeight(Module module, int weight)
+	{
+		if (weight < 1)
+			throw new IllegalArgumentException("The weight must be at least 1");
+		work.computeIfAbsent(module, ModuleWork::new).weight = weight;
+	}
+
+	/** @param millis the time per tick all jobs together may use, in milliseconds. */
+	public static void setBudget(double millis)
+	{
+		budgetNanos = toNanos(millis);
+	}
+
+	/** @return the time per tick all jobs together may use, in milliseconds. */
+	public static double getBudget()
+	{
+		return budgetNanos / 1e6;
+	}
+
+	/** Cancels all jobs of the module and forgets its weight. Called by the ModuleLoader when the module gets unloaded. */
+	public static void cancel(Module module)
+	{
+		ModuleWork moduleWork = work.remove(module);
+		if (moduleWork == null)
+			return;
+		WorkJob job;
+		while ((job = moduleWork.jobs.poll()) != null)
+			job.cancel();
+	}
+
+	/** @return the statistics of all modules that submitted work, with the most used time first. */
+	public static List<WorkStatistics> getStatistics()
+	{
+		List<WorkStatistics> statistics = new ArrayList<>();
+		for (ModuleWork moduleWork : work.values())
+			statistics.add(moduleWork.getStatistics());
+		statistics.sort(Comparator.comparingDouble(WorkStatistics::getUsedMillis).reversed());
+		return statistics;
+	}
+
+	private static void tick()
+	{
+		List<ModuleWork> active = new ArrayList<>();
+		long totalWeight = 0;
+		for (ModuleWork moduleWork : work.values())
+		{
+			if (moduleWork.hasWork())
+			{
+				active.add(moduleWork);
+				totalWeight += moduleWork.weight;
+			}
+		}
+		if (active.isEmpty())
+			return;
+		rotation = (rotation + 1) % active.size();
+		long budget = budgetNanos;
+		long deadline = System.nanoTime() + budget;
+		// first pass: every module gets its fair share, minus what it overran last time
+		for (int i = 0; i < active.size(); i++)
+		{
+			ModuleWork moduleWork = active.get((i + rotation) % active.size());
+			long share = budget * moduleWork.weight / totalWeight;
+			moduleWork.granted += share;
+			moduleWork.activeTicks++;
+			moduleWork.tickNanos = 0;
+			moduleWork.credit = Math.min(moduleWork.credit + share, share);
+			if (moduleWork.credit > 0)
+				moduleWork.credit -= moduleWork.run(Math.min(System.nanoTime() + moduleWork.credit, deadline));
+		}
+		// second pass: time left over by modules that ran out of work goes to the ones that still have some
+		for (int i = 0; i < active.size() && System.nanoTime() < deadline; i++)
+		{
+			ModuleWork moduleWork = active.get((i + rotation) % active.size());
+			if (moduleWork.hasWork())
+				moduleWork.run(deadline);
+		}
+		for (ModuleWork moduleWork : active)
+		{
+			if (!moduleWork.hasWork())
+				moduleWork.credit = 0;
+			if (moduleWork.tickNanos > moduleWork.maxTickNanos)
+				moduleWork.maxTickNanos = moduleWork.tickNanos;
+		}
+	}
+
+	private static long toNanos(double millis)
+	{
+		return (long) (millis * TimeUnit.MILLISECONDS.toNanos(1));
+	}
+
+	/** The jobs and counters of one module. Everything but the queue is only accessed on the main thread. */
+	private static final class ModuleWork
+	{
+		private final String name;
+		private final Queue<WorkJob> jobs = new ConcurrentLinkedQueue<>();
+		private volatile int weight = 1;
+		private long credit;
+		private long granted;
+		private long used;
+		private long tickNanos;
+		private long maxTickNanos;
+		private long activeTicks;
+		private long completed;
+		private long steps;
+
+		private ModuleWork(Module module)
+		{
+			this.name = module.getClass().getSimpleName();
+		}
+
+		private boolean hasWork()
+		{
+			return !jobs.isEmpty();
+		}
+
+		/** Runs steps until the deadline passed or there is no work left.
+		 *
+		 * @return the time spent. */
+		private long run(long deadline)
+		{
+			long start = System.nanoTime();
+			long now = start;
+			WorkJob job;
+			while (now < deadline && (job = jobs.peek()) != null)
+			{
+				if (job.isDone())
+				{
+					jobs.poll();
+					completed++;
+					continue;
+				}
+				boolean more;
+				boolean profiled = ModuleProfiler.begin();
+				try
+				{
+					more = job.runStep();
+				}
+				catch (Throwable t)
+				{
+					Faucet.plugin.getLogger().log(Level.SEVERE, "A work step of " + name + " threw an exception, cancelling the job", t);
+					job.fail(t);
+					more = false;
+				}
+				finally
+				{
+					ModuleProfiler.end(name, profiled);
+				}
+				steps++;
+				if (!more)
+				{
+					jobs.poll();
+					completed++;
+					job.complete();
+				}
+				now = System.nanoTime();
+			}
+			long spent = now - start;
+			used += spent;
+			tickNanos += spent;
+			return spent;
+		}
+
+		private WorkStatistics getStatistics()
+		{
+			return new WorkStatistics(name, weight, jobs.size(), completed, steps, activeTicks, granted, used, maxTickNanos);
+		}
+	}
+}
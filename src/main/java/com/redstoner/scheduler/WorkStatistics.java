@@ -0,0 +1,87 @@
+package com.redstoner.scheduler;
+
+/** An immutable snapshot of how one module used its share of the @WorkScheduler budget. */
+public final class WorkStatistics
+{
+	private final String module;
+	private final int weight;
+	private final int pendingJobs;
+	private final long completedJobs;
+	private final long steps;
+	private final long activeTicks;
+	private final long grantedNanos;
+	private final long usedNanos;
+	private final long maxTickNanos;
+	
+	WorkStatistics(String module, int weight, int pendingJobs, long completedJobs, long steps, long activeTicks, long grantedNanos,
+			long usedNanos, long maxTickNanos)
+	{
+		this.module = module;
+		this.weight = weight;
+		this.pendingJobs = pendingJobs;
+		this.completedJobs = completedJobs;
+		this.steps = steps;
+		this.activeTicks = activeTicks;
+		this.grantedNanos = grantedNanos;
+		this.usedNanos = usedNanos;
+		this.maxTickNanos = maxTickNanos;
+	}
+	
+	/** @return the simple class name of the module. */
+	public String getModule()
+	{
+		return module;
+	}
+	
+	public int getWeight()
+	{
+		return weight;
+	}
+	
+	/** @return the amount of jobs that are not complete yet. */
+	public int getPendingJobs()
+	{
+		return pendingJobs;
+	}
+	
+	/** @return the amount of jobs that completed, failed or were cancelled. */
+	public long getCompletedJobs()
+	{
+		return completedJobs;
+	}
+	
+	public long getSteps()
+	{
+		return steps;
+	}
+	
+	/** @return the amount of ticks in which the module had work to do. */
+	public long getActiveTicks()
+	{
+		return activeTicks;
+	}
+	
+	/** @return the total time spent on the module's steps, in milliseconds. */
+	public double getUsedMillis()
+	{
+		return usedNanos / 1e6;
+	}
+	
+	/** @return the average time per active tick spent on the module's steps, in milliseconds. */
+	public double getAverageTickMillis()
+	{
+		return activeTicks == 0 ? 0 : usedNanos / 1e6 / activeTicks;
+	}
+	
+	/** @return the longest time spent on the module's steps within a single tick, in milliseconds. */
+	public double getMaxTickMillis()
+	{
+		return maxTickNanos / 1e6;
+	}
+	
+	/** @return the used time relative to the module's fair share, in percent. Above 100 means it also used time other modules left over. */
+	public double getBudgetUsage()
+	{
+		return grantedNanos == 0 ? 0 : usedNanos * 100.0 / grantedNanos;
+	}
+}
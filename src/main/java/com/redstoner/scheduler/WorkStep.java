@@ -0,0 +1,11 @@
+package com.redstoner.scheduler;
+
+/** A job for the @WorkScheduler, split into small steps. Each call should only take a fraction of a millisecond. */
+@FunctionalInterface
+public interface WorkStep
+{
+	/** Performs the next step of the job. Gets called on the main thread.
+	 * 
+	 * @return true if there is more work left, false once the job is complete. */
+	public boolean run();
+}
@@ -0,0 +1,46 @@
+package com.redstoner.misc;
+
+import java.lang.StackWalker.Option;
+import java.util.List;
+
+import com.redstoner.loader.ModuleClassIndex;
+
+/** Resolves the simple class name of the first caller outside of Utils, used for auto generated broadcast prefixes, and the calling module.</br>
+ * This is the Java 9+ implementation of the multi-release jar. It walks the stack lazily and stops at the first matching frame. */
+final class CallerResolver
+{
+	private static final StackWalker walker = StackWalker.getInstance(Option.RETAIN_CLASS_REFERENCE);
+	private static final ClassValue<String> simpleNames = new ClassValue<String>()
+	{
+		@Override
+		protected String computeValue(Class<?> type)
+		{
+			String name = type.getName();
+			return name.substring(name.lastIndexOf('.') + 1);
+		}
+	};
+	
+	private CallerResolver()
+	{}
+	
+	/** @param ignored simple class names to skip in addition to Utils. Null if supposed to be ignored.
+	 * @return the simple name of the calling class. */
+	static String getCaller(List<String> ignored)
+	{
+		return walker.walk(frames -> frames.map(frame -> frame.getDeclaringClass())
+				.filter(type -> type != CallerResolver.class)
+				.map(simpleNames::get)
+				.filter(name -> !name.equals("Utils") && (ignored == null || !ignored.contains(name)))
+				.findFirst()
+				.orElse("Utils"));
+	}
+	
+	/** @return the name of the innermost module on the stack, or null if there is none. */
+	static String getModule()
+	{
+		return walker.walk(frames -> frames.map(frame -> ModuleClassIndex.getModule(frame.getDeclaringClass().getClassLoader()))
+				.filter(module -> module != null)
+				.findFirst()
+				.orElse(null));
+	}
+}
@@ -0,0 +1,123 @@
+package com.redstoner.misc;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.UUID;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+/** Compares json-simple with @JsonStream on a data file of about 2MB. Not part of the plugin, run it by hand:</br>
+ * java -cp target/classes:target/test-classes:&lt;dependencies&gt; com.redstoner.misc.JsonStreamBenchmark [entries] [rounds]</br>
+ * Every operation is run for the given amount of rounds, the first half of them warm up the JIT and the average of the others is printed. */
+public final class JsonStreamBenchmark
+{
+	private JsonStreamBenchmark()
+	{}
+
+	public static void main(String[] args) throws IOException, ParseException
+	{
+		int entries = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		JSONObject data = createData(entries);
+		File directory = Files.createTempDirectory("jsonbench").toFile();
+		File simple = new File(directory, "simple.json");
+		File stream = new File(directory, "stream.json");
+		try
+		{
+			writeSimple(data, simple);
+			System.out.println(entries + " entries, " + simple.length() / 1024 + "KB, " + rounds + " rounds");
+
+			report("write json-simple toJSONString", rounds, () -> writeSimple(data, simple));
+			report("write JsonStream.write", rounds, () -> JsonStream.write(data, stream));
+			report("read  json-simple parse", rounds, () -> readSimple(simple));
+			report("read  JsonStream.read", rounds, () -> JsonStream.read(stream));
+			report("iterate JsonStream.iterateObject", rounds, () -> iterate(stream));
+		}
+		finally
+		{
+			simple.delete();
+			stream.delete();
+			directory.delete();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static JSONObject createData(int entries)
+	{
+		JSONObject data = new JSONObject();
+		for (int i = 0; i < entries; i++)
+		{
+			JSONObject entry = new JSONObject();
+			entry.put("uuid", UUID.randomUUID().toString());
+			entry.put("name", "Player" + i);
+			entry.put("balance", i * 1.25);
+			entry.put("joins", (long) i);
+			entry.put("nick", "&a\"Player\" " + i + " \u2764");
+			JSONArray homes = new JSONArray();
+			for (int j = 0; j < 3; j++)
+				homes.add("world," + (i * j) + ",64," + (i - j));
+			entry.put("homes", homes);
+			data.put("player" + i, entry);
+		}
+		return data;
+	}
+
+	private static void writeSimple(JSONObject data, File destination) throws IOException
+	{
+		try (Writer writer = new FileWriter(destination))
+		{
+			writer.write(data.toJSONString());
+		}
+	}
+
+	private static Object readSimple(File source) throws IOException, ParseException
+	{
+		try (Reader reader = new FileReader(source))
+		{
+			return new JSONParser().parse(reader);
+		}
+	}
+
+	private static int iterate(File source) throws IOException
+	{
+		int count = 0;
+		try (JsonIterator<Map.Entry<String, Object>> iterator = JsonStream.iterateObject(source))
+		{
+			while (iterator.hasNext())
+			{
+				iterator.next();
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private static void report(String name, int rounds, Task task) throws IOException, ParseException
+	{
+		int warmup = rounds / 2;
+		long total = 0;
+		for (int i = 0; i < rounds; i++)
+		{
+			long start = System.nanoTime();
+			task.run();
+			if (i >= warmup)
+				total += System.nanoTime() - start;
+		}
+		System.out.printf("%-34s %8.1fms%n", name, total / 1e6 / (rounds - warmup));
+	}
+
+	@FunctionalInterface
+	private interface Task
+	{
+		void run() throws IOException, ParseException;
+	}
+}